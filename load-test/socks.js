@@ -0,0 +1,45 @@
+// Нагрузочный сценарий для сравнения режимов потоков (k6, https://k6.io).
+// Платформенные потоки:  SOCKS_VIRTUAL_THREADS=false docker compose up
+// Виртуальные потоки:    SOCKS_VIRTUAL_THREADS=true docker compose up
+// Запуск:                k6 run -e BASE_URL=http://localhost:8080 -e VUS=2000 load-test/socks.js
+// Сравниваются http_reqs (rps), http_req_duration p95/p99 и доля ошибок при одинаковом VUS;
+// итоги обоих режимов записываются в load-test/socks-results.md.
+import http from 'k6/http';
+import { check } from 'k6';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080';
+const COLORS = ['red', 'green', 'blue', 'black', 'white'];
+
+export const options = {
+    scenarios: {
+        mixed: {
+            executor: 'constant-vus',
+            vus: Number(__ENV.VUS || 1000),
+            duration: __ENV.DURATION || '2m',
+        },
+    },
+    summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+};
+
+export function setup() {
+    for (const color of COLORS) {
+        for (let cottonPart = 10; cottonPart <= 90; cottonPart += 10) {
+            http.post(`${BASE_URL}/api/socks/income?color=${color}&cottonPart=${cottonPart}&quantity=1000000`);
+        }
+    }
+}
+
+export default function () {
+    const color = COLORS[Math.floor(Math.random() * COLORS.length)];
+    const cottonPart = 10 * (1 + Math.floor(Math.random() * 9));
+    const roll = Math.random();
+    let response;
+    if (roll < 0.7) {
+        response = http.get(`${BASE_URL}/api/socks?color=${color}&minCotton=${cottonPart}`);
+    } else if (roll < 0.85) {
+        response = http.post(`${BASE_URL}/api/socks/income?color=${color}&cottonPart=${cottonPart}&quantity=1`);
+    } else {
+        response = http.post(`${BASE_URL}/api/socks/outcome?color=${color}&cottonPart=${cottonPart}&quantity=1`);
+    }
+    check(response, { 'status is 2xx': (r) => r.status >= 200 && r.status < 300 });
+}
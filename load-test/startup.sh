@@ -0,0 +1,47 @@
+#!/usr/bin/env bash
+# Время до первого ответа для вариантов образа из Dockerfile.
+# Артефакты собираются заранее: ./gradlew bootJar nativeCompile -PfastStartup. Jar с результатом AOT
+# годится и для jit: без -Dspring.aot.enabled=true сгенерированные классы не используются.
+# Запуск: load-test/startup.sh jit cds native (по умолчанию - все три), RUNS - число запусков на вариант.
+# Отсчёт идёт от docker start до первого HTTP-ответа на GET /actuator/health (любой код: проверка здоровья
+# уже обращается к базе), то есть включает запуск JVM, обновление контекста и первый запрос к базе.
+# Запуск, не ответивший за TIMEOUT секунд, прерывает замер. Выводится медиана и худший из запусков,
+# строки результатов дописываются в load-test/startup-results.md.
+set -euo pipefail
+
+RUNS=${RUNS:-5}
+PORT=${PORT:-8080}
+TIMEOUT=${TIMEOUT:-180}
+RESULTS=$(dirname "$0")/startup-results.md
+VARIANTS=("${@:-jit cds native}")
+read -r -a VARIANTS <<< "${VARIANTS[*]}"
+
+docker compose up -d db redis >/dev/null
+
+for variant in "${VARIANTS[@]}"; do
+    SOCKS_STARTUP=$variant docker compose build web >/dev/null
+    times=()
+    for ((run = 1; run <= RUNS; run++)); do
+        docker compose rm -sf web >/dev/null
+        SOCKS_STARTUP=$variant docker compose create web >/dev/null
+        start=$(date +%s%N)
+        deadline=$(( start + TIMEOUT * 1000000000 ))
+        docker compose start web >/dev/null
+        until [[ $(curl -s -o /dev/null -w '%{http_code}' "http://localhost:${PORT}/actuator/health") != 000 ]]; do
+            if (( $(date +%s%N) > deadline )); then
+                echo "$variant: нет ответа за ${TIMEOUT} с, запуск $run" >&2
+                docker compose logs --tail 50 web >&2
+                docker compose rm -sf web >/dev/null
+                exit 1
+            fi
+            sleep 0.02
+        done
+        times+=($(( ($(date +%s%N) - start) / 1000000 )))
+    done
+    docker compose rm -sf web >/dev/null
+    sorted=($(printf '%s\n' "${times[@]}" | sort -n))
+    printf '%-7s медиана %6d мс, худший %6d мс (%s)\n' \
+        "$variant" "${sorted[$(( RUNS / 2 ))]}" "${sorted[$(( RUNS - 1 ))]}" "${times[*]}"
+    printf '| %s | %s | %s | %d | %d | %d | %s |\n' "$(date +%F)" "$(git rev-parse --short HEAD 2>/dev/null || echo -)" \
+        "$variant" "$RUNS" "${sorted[$(( RUNS / 2 ))]}" "${sorted[$(( RUNS - 1 ))]}" "${times[*]}" >> "$RESULTS"
+done
@@ -0,0 +1,42 @@
+package ru.artq.practice.socks.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockMultipartFile;
+import ru.artq.practice.socks.model.BatchResult;
+import ru.artq.practice.socks.service.SocksService;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BatchImportBenchmark {
+    private static final String[] COLORS = {"red", "green", "blue", "black", "white", "yellow", "grey", "pink"};
+
+    @Param({"10000", "1000000"})
+    private int rows;
+
+    private SocksService socksService;
+    private byte[] csv;
+
+    @Setup(Level.Trial)
+    public void setUp(SocksEnvironment environment) {
+        socksService = environment.bean(SocksService.class);
+        StringBuilder builder = new StringBuilder("color,cottonPart,quantity\n");
+        for (int i = 0; i < rows; i++) {
+            builder.append(COLORS[i % COLORS.length]).append(',')
+                    .append(i % 100 + 1).append(',')
+                    .append(i % 20 + 1).append('\n');
+        }
+        csv = builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public BatchResult batchSocks() {
+        return socksService.batchSocks(new MockMultipartFile("file", "socks.csv", "text/csv", csv));
+    }
+}
@@ -0,0 +1,74 @@
+package ru.artq.practice.socks.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.cache.CacheManager;
+import ru.artq.practice.socks.cache.InventoryVersions;
+import ru.artq.practice.socks.cache.TwoTierCache;
+import ru.artq.practice.socks.service.SocksService;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * getSocks через кэш: попадание в ближний кэш, попадание в Redis (ближний кэш очищается перед каждым
+ * вызовом, как на только что поднятом узле) и промах, для которого перед каждым вызовом поднимается
+ * версия цвета, как после движения по складу.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class GetSocksBenchmark {
+    private SocksService socksService;
+    private InventoryVersions inventoryVersions;
+    private TwoTierCache cache;
+
+    @Setup(Level.Trial)
+    public void setUp(SocksEnvironment environment) {
+        socksService = environment.bean(SocksService.class);
+        inventoryVersions = environment.bean(InventoryVersions.class);
+        cache = (TwoTierCache) environment.bean(CacheManager.class).getCache("socks");
+        for (long cottonPart = 1; cottonPart <= 100; cottonPart++) {
+            socksService.registerIncome("red", cottonPart, 10);
+            socksService.registerIncome("blue", cottonPart, 10);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Miss {
+        @Setup(Level.Invocation)
+        public void invalidate(GetSocksBenchmark benchmark) {
+            benchmark.inventoryVersions.bump(Set.of("red"));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RemoteHit {
+        @Setup(Level.Invocation)
+        public void evictLocal(GetSocksBenchmark benchmark) {
+            benchmark.cache.evictLocalIf(key -> true);
+        }
+    }
+
+    @Benchmark
+    public Integer cacheHit() {
+        return socksService.getSocks("red", null, null, 20L, 60L, null);
+    }
+
+    @Benchmark
+    public Integer cacheRemoteHit(RemoteHit remoteHit) {
+        return socksService.getSocks("red", null, null, 20L, 60L, null);
+    }
+
+    @Benchmark
+    public Integer cacheMiss(Miss miss) {
+        return socksService.getSocks("red", null, null, 20L, 60L, null);
+    }
+
+    @Benchmark
+    public Integer cacheMissAllColors(Miss miss) {
+        return socksService.getSocks(null, "moreThen", 50L, null, null, null);
+    }
+}
@@ -0,0 +1,71 @@
+package ru.artq.practice.socks.benchmark;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+import ru.artq.practice.socks.SocksApplication;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * Приложение целиком поверх встроенных PostgreSQL и Redis: бенчмарки проходят через те же прокси
+ * транзакций и кэша, что и запросы в проде.
+ */
+@State(Scope.Benchmark)
+public class SocksEnvironment {
+    private EmbeddedPostgres postgres;
+    private RedisServer redis;
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        postgres = EmbeddedPostgres.start();
+        int redisPort = freePort();
+        redis = new RedisServer(redisPort);
+        redis.start();
+        context = new SpringApplicationBuilder(SocksApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "DB_HOST=localhost",
+                        "DB_PORT=" + postgres.getPort(),
+                        "DB_NAME=postgres",
+                        "POSTGRES_USER=postgres",
+                        "POSTGRES_PASSWORD=postgres",
+                        "REDIS_HOST=localhost",
+                        "REDIS_PORT=" + redisPort,
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=warn")
+                .run();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        if (context != null) {
+            context.close();
+        }
+        if (redis != null) {
+            redis.stop();
+        }
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    public <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ru.artq.practice.socks.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.artq.practice.socks.service.SocksService;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Приход и отпуск по небольшому набору горячих ключей: при нескольких потоках запросы конкурируют
+ * за одни и те же строки.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StockMovementBenchmark {
+    private static final String[] COLORS = {"red", "green", "blue", "black", "white"};
+    private static final long[] COTTON_PARTS = {10, 30, 50, 70, 90};
+
+    private SocksService socksService;
+
+    @Setup(Level.Trial)
+    public void setUp(SocksEnvironment environment) {
+        socksService = environment.bean(SocksService.class);
+        for (String color : COLORS) {
+            for (long cottonPart : COTTON_PARTS) {
+                socksService.registerIncome(color, cottonPart, 1_000_000_000);
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void incomeSingleThread() {
+        income();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void incomeEightThreads() {
+        income();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void outcomeSingleThread() {
+        outcome();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void outcomeEightThreads() {
+        outcome();
+    }
+
+    private void income() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        socksService.registerIncome(COLORS[random.nextInt(COLORS.length)], COTTON_PARTS[random.nextInt(COTTON_PARTS.length)], 1);
+    }
+
+    private void outcome() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        socksService.registerOutcome(COLORS[random.nextInt(COLORS.length)], COTTON_PARTS[random.nextInt(COTTON_PARTS.length)], 1);
+    }
+}
@@ -0,0 +1,59 @@
+package ru.artq.practice.socks.cache;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import ru.artq.practice.socks.model.Socks;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+    private static final Logger log = LoggerFactory.getLogger(SerializerBenchmark.class);
+
+    @Param({"compact", "jdk", "json"})
+    private String serializer;
+
+    private RedisSerializer<Object> redisSerializer;
+    private Integer total;
+    private Socks socks;
+    private byte[] totalBytes;
+    private byte[] socksBytes;
+
+    @Setup
+    public void setUp() {
+        redisSerializer = CacheSerializers.create(serializer);
+        total = 1_250;
+        socks = new Socks(42L, "red", 80L, 1_250);
+        totalBytes = redisSerializer.serialize(total);
+        socksBytes = redisSerializer.serialize(socks);
+        log.info("Сериализатор {}: total={} байт, socks={} байт", serializer, totalBytes.length, socksBytes.length);
+    }
+
+    @Benchmark
+    public byte[] serializeTotal() {
+        return redisSerializer.serialize(total);
+    }
+
+    @Benchmark
+    public Object deserializeTotal() {
+        return redisSerializer.deserialize(totalBytes);
+    }
+
+    @Benchmark
+    public byte[] serializeSocks() {
+        return redisSerializer.serialize(socks);
+    }
+
+    @Benchmark
+    public void deserializeSocks(Blackhole blackhole) {
+        blackhole.consume(redisSerializer.deserialize(socksBytes));
+    }
+}
@@ -2,8 +2,11 @@ package ru.artq.practice.socks;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import ru.artq.practice.socks.config.NativeHints;
 
 @SpringBootApplication
+@ImportRuntimeHints(NativeHints.class)
 public class SocksApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,90 @@
+package ru.artq.practice.socks.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Лимит одновременных запросов, подстраиваемый по задержке (AIMD). Сравниваются две скользящие
+ * средние задержки: короткая, примерно по десяти последним ответам, и опорная, по {@code baselineSamples}
+ * ответам. Если короткая больше опорной в {@code tolerance} раз или сервер ответил ошибкой, лимит
+ * уменьшается в {@code backoff} раз; иначе при загруженном лимите к нему прибавляется {@code 1 / limit},
+ * то есть примерно единица за каждый лимит ответов. Средние, а не минимум, выбраны потому, что в одной
+ * группе бывают и ответы из кэша, и запросы к базе.
+ */
+public class AdaptiveLimit {
+    private static final double SHORT_WEIGHT = 0.1;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double backoff;
+    private final double baselineWeight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    private double shortRttNanos;
+    private double baselineRttNanos;
+    private int sinceDecrease;
+
+    public AdaptiveLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double backoff, int baselineSamples) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.backoff = backoff;
+        this.baselineWeight = 1.0 / baselineSamples;
+        this.limit = Math.clamp(initialLimit, minLimit, maxLimit);
+    }
+
+    /**
+     * Занимает место без ожидания. После {@code true} вызывающий обязан вызвать {@link #release}.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release(long rttNanos, boolean failed) {
+        int wasInFlight = inFlight.getAndDecrement();
+        synchronized (this) {
+            if (baselineRttNanos == 0) {
+                shortRttNanos = rttNanos;
+                baselineRttNanos = rttNanos;
+            } else {
+                shortRttNanos += (rttNanos - shortRttNanos) * SHORT_WEIGHT;
+                baselineRttNanos += (rttNanos - baselineRttNanos) * baselineWeight;
+            }
+            double current = limit;
+            sinceDecrease++;
+            if (failed || shortRttNanos > baselineRttNanos * tolerance) {
+                // не чаще раза за лимит ответов: ответы, начатые до снижения, ещё несут старую задержку
+                if (sinceDecrease >= current) {
+                    limit = Math.max(minLimit, current * backoff);
+                    sinceDecrease = 0;
+                }
+            } else if (wasInFlight * 2 >= current) {
+                // лимит растёт, только когда он действительно используется
+                limit = Math.min(maxLimit, current + 1 / current);
+            }
+        }
+    }
+
+    /**
+     * Освобождает место, не учитывая задержку: длительность фоновой работы ничего не говорит о нагрузке.
+     */
+    public void releaseUnmeasured() {
+        inFlight.decrementAndGet();
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,126 @@
+package ru.artq.practice.socks.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Допуск запросов к складу. У каждой группы ({@link Bulkhead}) свой {@link AdaptiveLimit}: когда база
+ * замедляется, лимит группы снижается и лишние запросы сразу получают 503 с {@code Retry-After},
+ * а не ждут в очереди пула соединений вместе со всеми. Время ответа асинхронных запросов
+ * (выгрузка, v2) считается до завершения ответа, а не до выхода из контроллера.
+ */
+@Component
+@ConditionalOnProperty(name = "socks.admission.enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionFilter extends OncePerRequestFilter {
+    private final AdmissionLimits limits;
+    private final Map<Bulkhead, Counter> rejections = new EnumMap<>(Bulkhead.class);
+    private final String retryAfter;
+
+    public AdmissionFilter(MeterRegistry registry,
+                           AdmissionLimits limits,
+                           @Value("${socks.admission.retry-after:1s}") Duration retryAfter) {
+        this.limits = limits;
+        this.retryAfter = String.valueOf(Math.max(1, retryAfter.toSeconds()));
+        limits.forEach((bulkhead, limit) -> {
+            String tag = bulkhead.name().toLowerCase();
+            Gauge.builder("socks.admission.limit", limit, AdaptiveLimit::limit).tag("bulkhead", tag).register(registry);
+            Gauge.builder("socks.admission.in-flight", limit, AdaptiveLimit::inFlight).tag("bulkhead", tag).register(registry);
+            rejections.put(bulkhead, Counter.builder("socks.admission.rejected").tag("bulkhead", tag).register(registry));
+        });
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Bulkhead bulkhead = Bulkhead.of(request.getMethod(), request.getRequestURI());
+        if (bulkhead == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        AdaptiveLimit limit = limits.get(bulkhead);
+        if (!limit.tryAcquire()) {
+            rejections.get(bulkhead).increment();
+            reject(response);
+            return;
+        }
+        Admission admission = new Admission(limit, response);
+        try {
+            chain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            admission.release(true);
+            throw e;
+        }
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(admission);
+        } else {
+            admission.release(false);
+        }
+    }
+
+    private void reject(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, retryAfter);
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write("Сервис перегружен, повторите запрос позже");
+    }
+
+    private static class Admission implements AsyncListener {
+        private final AdaptiveLimit limit;
+        private final HttpServletResponse response;
+        private final long startedAt = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Admission(AdaptiveLimit limit, HttpServletResponse response) {
+            this.limit = limit;
+            this.response = response;
+        }
+
+        void release(boolean failed) {
+            if (released.compareAndSet(false, true)) {
+                limit.release(System.nanoTime() - startedAt, failed || response.getStatus() >= 500);
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release(false);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release(true);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release(true);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package ru.artq.practice.socks.admission;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Лимиты групп запросов. Общие для {@link AdmissionFilter} и фоновых загрузок: загрузка файла
+ * занимает место в группе {@link Bulkhead#BULK}, пока выполняется, хотя HTTP-запрос уже завершён.
+ */
+@Component
+@ConditionalOnProperty(name = "socks.admission.enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionLimits {
+    private final Map<Bulkhead, AdaptiveLimit> limits = new EnumMap<>(Bulkhead.class);
+
+    public AdmissionLimits(@Value("${socks.admission.reads.max-limit:200}") int readsMaxLimit,
+                           @Value("${socks.admission.movements.max-limit:100}") int movementsMaxLimit,
+                           @Value("${socks.admission.bulk.max-limit:4}") int bulkMaxLimit,
+                           @Value("${socks.admission.tolerance:2.0}") double tolerance,
+                           @Value("${socks.admission.backoff:0.9}") double backoff,
+                           @Value("${socks.admission.baseline-samples:500}") int baselineSamples) {
+        limits.put(Bulkhead.READS, new AdaptiveLimit(readsMaxLimit / 4, 4, readsMaxLimit, tolerance, backoff, baselineSamples));
+        limits.put(Bulkhead.MOVEMENTS, new AdaptiveLimit(movementsMaxLimit / 4, 4, movementsMaxLimit, tolerance, backoff, baselineSamples));
+        limits.put(Bulkhead.BULK, new AdaptiveLimit(bulkMaxLimit, 1, bulkMaxLimit, tolerance, backoff, baselineSamples));
+    }
+
+    public AdaptiveLimit get(Bulkhead bulkhead) {
+        return limits.get(bulkhead);
+    }
+
+    public void forEach(BiConsumer<Bulkhead, AdaptiveLimit> action) {
+        limits.forEach(action);
+    }
+}
@@ -0,0 +1,46 @@
+package ru.artq.practice.socks.admission;
+
+import org.springframework.http.HttpMethod;
+
+/**
+ * Группы запросов с раздельными лимитами: медленная выгрузка или загрузка файла не должна
+ * занимать места, нужные списаниям.
+ */
+public enum Bulkhead {
+    READS,
+    MOVEMENTS,
+    /**
+     * Загрузка и выгрузка файлов: длинные запросы, которые держат соединение с базой на весь файл.
+     * Фоновые загрузки занимают место в этой же группе, см. {@link AdmissionLimits}.
+     */
+    BULK;
+
+    private static final String V1 = "/api/socks";
+    private static final String V2 = "/api/v2/socks";
+
+    /**
+     * Группа запроса или {@code null}, если запрос не ограничивается: лента изменений держит
+     * запрос открытым, но соединение с базой берёт лишь изредка.
+     */
+    public static Bulkhead of(String method, String path) {
+        String resource = resource(path);
+        if (resource == null || resource.startsWith("/changes")) {
+            return null;
+        }
+        boolean read = HttpMethod.GET.matches(method);
+        // опрос состояния загрузки и отклонённых строк — короткое чтение
+        if (resource.startsWith("/export") || (resource.startsWith("/batch") && !read)) {
+            return BULK;
+        }
+        return read ? READS : MOVEMENTS;
+    }
+
+    private static String resource(String path) {
+        for (String prefix : new String[]{V1, V2}) {
+            if (path.equals(prefix) || path.startsWith(prefix + "/")) {
+                return path.substring(prefix.length());
+            }
+        }
+        return null;
+    }
+}
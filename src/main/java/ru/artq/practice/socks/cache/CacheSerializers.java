@@ -0,0 +1,20 @@
+package ru.artq.practice.socks.cache;
+
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+public final class CacheSerializers {
+
+    private CacheSerializers() {
+    }
+
+    public static RedisSerializer<Object> create(String name) {
+        return switch (name) {
+            case "compact" -> new CompactRedisSerializer();
+            case "jdk" -> new JdkSerializationRedisSerializer();
+            case "json" -> new GenericJackson2JsonRedisSerializer();
+            default -> throw new IllegalArgumentException("Неизвестный сериализатор кэша: " + name);
+        };
+    }
+}
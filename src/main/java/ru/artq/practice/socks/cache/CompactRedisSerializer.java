@@ -0,0 +1,211 @@
+package ru.artq.practice.socks.cache;
+
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import ru.artq.practice.socks.model.Socks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Компактный формат значений: байт версии, байт типа и varint-поля. Целые числа кодируются zigzag,
+ * поэтому небольшие количества занимают 1-2 байта. Типы без собственного кода пишутся JDK-сериализацией.
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+    static final byte VERSION = 1;
+
+    private static final byte TAG_NULL_VALUE = 0;
+    private static final byte TAG_INTEGER = 1;
+    private static final byte TAG_LONG = 2;
+    private static final byte TAG_STRING = 3;
+    private static final byte TAG_SOCKS = 4;
+    private static final byte TAG_JDK = 127;
+
+    private static final int SOCKS_HAS_ID = 1;
+    private static final int SOCKS_HAS_COLOR = 1 << 1;
+    private static final int SOCKS_HAS_COTTON_PART = 1 << 2;
+    private static final int SOCKS_HAS_QUANTITY = 1 << 3;
+
+    private final JdkSerializationRedisSerializer fallback = new JdkSerializationRedisSerializer();
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return null;
+        }
+        Output out = new Output(16);
+        out.writeByte(VERSION);
+        if (value instanceof Integer number) {
+            out.writeByte(TAG_INTEGER);
+            out.writeVarLong(zigzag(number));
+        } else if (value instanceof Long number) {
+            out.writeByte(TAG_LONG);
+            out.writeVarLong(zigzag(number));
+        } else if (value instanceof String string) {
+            out.writeByte(TAG_STRING);
+            out.writeString(string);
+        } else if (value instanceof Socks socks) {
+            out.writeByte(TAG_SOCKS);
+            writeSocks(out, socks);
+        } else if (value instanceof NullValue) {
+            out.writeByte(TAG_NULL_VALUE);
+        } else {
+            out.writeByte(TAG_JDK);
+            out.writeBytes(fallback.serialize(value));
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        Input in = new Input(bytes);
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new SerializationException("Неизвестная версия формата кэша: " + version);
+        }
+        byte tag = in.readByte();
+        return switch (tag) {
+            case TAG_INTEGER -> (int) unzigzag(in.readVarLong());
+            case TAG_LONG -> unzigzag(in.readVarLong());
+            case TAG_STRING -> in.readString();
+            case TAG_SOCKS -> readSocks(in);
+            case TAG_NULL_VALUE -> NullValue.INSTANCE;
+            case TAG_JDK -> fallback.deserialize(Arrays.copyOfRange(bytes, in.position, bytes.length));
+            default -> throw new SerializationException("Неизвестный тип значения в кэше: " + tag);
+        };
+    }
+
+    private static void writeSocks(Output out, Socks socks) {
+        int flags = (socks.getId() != null ? SOCKS_HAS_ID : 0)
+                | (socks.getColor() != null ? SOCKS_HAS_COLOR : 0)
+                | (socks.getCottonPart() != null ? SOCKS_HAS_COTTON_PART : 0)
+                | (socks.getQuantity() != null ? SOCKS_HAS_QUANTITY : 0);
+        out.writeByte((byte) flags);
+        if (socks.getId() != null) {
+            out.writeVarLong(zigzag(socks.getId()));
+        }
+        if (socks.getColor() != null) {
+            out.writeString(socks.getColor());
+        }
+        if (socks.getCottonPart() != null) {
+            out.writeVarLong(zigzag(socks.getCottonPart()));
+        }
+        if (socks.getQuantity() != null) {
+            out.writeVarLong(zigzag(socks.getQuantity()));
+        }
+    }
+
+    private static Socks readSocks(Input in) {
+        int flags = in.readByte();
+        Socks socks = new Socks();
+        if ((flags & SOCKS_HAS_ID) != 0) {
+            socks.setId(unzigzag(in.readVarLong()));
+        }
+        if ((flags & SOCKS_HAS_COLOR) != 0) {
+            socks.setColor(in.readString());
+        }
+        if ((flags & SOCKS_HAS_COTTON_PART) != 0) {
+            socks.setCottonPart(unzigzag(in.readVarLong()));
+        }
+        if ((flags & SOCKS_HAS_QUANTITY) != 0) {
+            socks.setQuantity((int) unzigzag(in.readVarLong()));
+        }
+        return socks;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Output {
+        private byte[] buffer;
+        private int position;
+
+        private Output(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        private void writeByte(byte value) {
+            ensureCapacity(1);
+            buffer[position++] = value;
+        }
+
+        private void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            writeBytes(bytes);
+        }
+
+        private void writeBytes(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    private static final class Input {
+        private final byte[] buffer;
+        private int position;
+
+        private Input(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        private byte readByte() {
+            if (position >= buffer.length) {
+                throw new SerializationException("Значение в кэше обрезано");
+            }
+            return buffer[position++];
+        }
+
+        private long readVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new SerializationException("Некорректное varint-значение в кэше");
+        }
+
+        private String readString() {
+            int length = (int) readVarLong();
+            if (length < 0 || position + length > buffer.length) {
+                throw new SerializationException("Значение в кэше обрезано");
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package ru.artq.practice.socks.cache;
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+public interface InvalidationBus {
+
+    void publish(Set<String> colors);
+
+    void subscribe(Consumer<Set<String>> subscriber);
+
+    /**
+     * Подписка только на изменения, опубликованные другими узлами: свои узел уже применил сам.
+     */
+    void subscribeRemote(Consumer<Set<String>> subscriber);
+}
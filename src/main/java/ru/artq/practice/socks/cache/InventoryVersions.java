@@ -0,0 +1,103 @@
+package ru.artq.practice.socks.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.artq.practice.socks.model.StockChange;
+import ru.artq.practice.socks.service.SocksChangedEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счётчики версий склада: общий и по каждому цвету. Версия входит в ключ кэша, поэтому
+ * увеличение счётчика делает недоступными только записи, на которые могло повлиять изменение.
+ * Прочитанные версии держатся локально и сбрасываются сообщением об инвалидации от любого узла.
+ */
+@Component
+@Slf4j
+public class InventoryVersions {
+    static final String GLOBAL_KEY = "socks:version:all";
+    static final String COLOR_KEY_PREFIX = "socks:version:color:";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final InvalidationBus invalidationBus;
+    private final Cache<String, Long> localVersions;
+    private final AtomicLong invalidationEpoch = new AtomicLong();
+
+    public InventoryVersions(StringRedisTemplate stringRedisTemplate,
+                             InvalidationBus invalidationBus,
+                             @Value("${socks.cache.near.version-ttl:5s}") Duration versionTtl) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.invalidationBus = invalidationBus;
+        // TTL ограничивает устаревание, если сообщение pub/sub потерялось
+        this.localVersions = Caffeine.newBuilder().expireAfterWrite(versionTtl).build();
+        invalidationBus.subscribe(this::forget);
+    }
+
+    public long version(String color) {
+        String key = versionKey(color);
+        Long local = localVersions.getIfPresent(key);
+        if (local != null) {
+            return local;
+        }
+        long epoch = invalidationEpoch.get();
+        String value = stringRedisTemplate.opsForValue().get(key);
+        long version = value == null ? 0 : Long.parseLong(value);
+        localVersions.put(key, version);
+        // инвалидация пришла во время чтения: прочитанное значение могло устареть
+        if (invalidationEpoch.get() != epoch) {
+            localVersions.asMap().remove(key, version);
+        }
+        return version;
+    }
+
+    public static String versionKey(String color) {
+        return color == null ? GLOBAL_KEY : COLOR_KEY_PREFIX + color;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSocksChanged(SocksChangedEvent event) {
+        Set<String> colors = new TreeSet<>();
+        for (StockChange change : event.getChanges()) {
+            colors.add(change.getKey().getColor());
+        }
+        bump(colors);
+    }
+
+    public void bump(Set<String> colors) {
+        if (colors.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String color : colors) {
+                    connection.stringCommands().incr((COLOR_KEY_PREFIX + color).getBytes(StandardCharsets.UTF_8));
+                }
+                connection.stringCommands().incr(GLOBAL_KEY.getBytes(StandardCharsets.UTF_8));
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // изменение уже закоммичено, поэтому ошибку не пробрасываем: устаревшие записи истекут по TTL
+            log.error("Не удалось обновить версии склада для цветов {}", colors, e);
+        }
+        forget(colors);
+        invalidationBus.publish(colors);
+    }
+
+    private void forget(Set<String> colors) {
+        invalidationEpoch.incrementAndGet();
+        for (String color : colors) {
+            localVersions.invalidate(COLOR_KEY_PREFIX + color);
+        }
+        localVersions.invalidate(GLOBAL_KEY);
+    }
+}
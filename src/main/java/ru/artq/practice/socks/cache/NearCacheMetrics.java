@@ -0,0 +1,34 @@
+package ru.artq.practice.socks.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Метрики ближнего кэша в именах, которые Spring Boot использует для остальных кэшей, с тегом tier=near.
+ */
+public class NearCacheMetrics implements MeterBinder {
+    private final TwoTierCache cache;
+    private final Tags tags;
+
+    public NearCacheMetrics(TwoTierCache cache) {
+        this.cache = cache;
+        this.tags = Tags.of("cache", cache.getName(), "tier", "near");
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", cache, c -> c.stats().getHits())
+                .tags(tags).tag("result", "hit").register(registry);
+        FunctionCounter.builder("cache.gets", cache, c -> c.stats().getMisses())
+                .tags(tags).tag("result", "miss").register(registry);
+        FunctionCounter.builder("cache.evictions", cache, c -> c.stats().getEvictions())
+                .tags(tags).register(registry);
+        FunctionCounter.builder("cache.invalidations", cache, c -> c.stats().getInvalidations())
+                .tags(tags).register(registry);
+        Gauge.builder("cache.size", cache, c -> c.stats().getSize())
+                .tags(tags).register(registry);
+    }
+}
@@ -0,0 +1,12 @@
+package ru.artq.practice.socks.cache;
+
+import lombok.Value;
+
+@Value
+public class NearCacheStats {
+    long hits;
+    long misses;
+    long evictions;
+    long invalidations;
+    long size;
+}
@@ -0,0 +1,81 @@
+package ru.artq.practice.socks.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+@Component
+@Slf4j
+public class RedisInvalidationBus implements InvalidationBus {
+    static final String CHANNEL = "socks:invalidate";
+    // первая строка сообщения — узел-отправитель, дальше цвета
+    static final String ORIGIN_PREFIX = "@origin:";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String nodeId;
+    private final List<Consumer<Set<String>>> subscribers = new CopyOnWriteArrayList<>();
+    private final List<Consumer<Set<String>>> remoteSubscribers = new CopyOnWriteArrayList<>();
+
+    public RedisInvalidationBus(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer container,
+                                @Value("${socks.node-id:${HOSTNAME:local}}") String nodeId) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.nodeId = nodeId;
+        container.addMessageListener((message, pattern) -> deliver(
+                new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(CHANNEL));
+    }
+
+    @Override
+    public void publish(Set<String> colors) {
+        if (colors.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL, ORIGIN_PREFIX + nodeId + "\n" + String.join("\n", colors));
+        } catch (RuntimeException e) {
+            log.error("Не удалось разослать инвалидацию для цветов {}", colors, e);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<Set<String>> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    @Override
+    public void subscribeRemote(Consumer<Set<String>> subscriber) {
+        remoteSubscribers.add(subscriber);
+    }
+
+    void deliver(String message) {
+        String[] lines = message.split("\n");
+        String origin = null;
+        int from = 0;
+        if (lines[0].startsWith(ORIGIN_PREFIX)) {
+            origin = lines[0].substring(ORIGIN_PREFIX.length());
+            from = 1;
+        }
+        Set<String> colors = Set.copyOf(Arrays.asList(lines).subList(from, lines.length));
+        if (colors.isEmpty()) {
+            return;
+        }
+        for (Consumer<Set<String>> subscriber : subscribers) {
+            subscriber.accept(colors);
+        }
+        // сообщение без отправителя (от узла старой версии) считается чужим
+        if (!nodeId.equals(origin)) {
+            for (Consumer<Set<String>> subscriber : remoteSubscribers) {
+                subscriber.accept(colors);
+            }
+        }
+    }
+}
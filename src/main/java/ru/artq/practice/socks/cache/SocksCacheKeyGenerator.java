@@ -0,0 +1,41 @@
+package ru.artq.practice.socks.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.stereotype.Component;
+import ru.artq.practice.socks.model.SocksFilter;
+
+import java.lang.reflect.Method;
+import java.util.Set;
+
+@Component("socksCacheKeyGenerator")
+@RequiredArgsConstructor
+public class SocksCacheKeyGenerator implements KeyGenerator {
+    private final InventoryVersions inventoryVersions;
+
+    @Override
+    public Object generate(Object target, Method method, Object... params) {
+        SocksFilter filter = SocksFilter.of((String) params[0], (String) params[1],
+                (Long) params[2], (Long) params[3], (Long) params[4]);
+        return cacheKey(filter, inventoryVersions.version(filter.getColor()));
+    }
+
+    public static String cacheKey(SocksFilter filter, long version) {
+        return filter.cacheKey() + "|v=" + version;
+    }
+
+    static boolean affectedBy(Object key, Set<String> colors) {
+        if (!(key instanceof String cacheKey)) {
+            return false;
+        }
+        if (cacheKey.startsWith("color=|")) {
+            return true;
+        }
+        for (String color : colors) {
+            if (cacheKey.startsWith("color=" + color + "|")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
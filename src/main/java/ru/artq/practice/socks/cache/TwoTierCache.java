@@ -0,0 +1,110 @@
+package ru.artq.practice.socks.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Локальный кэш ограниченного размера перед удалённым. Попадание в L1 не требует сетевого запроса;
+ * промах читает L2 и заполняет L1.
+ */
+public class TwoTierCache implements Cache {
+    private final Cache remote;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, ValueWrapper> local;
+    private final LongAdder invalidations = new LongAdder();
+
+    public TwoTierCache(Cache remote, long maximumSize, Duration ttl) {
+        this.remote = remote;
+        this.local = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public String getName() {
+        return remote.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return local;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper wrapper = local.getIfPresent(key);
+        if (wrapper != null) {
+            return wrapper;
+        }
+        wrapper = remote.get(key);
+        if (wrapper != null) {
+            local.put(key, wrapper);
+        }
+        return wrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Значение в кэше не соответствует типу " + type.getName() + ": " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+        T value = remote.get(key, valueLoader);
+        local.put(key, new SimpleValueWrapper(value));
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        remote.put(key, value);
+        local.put(key, new SimpleValueWrapper(value));
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+        local.invalidate(key);
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        local.invalidateAll();
+    }
+
+    public Cache getRemote() {
+        return remote;
+    }
+
+    public void evictLocalIf(Predicate<Object> keyPredicate) {
+        int before = local.asMap().size();
+        local.asMap().keySet().removeIf(keyPredicate);
+        invalidations.add(Math.max(0, before - local.asMap().size()));
+    }
+
+    public NearCacheStats stats() {
+        CacheStats stats = local.stats();
+        return new NearCacheStats(stats.hitCount(), stats.missCount(), stats.evictionCount(),
+                invalidations.sum(), local.estimatedSize());
+    }
+}
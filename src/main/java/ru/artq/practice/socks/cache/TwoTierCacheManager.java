@@ -0,0 +1,46 @@
+package ru.artq.practice.socks.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class TwoTierCacheManager implements CacheManager {
+    private final CacheManager remote;
+    private final long maximumSize;
+    private final Duration ttl;
+    private final Map<String, TwoTierCache> caches = new ConcurrentHashMap<>();
+
+    public TwoTierCacheManager(CacheManager remote, InvalidationBus invalidationBus, long maximumSize, Duration ttl) {
+        this.remote = remote;
+        this.maximumSize = maximumSize;
+        this.ttl = ttl;
+        invalidationBus.subscribe(colors -> caches.values().forEach(
+                cache -> cache.evictLocalIf(key -> SocksCacheKeyGenerator.affectedBy(key, colors))));
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        TwoTierCache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache remoteCache = remote.getCache(name);
+        if (remoteCache == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, n -> new TwoTierCache(remoteCache, maximumSize, ttl));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remote.getCacheNames();
+    }
+
+    public Collection<TwoTierCache> getCaches() {
+        return caches.values();
+    }
+}
@@ -0,0 +1,137 @@
+package ru.artq.practice.socks.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * С виртуальными потоками число одновременных запросов не ограничено пулом Tomcat, поэтому перед пулом
+ * соединений стоит семафор размером с пул: лишние запросы ждут честно и недолго, а затем получают ошибку,
+ * вместо того чтобы тысячами висеть в очереди Hikari. Разрешение берёт только внешнее соединение потока:
+ * вложенные (REQUIRES_NEW, словарь цветов, отметки импорта, транзакции шардов) идут без семафора, иначе
+ * запросы, занявшие все разрешения, ждали бы сами себя. Под вложенные соединения в пуле оставлен запас:
+ * {@code max-concurrency} меньше размера пула.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class ConnectionLimiter implements BeanPostProcessor {
+    private final int maxConcurrency;
+    private final Duration acquireTimeout;
+
+    public ConnectionLimiter(@Value("${socks.db.max-concurrency:10}") int maxConcurrency,
+                             @Value("${socks.db.acquire-timeout:2s}") Duration acquireTimeout) {
+        this.maxConcurrency = maxConcurrency;
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource && "dataSource".equals(beanName)) {
+            return new LimitedDataSource(dataSource, new Semaphore(maxConcurrency, true), acquireTimeout);
+        }
+        return bean;
+    }
+
+    static class LimitedDataSource extends DelegatingDataSource {
+        private final Semaphore permits;
+        private final Duration acquireTimeout;
+        // число открытых соединений потока: разрешение нужно только первому
+        private final ThreadLocal<AtomicInteger> opened = ThreadLocal.withInitial(AtomicInteger::new);
+
+        LimitedDataSource(DataSource target, Semaphore permits, Duration acquireTimeout) {
+            super(target);
+            this.permits = permits;
+            this.acquireTimeout = acquireTimeout;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            AtomicInteger depth = opened.get();
+            boolean limited = acquire(depth);
+            try {
+                return track(super.getConnection(), depth, limited);
+            } catch (SQLException | RuntimeException e) {
+                if (limited) {
+                    permits.release();
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            AtomicInteger depth = opened.get();
+            boolean limited = acquire(depth);
+            try {
+                return track(super.getConnection(username, password), depth, limited);
+            } catch (SQLException | RuntimeException e) {
+                if (limited) {
+                    permits.release();
+                }
+                throw e;
+            }
+        }
+
+        private boolean acquire(AtomicInteger depth) throws SQLException {
+            if (depth.get() > 0) {
+                return false;
+            }
+            try {
+                if (!permits.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                    throw new SQLTransientConnectionException(
+                            "Нет свободных соединений с базой за " + acquireTimeout.toMillis() + " мс");
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLTransientConnectionException("Ожидание соединения с базой прервано", e);
+            }
+        }
+
+        // счётчик принадлежит потоку, открывшему соединение, даже если закрывает его другой поток
+        private Connection track(Connection connection, AtomicInteger depth, boolean limited) {
+            depth.incrementAndGet();
+            AtomicBoolean released = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if ("close".equals(method.getName()) && released.compareAndSet(false, true)) {
+                            try {
+                                return method.invoke(connection, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getTargetException();
+                            } finally {
+                                depth.decrementAndGet();
+                                if (limited) {
+                                    permits.release();
+                                }
+                            }
+                        }
+                        if ("equals".equals(method.getName())) {
+                            return proxy == args[0];
+                        }
+                        if ("hashCode".equals(method.getName())) {
+                            return System.identityHashCode(proxy);
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getTargetException();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ru.artq.practice.socks.config;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Профиль {@code fast-startup} для экземпляров, которые поднимает автомасштабирование: схема уже
+ * приведена миграциями при выкладке, поэтому при старте она только сверяется с историей Flyway.
+ * Несовпадение останавливает запуск, как и при обычной миграции.
+ */
+@Configuration
+@Profile("fast-startup")
+public class FastStartupConfig {
+
+    @Bean
+    public FlywayMigrationStrategy validateOnlyMigrationStrategy() {
+        return Flyway::validate;
+    }
+}
@@ -0,0 +1,28 @@
+package ru.artq.practice.socks.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ImportConfig {
+    @Bean
+    public ThreadPoolTaskExecutor importExecutor(
+            @Value("${socks.import.workers:2}") int workers,
+            @Value("${socks.import.queue-capacity:16}") int queueCapacity,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("socks-import-");
+        if (virtualThreads) {
+            // пул остаётся ограничителем числа одновременных загрузок и очереди, потоки в нём виртуальные
+            executor.setThreadFactory(Thread.ofVirtual().name("socks-import-", 0).factory());
+        }
+        // остановка прерывает загрузки: они остаются RUNNING и продолжаются с контрольной точки после старта
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+}
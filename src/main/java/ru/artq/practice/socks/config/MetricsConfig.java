@@ -0,0 +1,32 @@
+package ru.artq.practice.socks.config;
+
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.actuate.metrics.cache.RedisCacheMetrics;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.RedisCache;
+import ru.artq.practice.socks.cache.NearCacheMetrics;
+import ru.artq.practice.socks.cache.TwoTierCache;
+import ru.artq.practice.socks.cache.TwoTierCacheManager;
+
+@Configuration
+public class MetricsConfig {
+    // стандартная регистрация метрик кэшей не знает двухуровневый кэш, поэтому уровни привязываются здесь
+    @Bean
+    public MeterBinder socksCacheMetrics(CacheManager cacheManager) {
+        return registry -> {
+            if (!(cacheManager instanceof TwoTierCacheManager twoTierCacheManager)) {
+                return;
+            }
+            for (String name : twoTierCacheManager.getCacheNames()) {
+                TwoTierCache cache = (TwoTierCache) twoTierCacheManager.getCache(name);
+                new NearCacheMetrics(cache).bindTo(registry);
+                if (cache.getRemote() instanceof RedisCache redisCache) {
+                    new RedisCacheMetrics(redisCache, Tags.of("tier", "remote")).bindTo(registry);
+                }
+            }
+        };
+    }
+}
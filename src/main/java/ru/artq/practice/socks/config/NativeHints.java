@@ -0,0 +1,31 @@
+package ru.artq.practice.socks.config;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import ru.artq.practice.socks.datasource.ReplicaRouting;
+import ru.artq.practice.socks.model.ChangeFeedEntry;
+import ru.artq.practice.socks.model.ChangeFeedPage;
+import ru.artq.practice.socks.model.Socks;
+import ru.artq.practice.socks.repository.ColorIdConverter;
+
+/**
+ * Подсказки для нативного образа сверх того, что Spring AOT выводит сам. Lombok работает при компиляции
+ * и подсказок не требует; сущности JPA и миграции Flyway из {@code db/migration} регистрирует Spring Boot.
+ * Здесь - то, что читается в обход контекста: сообщения OpenCSV и объекты,
+ * которые Jackson пишет в выгрузку и SSE без объявленного типа ответа.
+ */
+public class NativeHints implements RuntimeHintsRegistrar {
+    private final BindingReflectionHintsRegistrar bindingHints = new BindingReflectionHintsRegistrar();
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        hints.resources().registerResourceBundle("opencsv");
+        bindingHints.registerReflectionHints(hints.reflection(), Socks.class, ChangeFeedPage.class, ChangeFeedEntry.class);
+        // конвертер создаёт Hibernate через контейнер бинов Spring, но по имени класса из метамодели
+        hints.reflection().registerType(ColorIdConverter.class, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+        // условие unless кэша количества вызывает статический метод через SpEL
+        hints.reflection().registerType(ReplicaRouting.class, MemberCategory.INVOKE_PUBLIC_METHODS);
+    }
+}
@@ -0,0 +1,29 @@
+package ru.artq.practice.socks.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+/**
+ * В приложении два менеджера транзакций: JPA для блокирующего API и R2DBC для /api/v2.
+ * Автоконфигурация JPA не создаёт свой, если уже есть R2DBC, поэтому JPA объявлен явно и основным:
+ * {@code @Transactional} и {@code TransactionTemplate} работают с ним, реактивный код использует
+ * {@link TransactionalOperator}.
+ */
+@Configuration
+public class PersistenceConfig {
+    @Bean
+    @Primary
+    public JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+        return new JpaTransactionManager(entityManagerFactory);
+    }
+
+    @Bean
+    public TransactionalOperator transactionalOperator(R2dbcTransactionManager r2dbcTransactionManager) {
+        return TransactionalOperator.create(r2dbcTransactionManager);
+    }
+}
@@ -0,0 +1,82 @@
+package ru.artq.practice.socks.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import ru.artq.practice.socks.datasource.ConsistencyTokens;
+import ru.artq.practice.socks.datasource.ReplicaLagMonitor;
+import ru.artq.practice.socks.datasource.ReplicaRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Разделение чтения и записи. Включается списком реплик в {@code socks.datasource.replicas};
+ * пул каждой реплики настраивается как основной ({@code spring.datasource.hikari.*}), но только на чтение.
+ * Без реплик остаётся обычный автоконфигурируемый источник данных.
+ */
+@Configuration
+@ConditionalOnProperty(name = "socks.datasource.replicas")
+public class ReplicaRoutingConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("socks-primary");
+        return dataSource;
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public ReplicaLagMonitor replicaLagMonitor(
+            @Qualifier("primaryDataSource") HikariDataSource primaryDataSource,
+            @Value("${socks.datasource.replicas}") List<String> replicaUrls,
+            @Value("${socks.datasource.replica-max-lag:5s}") Duration maxLag,
+            @Value("${socks.datasource.replica-check-interval:500ms}") Duration checkInterval) {
+        List<DataSource> replicas = new ArrayList<>(replicaUrls.size());
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            HikariConfig config = new HikariConfig();
+            primaryDataSource.copyStateTo(config);
+            config.setJdbcUrl(replicaUrls.get(i).trim());
+            config.setPoolName("socks-replica-" + i);
+            config.setReadOnly(true);
+            replicas.add(new HikariDataSource(config));
+        }
+        return new ReplicaLagMonitor(primaryDataSource, replicas, maxLag, checkInterval);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") HikariDataSource primaryDataSource,
+                                 ReplicaLagMonitor replicaLagMonitor,
+                                 @Value("${socks.datasource.replicas}") List<String> replicaUrls) {
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(replicaLagMonitor);
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(ReplicaRoutingDataSource.PRIMARY, primaryDataSource);
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            targets.put(ReplicaRoutingDataSource.replicaKey(i), replicaLagMonitor.replica(i));
+        }
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(primaryDataSource);
+        routing.afterPropertiesSet();
+        // соединение берётся при первом запросе, когда признак read-only транзакции уже известен
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    @Bean
+    public ConsistencyTokens consistencyTokens(ReplicaLagMonitor replicaLagMonitor) {
+        return new ConsistencyTokens(replicaLagMonitor);
+    }
+}
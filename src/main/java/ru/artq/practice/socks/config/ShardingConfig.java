@@ -0,0 +1,105 @@
+package ru.artq.practice.socks.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import ru.artq.practice.socks.datasource.ShardRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Шардирование склада. Включается списком дополнительных баз в {@code socks.shards}; шард 0 — это
+ * {@code spring.datasource}, на нём же остаются служебные таблицы. Пулы шардов настраиваются как основной.
+ * Миграции применяются к каждому шарду при старте, словарь цветов копируется с шарда 0 с теми же id,
+ * последовательность id на шарде {@code s} выдаёт числа с остатком {@code s} по модулю числа шардов,
+ * чтобы позицию можно было найти по id.
+ * Позиции, записанные до включения шардирования или смены числа шардов, не переносятся.
+ */
+@Configuration
+@ConditionalOnProperty(name = "socks.shards")
+@Slf4j
+public class ShardingConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource shardDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("socks-shard-0");
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("shardDataSource") HikariDataSource homeShard,
+                                 @Value("${socks.shards}") List<String> shardUrls,
+                                 @Value("${socks.datasource.replicas:}") List<String> replicaUrls) {
+        if (!replicaUrls.isEmpty()) {
+            throw new IllegalStateException("Шардирование и реплики чтения не поддерживаются одновременно");
+        }
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(homeShard);
+        for (String url : shardUrls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariConfig config = new HikariConfig();
+            homeShard.copyStateTo(config);
+            config.setJdbcUrl(url.trim());
+            config.setPoolName("socks-shard-" + shards.size());
+            shards.add(new HikariDataSource(config));
+        }
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            prepareShard(shards.get(i), i, shards.size());
+            if (i > 0) {
+                copyColors(homeShard, shards.get(i));
+            }
+            targets.put(i, shards.get(i));
+        }
+        ShardRoutingDataSource routing = new ShardRoutingDataSource();
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(homeShard);
+        routing.afterPropertiesSet();
+        log.info("Шардирование склада: шардов={}", shards.size());
+        // соединение берётся при первом запросе, когда шард уже выбран
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    // шаг меняется только при смене числа шардов: перезапуск последовательности под нагрузкой небезопасен
+    private static void prepareShard(DataSource shard, int index, int shardCount) {
+        Flyway.configure().dataSource(shard).baselineOnMigrate(true).baselineVersion("0").load().migrate();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(shard);
+        String sequence = jdbcTemplate.queryForObject("SELECT pg_get_serial_sequence('socks', 'id')", String.class);
+        Long increment = jdbcTemplate.queryForObject(
+                "SELECT seqincrement FROM pg_sequence WHERE seqrelid = ?::regclass", Long.class, sequence);
+        if (increment != null && increment == shardCount) {
+            return;
+        }
+        long maxId = jdbcTemplate.queryForObject("SELECT coalesce(max(id), 0) FROM socks", Long.class);
+        long start = maxId + 1 + Math.floorMod(index - (maxId + 1), (long) shardCount);
+        jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " INCREMENT BY " + shardCount + " RESTART WITH " + start);
+        log.info("Шард {}: последовательность {} выдаёт id с {} с шагом {}", index, sequence, start, shardCount);
+    }
+
+    // цвет, заведённый при недоступном шарде, доезжает сюда при следующем старте
+    private static void copyColors(DataSource homeShard, DataSource shard) {
+        List<Object[]> colors = new JdbcTemplate(homeShard).query("SELECT id, name FROM socks_colors",
+                (rs, rowNum) -> new Object[]{rs.getInt(1), rs.getString(2)});
+        new JdbcTemplate(shard).batchUpdate("INSERT INTO socks_colors (id, name) VALUES (?, ?) ON CONFLICT DO NOTHING", colors);
+    }
+}
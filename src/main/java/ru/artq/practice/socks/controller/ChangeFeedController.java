@@ -0,0 +1,65 @@
+package ru.artq.practice.socks.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.artq.practice.socks.errors.SocksArgumentException;
+import ru.artq.practice.socks.model.ChangeFeedPage;
+import ru.artq.practice.socks.service.feed.ChangeFeed;
+import ru.artq.practice.socks.service.feed.ChangeFeedStreamer;
+
+import java.time.Duration;
+
+@RestController
+@RequestMapping("api/socks/changes")
+@RequiredArgsConstructor
+public class ChangeFeedController {
+    private static final int MAX_LIMIT = 10000;
+    private static final long MAX_WAIT_MS = 60000;
+
+    private final ChangeFeed changeFeed;
+    private final ChangeFeedStreamer changeFeedStreamer;
+
+    @Operation(summary = "Изменения остатков после курсора since вида <узел>:<номер> (long-poll)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Порция изменений; пустая, если за время ожидания их не было",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = ChangeFeedPage.class))),
+            @ApiResponse(responseCode = "400", description = "Некорректные параметры запроса", content = @Content)
+    })
+    @GetMapping
+    public ResponseEntity<ChangeFeedPage> getChanges(
+            @RequestParam String since,
+            @RequestParam(defaultValue = "30000") long waitMs,
+            @RequestParam(defaultValue = "1000") int limit) throws InterruptedException {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new SocksArgumentException("Размер порции должен быть от 1 до " + MAX_LIMIT);
+        }
+        if (waitMs < 0 || waitMs > MAX_WAIT_MS) {
+            throw new SocksArgumentException("Время ожидания должно быть от 0 до " + MAX_WAIT_MS + " мс");
+        }
+        return ResponseEntity.ok(changeFeed.await(since, Duration.ofMillis(waitMs), limit));
+    }
+
+    @Operation(summary = "Текущий курсор ленты изменений")
+    @GetMapping("head")
+    public ResponseEntity<String> getHead() {
+        return ResponseEntity.ok(changeFeed.cursor());
+    }
+
+    @Operation(summary = "Подписка на изменения остатков (Server-Sent Events)")
+    @GetMapping(value = "stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(
+            @RequestParam(required = false) String since,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        String from = lastEventId != null ? lastEventId : since != null ? since : changeFeed.cursor();
+        return changeFeedStreamer.subscribe(from);
+    }
+}
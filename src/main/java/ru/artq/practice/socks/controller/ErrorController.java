@@ -1,37 +1,54 @@
 package ru.artq.practice.socks.controller;
 
+import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import ru.artq.practice.socks.errors.CsvProcessingException;
+import ru.artq.practice.socks.errors.ImportRejectedException;
 import ru.artq.practice.socks.errors.SocksArgumentException;
 import ru.artq.practice.socks.errors.SocksNotFoundException;
+import ru.artq.practice.socks.metrics.SocksMetrics;
 
 @ControllerAdvice
+@RequiredArgsConstructor
 public class ErrorController {
+    private final SocksMetrics socksMetrics;
+
     @ExceptionHandler(SocksArgumentException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ResponseEntity<String> handleSocksArgumentException(SocksArgumentException ex) {
+        socksMetrics.apiError(ex);
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
     }
 
     @ExceptionHandler(SocksNotFoundException.class)
     @ResponseStatus(HttpStatus.NOT_FOUND)
     public ResponseEntity<String> handleSocksNotFoundException(SocksNotFoundException ex) {
+        socksMetrics.apiError(ex);
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.NOT_FOUND);
     }
 
     @ExceptionHandler(CsvProcessingException.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ResponseEntity<String> handleCsvProcessingException(CsvProcessingException ex) {
+        socksMetrics.apiError(ex);
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
+    @ExceptionHandler(ImportRejectedException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ResponseEntity<String> handleImportRejectedException(ImportRejectedException ex) {
+        socksMetrics.apiError(ex);
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     @ExceptionHandler(Exception.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ResponseEntity<String> handleException(Exception ex) {
+        socksMetrics.apiError(ex);
         return new ResponseEntity<>("Произошла непредвиденная ошибка: " + ex.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
     }
 }
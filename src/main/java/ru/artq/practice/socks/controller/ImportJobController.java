@@ -0,0 +1,59 @@
+package ru.artq.practice.socks.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import ru.artq.practice.socks.model.ImportJobProgress;
+import ru.artq.practice.socks.service.ImportJobService;
+
+import java.net.URI;
+
+@RestController
+@RequestMapping("api/socks/batch")
+@RequiredArgsConstructor
+public class ImportJobController {
+    private final ImportJobService importJobService;
+
+    @Operation(summary = "Асинхронная загрузка партий носков из CSV")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Загрузка поставлена в очередь",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = ImportJobProgress.class))),
+            @ApiResponse(responseCode = "503", description = "Очередь загрузок переполнена", content = @Content)
+    })
+    @PostMapping("jobs")
+    public ResponseEntity<ImportJobProgress> submit(@RequestParam("file") MultipartFile file) {
+        ImportJobProgress progress = importJobService.submit(file);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/socks/batch/" + progress.getJobId()))
+                .body(progress);
+    }
+
+    @Operation(summary = "Прогресс асинхронной загрузки")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос"),
+            @ApiResponse(responseCode = "404", description = "Загрузка не найдена", content = @Content)
+    })
+    @GetMapping("{jobId}")
+    public ResponseEntity<ImportJobProgress> getProgress(@PathVariable String jobId) {
+        return ResponseEntity.ok(importJobService.getProgress(jobId));
+    }
+
+    @Operation(summary = "Файл отклонённых строк загрузки")
+    @GetMapping("{jobId}/errors")
+    public ResponseEntity<Resource> getErrors(@PathVariable String jobId) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + jobId + ".errors.csv\"")
+                .body(importJobService.getErrors(jobId));
+    }
+}
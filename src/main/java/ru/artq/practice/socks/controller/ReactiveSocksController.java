@@ -0,0 +1,91 @@
+package ru.artq.practice.socks.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.artq.practice.socks.model.BatchResult;
+import ru.artq.practice.socks.model.Socks;
+import ru.artq.practice.socks.model.SocksTotal;
+import ru.artq.practice.socks.service.reactive.ReactiveSocksService;
+
+@RestController
+@RequestMapping("api/v2/socks")
+@RequiredArgsConstructor
+public class ReactiveSocksController {
+    private final ReactiveSocksService reactiveSocksService;
+
+    @Operation(summary = "Получить общие количество носков с фильтрацией (неблокирующий вариант)")
+    @GetMapping
+    public Mono<Integer> getSocksQuantity(
+            @RequestParam(required = false) String color,
+            @RequestParam(required = false) String comparison,
+            @RequestParam(required = false) Long cottonPart,
+            @RequestParam(required = false) Long minCotton,
+            @RequestParam(required = false) Long maxCotton) {
+        return reactiveSocksService.getSocks(color, comparison, cottonPart, minCotton, maxCotton);
+    }
+
+    @Operation(summary = "Получить количество носков по цветам или интервалам хлопка (неблокирующий вариант)")
+    @GetMapping("totals")
+    public Flux<SocksTotal> getSocksTotals(
+            @RequestParam String groupBy,
+            @RequestParam(defaultValue = "10") Long bucket,
+            @RequestParam(required = false) String color,
+            @RequestParam(required = false) String comparison,
+            @RequestParam(required = false) Long cottonPart,
+            @RequestParam(required = false) Long minCotton,
+            @RequestParam(required = false) Long maxCotton) {
+        return reactiveSocksService.getSocksTotals(groupBy, bucket, color, comparison, cottonPart, minCotton, maxCotton);
+    }
+
+    @Operation(summary = "Получить случайные позиции склада (неблокирующий вариант)")
+    @GetMapping("any")
+    public Flux<Socks> getAnySocks(
+            @RequestParam(defaultValue = "1") int n,
+            @RequestParam(defaultValue = "false") boolean weighted) {
+        return reactiveSocksService.getAnySocks(n, weighted);
+    }
+
+    @Operation(summary = "Регистрация прихода носков (неблокирующий вариант)")
+    @PostMapping("income")
+    public Mono<ResponseEntity<Void>> registerIncome(
+            @RequestParam String color,
+            @RequestParam Long cottonPart,
+            @RequestParam Integer quantity) {
+        return reactiveSocksService.registerIncome(color, cottonPart, quantity)
+                .then(Mono.just(ResponseEntity.ok().build()));
+    }
+
+    @Operation(summary = "Регистрация отпуска носков (неблокирующий вариант)")
+    @PostMapping("outcome")
+    public Mono<ResponseEntity<Void>> registerOutcome(
+            @RequestParam String color,
+            @RequestParam Long cottonPart,
+            @RequestParam Integer quantity) {
+        return reactiveSocksService.registerOutcome(color, cottonPart, quantity)
+                .then(Mono.just(ResponseEntity.ok().build()));
+    }
+
+    @Operation(summary = "Обновить данные носков (неблокирующий вариант)")
+    @PutMapping("{id}")
+    public Mono<ResponseEntity<Void>> updateSocks(
+            @PathVariable Long id,
+            @RequestParam String color,
+            @RequestParam Long cottonPart,
+            @RequestParam Integer quantity) {
+        return reactiveSocksService.updateSocks(id, color, cottonPart, quantity)
+                .then(Mono.just(ResponseEntity.ok().build()));
+    }
+
+    @Operation(summary = "Загрузка партий носков из CSV (неблокирующий вариант)")
+    @PostMapping("batch")
+    public Mono<ResponseEntity<BatchResult>> batchSocks(@RequestParam("file") MultipartFile file) {
+        return reactiveSocksService.batchSocks(file)
+                .map(result -> ResponseEntity.status(HttpStatus.CREATED).body(result));
+    }
+}
@@ -1,25 +1,51 @@
 package ru.artq.practice.socks.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.artq.practice.socks.datasource.ReplicaRouting;
+import ru.artq.practice.socks.model.BatchResult;
+import ru.artq.practice.socks.model.BulkMode;
+import ru.artq.practice.socks.model.BulkMovementResult;
+import ru.artq.practice.socks.model.ExportFormat;
+import ru.artq.practice.socks.model.LedgerEntry;
+import ru.artq.practice.socks.model.MovementRequest;
+import ru.artq.practice.socks.model.Reservation;
 import ru.artq.practice.socks.model.Socks;
+import ru.artq.practice.socks.model.SocksTotal;
 import ru.artq.practice.socks.service.SocksService;
 
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
 @RestController
 @RequestMapping("api/socks")
 @RequiredArgsConstructor
 public class SocksController {
     private final SocksService socksService;
 
+    // 0 - прокси хранит ответ, но каждый раз сверяет ETag
+    @Value("${socks.http.quantity-max-age:0s}")
+    private Duration quantityMaxAge = Duration.ZERO;
+
     @Operation(summary = "Получить общие количество носков с фильтрацией")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200",
@@ -37,15 +63,135 @@ public class SocksController {
             @RequestParam(required = false) Long cottonPart,
             @RequestParam(required = false) Long minCotton,
             @RequestParam(required = false) Long maxCotton,
-            @RequestParam(required = false) String sortBy) {
+            @RequestParam(required = false) String sortBy,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String etag = inventoryEtag(color);
+        if (notModified(ifNoneMatch, etag)) {
+            return notModifiedResponse(etag);
+        }
         Integer result = socksService.getSocks(
                 color, comparison, cottonPart, minCotton, maxCotton, sortBy);
-        return ResponseEntity.ok(result);
+        return quantityResponse(etag, result);
+    }
+
+    @Operation(summary = "Получить количество носков по цветам или интервалам хлопка")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос",
+                    content = @Content(mediaType = "application/json",
+                            array = @ArraySchema(schema = @Schema(implementation = SocksTotal.class)))),
+            @ApiResponse(responseCode = "400", description = "Некорректные параметры запроса", content = @Content)
+    })
+    @GetMapping("totals")
+    public ResponseEntity<List<SocksTotal>> getSocksTotals(
+            @RequestParam String groupBy,
+            @RequestParam(defaultValue = "10") Long bucket,
+            @RequestParam(required = false) String color,
+            @RequestParam(required = false) String comparison,
+            @RequestParam(required = false) Long cottonPart,
+            @RequestParam(required = false) Long minCotton,
+            @RequestParam(required = false) Long maxCotton,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String etag = inventoryEtag(color);
+        if (notModified(ifNoneMatch, etag)) {
+            return notModifiedResponse(etag);
+        }
+        return quantityResponse(etag, socksService.getSocksTotals(
+                groupBy, bucket, color, comparison, cottonPart, minCotton, maxCotton));
     }
 
+    @Operation(summary = "Получить количество носков на заданный момент времени")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = Integer.class))),
+            @ApiResponse(responseCode = "400", description = "Некорректные параметры или момент вне истории", content = @Content),
+            @ApiResponse(responseCode = "404", description = "На складе носки не найдены", content = @Content)
+    })
+    @GetMapping("history")
+    public ResponseEntity<Integer> getSocksQuantityAsOf(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime asOf,
+            @RequestParam(required = false) String color,
+            @RequestParam(required = false) String comparison,
+            @RequestParam(required = false) Long cottonPart,
+            @RequestParam(required = false) Long minCotton,
+            @RequestParam(required = false) Long maxCotton) {
+        return ResponseEntity.ok(socksService.getSocksAsOf(
+                asOf.toInstant(), color, comparison, cottonPart, minCotton, maxCotton));
+    }
+
+    @Operation(summary = "Получить журнал движений позиции за интервал")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос",
+                    content = @Content(mediaType = "application/json",
+                            array = @ArraySchema(schema = @Schema(implementation = LedgerEntry.class)))),
+            @ApiResponse(responseCode = "400", description = "Некорректные параметры запроса", content = @Content)
+    })
+    @GetMapping("ledger")
+    public ResponseEntity<List<LedgerEntry>> getLedger(
+            @RequestParam String color,
+            @RequestParam Long cottonPart,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+            @RequestParam(defaultValue = "1000") int limit) {
+        return ResponseEntity.ok(socksService.getLedger(color, cottonPart, from.toInstant(), to.toInstant(), limit));
+    }
+
+    @Operation(summary = "Выгрузить склад потоком в CSV или NDJSON")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Выгрузка идёт в теле ответа",
+                    content = {@Content(mediaType = "text/csv"), @Content(mediaType = "application/x-ndjson")}),
+            @ApiResponse(responseCode = "400", description = "Некорректные параметры запроса", content = @Content)
+    })
+    @GetMapping("export")
+    public ResponseEntity<StreamingResponseBody> exportSocks(
+            @RequestParam(defaultValue = "CSV") ExportFormat format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @RequestParam(required = false) String color,
+            @RequestParam(required = false) String comparison,
+            @RequestParam(required = false) Long cottonPart,
+            @RequestParam(required = false) Long minCotton,
+            @RequestParam(required = false) Long maxCotton) {
+        StreamingResponseBody body = socksService.exportSocks(
+                format, color, comparison, cottonPart, minCotton, maxCotton);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getMediaType() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"socks." + format.getExtension() + "\"");
+        if (!gzip) {
+            return response.body(body);
+        }
+        return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(outputStream -> {
+            GZIPOutputStream gzipStream = new GZIPOutputStream(outputStream, 64 * 1024);
+            body.writeTo(gzipStream);
+            gzipStream.finish();
+        });
+    }
+
+    @Operation(summary = "Получить случайную позицию склада")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = Socks.class))),
+            @ApiResponse(responseCode = "404", description = "На складе носки не найдены", content = @Content)
+    })
     @GetMapping("any")
-    public ResponseEntity<Socks> getAnySocks() {
-        return ResponseEntity.ok(socksService.getAnySocks());
+    public ResponseEntity<Socks> getAnySocks(@RequestParam(defaultValue = "false") boolean weighted) {
+        return ResponseEntity.ok(socksService.getAnySocks(weighted));
+    }
+
+    @Operation(summary = "Получить несколько случайных позиций склада (с повторениями)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Успешный запрос",
+                    content = @Content(mediaType = "application/json",
+                            array = @ArraySchema(schema = @Schema(implementation = Socks.class)))),
+            @ApiResponse(responseCode = "400", description = "Некорректный размер выборки", content = @Content),
+            @ApiResponse(responseCode = "404", description = "На складе носки не найдены", content = @Content)
+    })
+    @GetMapping(value = "any", params = "n")
+    public ResponseEntity<List<Socks>> getAnySocks(
+            @RequestParam int n,
+            @RequestParam(defaultValue = "false") boolean weighted) {
+        return ResponseEntity.ok(socksService.getAnySocks(n, weighted));
     }
 
     @Operation(summary = "Регистрация прихода носков")
@@ -78,6 +224,61 @@ public class SocksController {
         return ResponseEntity.ok().build();
     }
 
+    @Operation(summary = "Резерв носков под оформление заказа")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Носки зарезервированы",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = Reservation.class))),
+            @ApiResponse(responseCode = "400", description = "Некорректные параметры запроса", content = @Content),
+            @ApiResponse(responseCode = "404", description = "Нехватка носков на складе", content = @Content)
+    })
+    @PostMapping("reservations")
+    public ResponseEntity<Reservation> reserveSocks(
+            @RequestParam String color,
+            @RequestParam Long cottonPart,
+            @RequestParam Integer quantity,
+            @RequestParam(required = false) Long ttlSeconds) {
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(socksService.reserveSocks(color, cottonPart, quantity, ttlSeconds));
+    }
+
+    @Operation(summary = "Подтверждение резерва: отпуск зарезервированных носков")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Отпуск носков зарегистрирован"),
+            @ApiResponse(responseCode = "404", description = "Резерв не найден или истёк, либо нехватка носков на складе")
+    })
+    @PostMapping("reservations/{id}/confirm")
+    public ResponseEntity<Void> confirmReservation(@PathVariable UUID id) {
+        socksService.confirmReservation(id);
+        return ResponseEntity.ok().build();
+    }
+
+    @Operation(summary = "Снятие резерва")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Резерв снят"),
+            @ApiResponse(responseCode = "404", description = "Резерв не найден или истёк")
+    })
+    @DeleteMapping("reservations/{id}")
+    public ResponseEntity<Void> releaseReservation(@PathVariable UUID id) {
+        socksService.releaseReservation(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    @Operation(summary = "Пакетная регистрация приходов и отпусков")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Пакет движений обработан",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = BulkMovementResult.class))),
+            @ApiResponse(responseCode = "400", description = "Некорректные параметры движения", content = @Content),
+            @ApiResponse(responseCode = "404", description = "Нехватка носков на складе (режим ATOMIC)", content = @Content)
+    })
+    @PostMapping("movements")
+    public ResponseEntity<BulkMovementResult> registerMovements(
+            @RequestParam(defaultValue = "ATOMIC") BulkMode mode,
+            @RequestBody List<MovementRequest> movements) {
+        return ResponseEntity.ok(socksService.registerMovements(movements, mode));
+    }
+
     @Operation(summary = "Обновить данные носков")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Данные носков обновлены"),
@@ -96,13 +297,58 @@ public class SocksController {
 
     @Operation(summary = "Загрузка партий носков из CSV")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "201", description = "Партии носков успешно загружены"),
-            @ApiResponse(responseCode = "400", description = "Некорректный формат данных в файле: должно быть 3 аргумента"),
+            @ApiResponse(responseCode = "201", description = "Партии носков загружены, некорректные строки отклонены",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = BatchResult.class))),
             @ApiResponse(responseCode = "500", description = "Ошибка при обработке CSV файла")
     })
     @PostMapping("batch")
-    public ResponseEntity<Void> batchSocks(@RequestParam("file") MultipartFile file) {
-        socksService.batchSocks(file);
-        return ResponseEntity.status(HttpStatus.CREATED).build();
+    public ResponseEntity<BatchResult> batchSocks(@RequestParam("file") MultipartFile file) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(socksService.batchSocks(file));
+    }
+
+    /**
+     * Версия читается до подсчёта: изменение склада во время подсчёта даст устаревший ETag
+     * и лишний пересчёт при следующем запросе, но не ложный 304.
+     */
+    private String inventoryEtag(String color) {
+        return "W/\"" + socksService.getInventoryVersion(color) + "\"";
+    }
+
+    private CacheControl quantityCacheControl() {
+        return quantityMaxAge.isZero()
+                ? CacheControl.noCache().cachePublic()
+                : CacheControl.maxAge(quantityMaxAge).cachePublic().mustRevalidate();
+    }
+
+    /**
+     * Ответ отстающей реплики не соответствует версии склада в ETag: с меткой клиент или прокси хранил бы
+     * старое количество и получал 304 до следующего изменения цвета. Такой ответ отдаётся без метки
+     * и не сохраняется.
+     */
+    private <T> ResponseEntity<T> quantityResponse(String etag, T body) {
+        if (ReplicaRouting.takeStaleRead()) {
+            return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(body);
+        }
+        return ResponseEntity.ok().eTag(etag).cacheControl(quantityCacheControl()).body(body);
+    }
+
+    private <T> ResponseEntity<T> notModifiedResponse(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(quantityCacheControl()).build();
+    }
+
+    // слабое сравнение: прокси может перекодировать тело, например сжать его
+    static boolean notModified(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaqueTag = etag.substring(2);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
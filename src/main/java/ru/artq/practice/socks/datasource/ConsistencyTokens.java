@@ -0,0 +1,69 @@
+package ru.artq.practice.socks.datasource;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.artq.practice.socks.service.SocksChangedEvent;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Токен согласованности для чтения своих записей. После коммита изменения в ответ кладётся позиция WAL
+ * основной базы; клиент передаёт её в следующих чтениях, и такое чтение идёт только на реплику,
+ * которая эту позицию уже воспроизвела.
+ */
+@Slf4j
+public class ConsistencyTokens extends OncePerRequestFilter {
+    public static final String HEADER = "X-Consistency-Token";
+
+    private final ReplicaLagMonitor monitor;
+
+    public ConsistencyTokens(ReplicaLagMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String token = request.getHeader(HEADER);
+        if (token != null) {
+            try {
+                ReplicaRouting.requireLsn(WalPosition.parse(token));
+            } catch (IllegalArgumentException e) {
+                log.warn("Некорректный токен согласованности: {}", token);
+            }
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReplicaRouting.clear();
+        }
+    }
+
+    // коммит изменения идёт в потоке запроса, пока ответ ещё не отправлен, поэтому заголовок можно выставить здесь
+    @TransactionalEventListener
+    public void onSocksChanged(SocksChangedEvent event) {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return;
+        }
+        HttpServletResponse response = attributes.getResponse();
+        if (response == null || response.isCommitted()) {
+            return;
+        }
+        try {
+            long lsn = monitor.currentPrimaryLsn();
+            response.setHeader(HEADER, WalPosition.format(lsn));
+            // дальнейшие чтения этого же запроса тоже должны видеть запись
+            ReplicaRouting.requireLsn(Math.max(lsn, ReplicaRouting.requiredLsn()));
+        } catch (SQLException e) {
+            log.warn("Не удалось получить позицию WAL для токена согласованности: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package ru.artq.practice.socks.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Следит за отставанием реплик. Раз в {@code checkInterval} запоминает текущую позицию WAL основной базы
+ * и позиции воспроизведения реплик. Реплика считается свежей, если догнала позицию, которую основная
+ * база имела {@code maxLag} назад: так отставание меряется временем, а не байтами WAL.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+    private static final long UNAVAILABLE = -1;
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+    private final long maxLagNanos;
+    private final long checkIntervalMs;
+    private final Deque<long[]> primarySamples = new ArrayDeque<>();
+    private volatile long[] replayed;
+    private volatile long freshLsn = Long.MAX_VALUE;
+    private ScheduledExecutorService scheduler;
+
+    public ReplicaLagMonitor(DataSource primary, List<DataSource> replicas, Duration maxLag, Duration checkInterval) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.maxLagNanos = maxLag.toNanos();
+        this.checkIntervalMs = checkInterval.toMillis();
+        this.replayed = new long[replicas.size()];
+        Arrays.fill(replayed, UNAVAILABLE);
+    }
+
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "socks-replica-lag");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, 0, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        for (DataSource replica : replicas) {
+            if (replica instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    log.warn("Ошибка закрытия пула реплики: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    public int replicaCount() {
+        return replicas.size();
+    }
+
+    public DataSource replica(int index) {
+        return replicas.get(index);
+    }
+
+    /**
+     * Может ли реплика обслужить чтение: доступна, не отстаёт больше допустимого и догнала {@code requiredLsn}.
+     */
+    public boolean isUsable(int replica, long requiredLsn) {
+        long lsn = replayed[replica];
+        return lsn != UNAVAILABLE && lsn >= freshLsn && lsn >= requiredLsn;
+    }
+
+    public long currentPrimaryLsn() throws SQLException {
+        return queryLsn(primary, "SELECT pg_current_wal_lsn()::text");
+    }
+
+    void check() {
+        long now = System.nanoTime();
+        try {
+            record(now, currentPrimaryLsn());
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Не удалось получить позицию WAL основной базы: {}", e.getMessage());
+        }
+        long[] next = new long[replicas.size()];
+        for (int i = 0; i < next.length; i++) {
+            try {
+                next[i] = queryLsn(replicas.get(i), "SELECT pg_last_wal_replay_lsn()::text");
+            } catch (SQLException | RuntimeException e) {
+                if (replayed[i] != UNAVAILABLE) {
+                    log.warn("Реплика #{} недоступна, чтения идут на основную базу: {}", i, e.getMessage());
+                }
+                next[i] = UNAVAILABLE;
+            }
+        }
+        replayed = next;
+    }
+
+    // самая свежая позиция основной базы из тех, что старше maxLag; пока таких нет, реплики не используются
+    synchronized void record(long now, long primaryLsn) {
+        primarySamples.addLast(new long[]{now, primaryLsn});
+        long[] threshold = null;
+        while (!primarySamples.isEmpty() && now - primarySamples.peekFirst()[0] >= maxLagNanos) {
+            threshold = primarySamples.pollFirst();
+        }
+        if (threshold != null) {
+            freshLsn = threshold[1];
+            // оставляем порог в очереди: следующий замер может снова его использовать
+            primarySamples.addFirst(threshold);
+        }
+    }
+
+    void replayed(long[] lsns) {
+        this.replayed = lsns;
+    }
+
+    private static long queryLsn(DataSource dataSource, String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            String lsn = rs.next() ? rs.getString(1) : null;
+            if (lsn == null) {
+                throw new SQLException("Позиция WAL недоступна");
+            }
+            return WalPosition.parse(lsn);
+        }
+    }
+}
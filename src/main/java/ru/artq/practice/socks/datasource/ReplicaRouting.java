@@ -0,0 +1,68 @@
+package ru.artq.practice.socks.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * Требование чтения своих записей для текущего потока: позиция WAL, которую должна догнать реплика.
+ * Выставляется фильтром по токену клиента на время запроса.
+ */
+public final class ReplicaRouting {
+    private static final ThreadLocal<Long> REQUIRED_LSN = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> STALE_READ = new ThreadLocal<>();
+
+    private ReplicaRouting() {
+    }
+
+    public static void requireLsn(long lsn) {
+        REQUIRED_LSN.set(lsn);
+    }
+
+    public static long requiredLsn() {
+        Long lsn = REQUIRED_LSN.get();
+        return lsn == null ? 0 : lsn;
+    }
+
+    /**
+     * Выполняет чтение на основной базе, даже внутри read-only транзакции. Соединение берётся при первом
+     * запросе, поэтому вызов должен быть первым обращением к базе в транзакции.
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        Boolean previous = PRIMARY_ONLY.get();
+        PRIMARY_ONLY.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                PRIMARY_ONLY.remove();
+            }
+        }
+    }
+
+    public static boolean primaryOnly() {
+        return PRIMARY_ONLY.get() != null;
+    }
+
+    /**
+     * Отмечает, что чтение шло с реплики, ещё не догнавшей версию склада: результат не кэшируется
+     * ни в Redis, ни у клиента под текущим ETag.
+     */
+    public static void markStaleRead() {
+        STALE_READ.set(Boolean.TRUE);
+    }
+
+    public static boolean isStaleRead() {
+        return STALE_READ.get() != null;
+    }
+
+    public static boolean takeStaleRead() {
+        boolean stale = STALE_READ.get() != null;
+        STALE_READ.remove();
+        return stale;
+    }
+
+    public static void clear() {
+        REQUIRED_LSN.remove();
+        STALE_READ.remove();
+    }
+}
@@ -0,0 +1,44 @@
+package ru.artq.practice.socks.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read-only транзакции уходят на свежую реплику по кругу, всё остальное — на основную базу.
+ * Если ни одна реплика не подходит по отставанию или токену клиента, чтение тоже идёт на основную.
+ * Должен стоять за {@code LazyConnectionDataSourceProxy}: признак read-only выставляется после начала транзакции.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    public static final String PRIMARY = "primary";
+    private static final String REPLICA_PREFIX = "replica-";
+
+    private final ReplicaLagMonitor monitor;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(ReplicaLagMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    public static String replicaKey(int index) {
+        return REPLICA_PREFIX + index;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || ReplicaRouting.primaryOnly()) {
+            return PRIMARY;
+        }
+        long requiredLsn = ReplicaRouting.requiredLsn();
+        int count = monitor.replicaCount();
+        int start = Math.floorMod(next.getAndIncrement(), count);
+        for (int i = 0; i < count; i++) {
+            int replica = (start + i) % count;
+            if (monitor.isUsable(replica, requiredLsn)) {
+                return replicaKey(replica);
+            }
+        }
+        return PRIMARY;
+    }
+}
@@ -0,0 +1,172 @@
+package ru.artq.practice.socks.datasource;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.artq.practice.socks.model.SocksKey;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Маршрутизация складских данных по шардам: позиция живёт на шарде {@code hash(color, cottonPart) mod N},
+ * id позиции на шарде {@code s} даёт остаток {@code s} по модулю N. Точечные операции выполняются на одном
+ * шарде, агрегаты собираются параллельно со всех. При одном шарде (по умолчанию) всё выполняется
+ * в текущем потоке и текущей транзакции, как без шардирования.
+ */
+@Component
+public class ShardRouter {
+    private final int shardCount;
+    private final TransactionTemplate readOnlyTransaction;
+    private final TransactionTemplate writeTransaction;
+    private final ExecutorService executor;
+
+    public ShardRouter(@Value("${socks.shards:}") List<String> extraShards,
+                       PlatformTransactionManager transactionManager) {
+        this.shardCount = 1 + (int) extraShards.stream().filter(url -> !url.isBlank()).count();
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.readOnlyTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.executor = shardCount > 1
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("socks-shard-", 0).factory())
+                : null;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public int shardCount() {
+        return shardCount;
+    }
+
+    public boolean isSharded() {
+        return shardCount > 1;
+    }
+
+    public int shardOf(SocksKey key) {
+        return shardOf(key, shardCount);
+    }
+
+    public int shardOfId(long id) {
+        return (int) Math.floorMod(id, (long) shardCount);
+    }
+
+    /**
+     * Выполняет действие с соединениями выбранного шарда. Транзакция, уже взявшая соединение,
+     * остаётся на своём шарде, поэтому вызов должен предшествовать первому запросу транзакции.
+     */
+    public <T> T onShard(int shard, Supplier<T> action) {
+        if (!isSharded()) {
+            return action.get();
+        }
+        Integer previous = ShardRouting.set(shard);
+        try {
+            return action.get();
+        } finally {
+            ShardRouting.set(previous);
+        }
+    }
+
+    public void onShard(int shard, Runnable action) {
+        onShard(shard, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Отдельная транзакция на шарде; текущая транзакция на это время приостанавливается.
+     */
+    public <T> T inShardTransaction(int shard, boolean readOnly, Supplier<T> action) {
+        TransactionTemplate template = readOnly ? readOnlyTransaction : writeTransaction;
+        return onShard(shard, () -> template.execute(status -> action.get()));
+    }
+
+    public void forEachShard(IntConsumer action) {
+        for (int shard = 0; shard < shardCount; shard++) {
+            int current = shard;
+            onShard(current, () -> action.accept(current));
+        }
+    }
+
+    /**
+     * Параллельно выполняет действие на всех шардах, каждое в своей транзакции, и возвращает результаты
+     * по порядку шардов. При одном шарде действие выполняется в текущей транзакции.
+     */
+    public <T> List<T> scatter(boolean readOnly, IntFunction<T> action) {
+        if (!isSharded()) {
+            return List.of(action.apply(ShardRouting.HOME_SHARD));
+        }
+        List<Future<T>> futures = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            int current = shard;
+            futures.add(executor.submit(() -> inShardTransaction(current, readOnly, () -> action.apply(current))));
+        }
+        List<T> results = new ArrayList<>(shardCount);
+        for (Future<T> future : futures) {
+            results.add(await(future, futures));
+        }
+        return results;
+    }
+
+    public <V> Map<Integer, Map<SocksKey, V>> partition(Map<SocksKey, V> values) {
+        Map<Integer, Map<SocksKey, V>> parts = new HashMap<>();
+        values.forEach((key, value) -> parts.computeIfAbsent(shardOf(key), s -> new HashMap<>()).put(key, value));
+        return parts;
+    }
+
+    public <T> Map<Integer, List<T>> partition(Collection<T> values, Function<T, SocksKey> key) {
+        Map<Integer, List<T>> parts = new HashMap<>();
+        for (T value : values) {
+            parts.computeIfAbsent(shardOf(key.apply(value)), s -> new ArrayList<>()).add(value);
+        }
+        return parts;
+    }
+
+    // String.hashCode задан спецификацией, поэтому распределение одинаково на всех узлах
+    static int shardOf(SocksKey key, int shardCount) {
+        int hash = 31 * key.getColor().hashCode() + Long.hashCode(key.getCottonPart());
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, shardCount);
+    }
+
+    private static <T> T await(Future<T> future, List<? extends Future<?>> all) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            all.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание ответа шардов прервано", e);
+        } catch (ExecutionException e) {
+            all.forEach(f -> f.cancel(true));
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Ошибка запроса к шарду", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package ru.artq.practice.socks.datasource;
+
+/**
+ * Шард, на который уходят соединения текущего потока. Без явного выбора используется шард 0:
+ * на нём же лежат служебные таблицы (загрузки, контрольные точки WAL, лента изменений).
+ */
+public final class ShardRouting {
+    public static final int HOME_SHARD = 0;
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardRouting() {
+    }
+
+    public static int current() {
+        Integer shard = CURRENT.get();
+        return shard == null ? HOME_SHARD : shard;
+    }
+
+    static Integer set(Integer shard) {
+        Integer previous = CURRENT.get();
+        if (shard == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(shard);
+        }
+        return previous;
+    }
+}
@@ -0,0 +1,15 @@
+package ru.artq.practice.socks.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Соединение берётся с шарда, выбранного в {@link ShardRouting}. Как и маршрутизация по репликам,
+ * должен стоять за {@code LazyConnectionDataSourceProxy}, чтобы шард выбирался при первом запросе транзакции.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardRouting.current();
+    }
+}
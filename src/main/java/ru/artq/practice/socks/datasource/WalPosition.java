@@ -0,0 +1,24 @@
+package ru.artq.practice.socks.datasource;
+
+/**
+ * Позиция в WAL PostgreSQL ({@code pg_lsn}) в текстовом виде {@code 16/B374D848} и как число.
+ */
+public final class WalPosition {
+
+    private WalPosition() {
+    }
+
+    public static long parse(String lsn) {
+        int slash = lsn.indexOf('/');
+        if (slash <= 0 || slash == lsn.length() - 1) {
+            throw new IllegalArgumentException("Некорректная позиция WAL: " + lsn);
+        }
+        long high = Long.parseLong(lsn.substring(0, slash), 16);
+        long low = Long.parseLong(lsn.substring(slash + 1), 16);
+        return (high << 32) | low;
+    }
+
+    public static String format(long lsn) {
+        return Long.toHexString(lsn >>> 32).toUpperCase() + "/" + Long.toHexString(lsn & 0xFFFFFFFFL).toUpperCase();
+    }
+}
@@ -0,0 +1,8 @@
+package ru.artq.practice.socks.errors;
+
+public class ImportRejectedException extends RuntimeException {
+
+    public ImportRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,98 @@
+package ru.artq.practice.socks.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import ru.artq.practice.socks.errors.CsvProcessingException;
+import ru.artq.practice.socks.errors.ImportRejectedException;
+import ru.artq.practice.socks.errors.SocksArgumentException;
+import ru.artq.practice.socks.errors.SocksNotFoundException;
+
+import java.util.Map;
+
+/**
+ * Счётчики складских операций. Все счётчики регистрируются заранее, чтобы на горячем пути
+ * не было поиска по реестру и создания тегов.
+ */
+@Component
+public class SocksMetrics {
+    private final MeterRegistry registry;
+    private final Counter incomeApplied;
+    private final Counter outcomeApplied;
+    private final Counter outcomeRejected;
+    private final Counter importRowsApplied;
+    private final Counter importRowsRejected;
+    private final Counter importBytes;
+    private final Counter writeBehindRejected;
+    private final Map<Class<?>, Counter> apiErrors;
+    private final Counter otherApiErrors;
+
+    public SocksMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        incomeApplied = movements(registry, "income", "applied");
+        outcomeApplied = movements(registry, "outcome", "applied");
+        outcomeRejected = movements(registry, "outcome", "rejected");
+        importRowsApplied = Counter.builder("socks.import.rows").tag("result", "applied").register(registry);
+        importRowsRejected = Counter.builder("socks.import.rows").tag("result", "rejected").register(registry);
+        importBytes = Counter.builder("socks.import.bytes").baseUnit("bytes").register(registry);
+        writeBehindRejected = Counter.builder("socks.write-behind.rejected").register(registry);
+        apiErrors = Map.of(
+                SocksArgumentException.class, apiError(registry, SocksArgumentException.class),
+                SocksNotFoundException.class, apiError(registry, SocksNotFoundException.class),
+                CsvProcessingException.class, apiError(registry, CsvProcessingException.class),
+                ImportRejectedException.class, apiError(registry, ImportRejectedException.class));
+        otherApiErrors = apiError(registry, Exception.class);
+    }
+
+    public void incomeApplied() {
+        incomeApplied.increment();
+    }
+
+    public void outcomeApplied() {
+        outcomeApplied.increment();
+    }
+
+    public void outcomeRejected() {
+        outcomeRejected.increment();
+    }
+
+    public void importRowsApplied(long rows, long bytes) {
+        importRowsApplied.increment(rows);
+        importBytes.increment(bytes);
+    }
+
+    public void importRowRejected() {
+        importRowsRejected.increment();
+    }
+
+    /**
+     * Отложенное списание, которое при сбросе не покрыл остаток в базе: его списали мимо этого узла.
+     */
+    public void writeBehindRejected(int keys) {
+        writeBehindRejected.increment(keys);
+    }
+
+    /**
+     * Таймер метода репозитория на JdbcTemplate: такие репозитории не попадают в spring.data.repository.invocations.
+     * Репозиторий получает таймеры один раз при создании.
+     */
+    public Timer jdbcTimer(String repository, String method) {
+        return Timer.builder("socks.jdbc.invocations")
+                .tag("repository", repository)
+                .tag("method", method)
+                .register(registry);
+    }
+
+    public void apiError(Exception exception) {
+        apiErrors.getOrDefault(exception.getClass(), otherApiErrors).increment();
+    }
+
+    private static Counter movements(MeterRegistry registry, String type, String result) {
+        return Counter.builder("socks.movements").tag("type", type).tag("result", result).register(registry);
+    }
+
+    private static Counter apiError(MeterRegistry registry, Class<?> exception) {
+        return Counter.builder("socks.api.errors").tag("exception", exception.getSimpleName()).register(registry);
+    }
+}
@@ -0,0 +1,14 @@
+package ru.artq.practice.socks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchResult {
+    private long rowsRead;
+    private long rowsApplied;
+    private long rowsRejected;
+}
@@ -0,0 +1,6 @@
+package ru.artq.practice.socks.model;
+
+public enum BulkMode {
+    ATOMIC,
+    PER_ITEM
+}
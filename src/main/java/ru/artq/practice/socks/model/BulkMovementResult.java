@@ -0,0 +1,12 @@
+package ru.artq.practice.socks.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+public class BulkMovementResult {
+    long applied;
+    long rejected;
+    List<MovementResult> items;
+}
@@ -0,0 +1,15 @@
+package ru.artq.practice.socks.model;
+
+import lombok.Value;
+
+import java.time.Instant;
+
+@Value
+public class ChangeFeedEntry {
+    long seq;
+    Instant committedAt;
+    MovementType type;
+    String color;
+    Long cottonPart;
+    int delta;
+}
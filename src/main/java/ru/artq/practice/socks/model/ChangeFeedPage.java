@@ -0,0 +1,22 @@
+package ru.artq.practice.socks.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Порция ленты изменений. {@code resync} означает, что изменения после запрошенной позиции
+ * больше недоступны: потребитель перечитывает итоги и продолжает с {@code cursor}.
+ * Номера свои у каждого узла, поэтому позиция для следующего запроса - {@code cursor}, вместе с узлом.
+ */
+@Value
+public class ChangeFeedPage {
+    String nodeId;
+    long lastSeq;
+    boolean resync;
+    List<ChangeFeedEntry> changes;
+
+    public String getCursor() {
+        return nodeId + ":" + lastSeq;
+    }
+}
@@ -0,0 +1,46 @@
+package ru.artq.practice.socks.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "import_jobs")
+public class ImportJob {
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+    @Column(name = "node_id", nullable = false)
+    private String nodeId;
+    @Column(name = "file_name")
+    private String fileName;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private ImportJobStatus status;
+    @Column(name = "bytes_total")
+    private long bytesTotal;
+    @Column(name = "byte_offset")
+    private long byteOffset;
+    @Column(name = "line_number")
+    private long lineNumber;
+    @Column(name = "rows_read")
+    private long rowsRead;
+    @Column(name = "rows_applied")
+    private long rowsApplied;
+    @Column(name = "rows_rejected")
+    private long rowsRejected;
+    @Column(name = "error_bytes")
+    private long errorBytes;
+    @Column(name = "message", length = 1024)
+    private String message;
+    @Column(name = "created_at")
+    private Instant createdAt;
+    @Column(name = "started_at")
+    private Instant startedAt;
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+}
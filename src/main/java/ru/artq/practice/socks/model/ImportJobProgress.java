@@ -0,0 +1,39 @@
+package ru.artq.practice.socks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportJobProgress {
+    private String jobId;
+    private ImportJobStatus status;
+    private String fileName;
+    private long bytesTotal;
+    private long bytesProcessed;
+    private long rowsRead;
+    private long rowsApplied;
+    private long rowsRejected;
+    private double rowsPerSecond;
+    private double bytesPerSecond;
+    private String message;
+
+    public static ImportJobProgress of(ImportJob job, Instant now) {
+        double seconds = 0;
+        if (job.getStartedAt() != null) {
+            Instant end = job.getFinishedAt() != null ? job.getFinishedAt() : now;
+            seconds = Duration.between(job.getStartedAt(), end).toMillis() / 1000.0;
+        }
+        return new ImportJobProgress(job.getId(), job.getStatus(), job.getFileName(),
+                job.getBytesTotal(), job.getByteOffset(),
+                job.getRowsRead(), job.getRowsApplied(), job.getRowsRejected(),
+                seconds > 0 ? job.getRowsRead() / seconds : 0,
+                seconds > 0 ? job.getByteOffset() / seconds : 0,
+                job.getMessage());
+    }
+}
@@ -0,0 +1,8 @@
+package ru.artq.practice.socks.model;
+
+public enum ImportJobStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
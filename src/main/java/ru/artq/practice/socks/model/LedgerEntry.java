@@ -0,0 +1,15 @@
+package ru.artq.practice.socks.model;
+
+import lombok.Value;
+
+import java.time.Instant;
+
+@Value
+public class LedgerEntry {
+    long id;
+    Instant occurredAt;
+    MovementType type;
+    String color;
+    Long cottonPart;
+    int delta;
+}
@@ -0,0 +1,15 @@
+package ru.artq.practice.socks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MovementRequest {
+    private String type;
+    private String color;
+    private Long cottonPart;
+    private Integer quantity;
+}
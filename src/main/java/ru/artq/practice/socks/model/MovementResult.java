@@ -0,0 +1,10 @@
+package ru.artq.practice.socks.model;
+
+import lombok.Value;
+
+@Value
+public class MovementResult {
+    int index;
+    MovementStatus status;
+    String message;
+}
@@ -0,0 +1,7 @@
+package ru.artq.practice.socks.model;
+
+public enum MovementStatus {
+    APPLIED,
+    REJECTED,
+    INVALID
+}
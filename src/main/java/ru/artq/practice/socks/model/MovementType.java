@@ -0,0 +1,10 @@
+package ru.artq.practice.socks.model;
+
+public enum MovementType {
+    INCOME,
+    OUTCOME,
+    BULK,
+    UPDATE,
+    IMPORT,
+    WRITE_BEHIND
+}
@@ -0,0 +1,15 @@
+package ru.artq.practice.socks.model;
+
+import lombok.Value;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Value
+public class Reservation {
+    UUID id;
+    String color;
+    Long cottonPart;
+    Integer quantity;
+    Instant expiresAt;
+}
@@ -4,17 +4,22 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.artq.practice.socks.repository.ColorIdConverter;
+
+import java.io.Serializable;
 
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
-@Table(name = "socks")
-public class Socks {
+@Table(name = "socks", uniqueConstraints = @UniqueConstraint(
+        name = "socks_color_cotton_percentage_key", columnNames = {"color_id", "cotton_percentage"}))
+public class Socks implements Serializable {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
-    @Column(name = "color")
+    @Convert(converter = ColorIdConverter.class)
+    @Column(name = "color_id")
     private String color;
     @Column(name = "cotton_percentage")
     private Long cottonPart;
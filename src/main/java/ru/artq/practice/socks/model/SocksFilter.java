@@ -0,0 +1,45 @@
+package ru.artq.practice.socks.model;
+
+import lombok.Value;
+
+@Value
+public class SocksFilter {
+    String color;
+    String comparison;
+    Long cottonPart;
+    Long minCotton;
+    Long maxCotton;
+
+    public static SocksFilter of(String color, String comparison, Long cottonPart, Long minCotton, Long maxCotton) {
+        if (cottonPart != null && comparison == null) {
+            comparison = "equal";
+        }
+        return new SocksFilter(color, comparison, cottonPart, minCotton, maxCotton);
+    }
+
+    public boolean matches(SocksKey key) {
+        if (color != null && !color.equals(key.getColor())) {
+            return false;
+        }
+        long cotton = key.getCottonPart();
+        if (cottonPart != null) {
+            boolean matched = switch (comparison) {
+                case "moreThen" -> cotton > cottonPart;
+                case "lessThan" -> cotton < cottonPart;
+                default -> cotton == cottonPart;
+            };
+            if (!matched) {
+                return false;
+            }
+        }
+        return (minCotton == null || cotton >= minCotton) && (maxCotton == null || cotton <= maxCotton);
+    }
+
+    public String cacheKey() {
+        return "color=" + (color == null ? "" : color)
+                + "|cmp=" + (comparison == null ? "" : comparison)
+                + "|cp=" + (cottonPart == null ? "" : cottonPart)
+                + "|min=" + (minCotton == null ? "" : minCotton)
+                + "|max=" + (maxCotton == null ? "" : maxCotton);
+    }
+}
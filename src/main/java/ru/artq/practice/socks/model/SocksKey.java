@@ -0,0 +1,15 @@
+package ru.artq.practice.socks.model;
+
+import lombok.Value;
+
+@Value
+public class SocksKey implements Comparable<SocksKey> {
+    String color;
+    Long cottonPart;
+
+    @Override
+    public int compareTo(SocksKey other) {
+        int byColor = color.compareTo(other.color);
+        return byColor != 0 ? byColor : cottonPart.compareTo(other.cottonPart);
+    }
+}
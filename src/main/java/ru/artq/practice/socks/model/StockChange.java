@@ -0,0 +1,9 @@
+package ru.artq.practice.socks.model;
+
+import lombok.Value;
+
+@Value
+public class StockChange {
+    SocksKey key;
+    int delta;
+}
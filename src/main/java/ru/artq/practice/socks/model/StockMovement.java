@@ -0,0 +1,10 @@
+package ru.artq.practice.socks.model;
+
+import lombok.Value;
+
+@Value
+public class StockMovement {
+    MovementType type;
+    SocksKey key;
+    int quantity;
+}
@@ -0,0 +1,22 @@
+package ru.artq.practice.socks.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "socks_wal_checkpoints")
+public class WalCheckpoint {
+    @Id
+    @Column(name = "node_id")
+    private String nodeId;
+    @Column(name = "last_seq", nullable = false)
+    private long lastSeq;
+}
@@ -0,0 +1,89 @@
+package ru.artq.practice.socks.repository;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.artq.practice.socks.metrics.SocksMetrics;
+import ru.artq.practice.socks.model.ChangeFeedEntry;
+import ru.artq.practice.socks.model.MovementType;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+@Repository
+public class ChangeLogRepository {
+    private static final String INSERT_ENTRY = """
+            INSERT INTO socks_change_log (node_id, seq, committed_at, movement_type, color, cotton_percentage, delta)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (node_id, seq) DO NOTHING
+            """;
+    private static final String SELECT_AFTER = """
+            SELECT seq, committed_at, movement_type, color, cotton_percentage, delta FROM socks_change_log
+            WHERE node_id = ? AND seq > ? ORDER BY seq LIMIT ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Timer insertTimer;
+    private final Timer readTimer;
+    private final Timer trimTimer;
+
+    public ChangeLogRepository(JdbcTemplate jdbcTemplate, SocksMetrics socksMetrics) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.insertTimer = socksMetrics.jdbcTimer("ChangeLogRepository", "insert");
+        this.readTimer = socksMetrics.jdbcTimer("ChangeLogRepository", "findAfter");
+        this.trimTimer = socksMetrics.jdbcTimer("ChangeLogRepository", "deleteBefore");
+    }
+
+    // вставка без транзакции может частично пройти: повтор той же пачки пропускает уже записанные номера
+    public void insert(String nodeId, List<ChangeFeedEntry> entries) {
+        insertTimer.record(() -> jdbcTemplate.batchUpdate(INSERT_ENTRY, entries, entries.size(), (ps, entry) -> {
+            ps.setString(1, nodeId);
+            ps.setLong(2, entry.getSeq());
+            ps.setObject(3, OffsetDateTime.ofInstant(entry.getCommittedAt(), ZoneOffset.UTC));
+            ps.setString(4, entry.getType().name());
+            ps.setString(5, entry.getColor());
+            ps.setLong(6, entry.getCottonPart());
+            ps.setInt(7, entry.getDelta());
+        }));
+    }
+
+    public List<ChangeFeedEntry> findAfter(String nodeId, long seq, int limit) {
+        return readTimer.record(() -> jdbcTemplate.query(SELECT_AFTER, (rs, rowNum) -> new ChangeFeedEntry(
+                rs.getLong(1),
+                rs.getObject(2, OffsetDateTime.class).toInstant(),
+                MovementType.valueOf(rs.getString(3)),
+                rs.getString(4),
+                rs.getLong(5),
+                rs.getInt(6)), nodeId, seq, limit));
+    }
+
+    public long findLastSeq(String nodeId) {
+        Long seq = jdbcTemplate.queryForObject(
+                "SELECT max(seq) FROM socks_change_log WHERE node_id = ?", Long.class, nodeId);
+        return seq == null ? 0 : seq;
+    }
+
+    /**
+     * Позиция, на которой узел остановился штатно, со всеми изменениями в журнале. Отметка одноразовая:
+     * читается и удаляется при старте, поэтому после аварийной остановки её не будет.
+     */
+    public Long takeCleanStop(String nodeId) {
+        List<Long> seq = jdbcTemplate.queryForList(
+                "DELETE FROM socks_change_log_nodes WHERE node_id = ? RETURNING stopped_at", Long.class, nodeId);
+        return seq.isEmpty() ? null : seq.get(0);
+    }
+
+    public void markCleanStop(String nodeId, long seq) {
+        jdbcTemplate.update("""
+                INSERT INTO socks_change_log_nodes (node_id, stopped_at) VALUES (?, ?)
+                ON CONFLICT (node_id) DO UPDATE SET stopped_at = excluded.stopped_at
+                """, nodeId, seq);
+    }
+
+    public int deleteBefore(Instant committedBefore) {
+        return trimTimer.record(() -> jdbcTemplate.update("DELETE FROM socks_change_log WHERE committed_at < ?",
+                OffsetDateTime.ofInstant(committedBefore, ZoneOffset.UTC)));
+    }
+}
@@ -0,0 +1,94 @@
+package ru.artq.practice.socks.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.artq.practice.socks.datasource.ShardRouter;
+import ru.artq.practice.socks.datasource.ShardRouting;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Словарь цветов: строки склада хранят id цвета, а не название. Цветов сотни, поэтому словарь целиком
+ * держится в памяти без вытеснения, и названия из запросов превращаются в id без обращения к базе.
+ * Новый цвет заводится отдельной транзакцией на шарде 0 и с тем же id копируется на остальные шарды:
+ * в кэш попадают только закоммиченные id, даже если транзакция, встретившая цвет, откатится.
+ */
+@Repository
+@RequiredArgsConstructor
+@Slf4j
+public class ColorDictionary {
+    // id из serial начинаются с 1: условие по ABSENT не совпадает ни с одной строкой
+    public static final int ABSENT = 0;
+
+    private static final String SELECT_ID = "SELECT id FROM socks_colors WHERE name = ?";
+    private static final String SELECT_NAME = "SELECT name FROM socks_colors WHERE id = ?";
+    // DO UPDATE вместо DO NOTHING, чтобы RETURNING вернул id и уже существующего цвета
+    private static final String INSERT_COLOR = """
+            INSERT INTO socks_colors (name) VALUES (?)
+            ON CONFLICT (name) DO UPDATE SET name = excluded.name
+            RETURNING id
+            """;
+    private static final String COPY_COLOR = "INSERT INTO socks_colors (id, name) VALUES (?, ?) ON CONFLICT DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final Map<Integer, String> names = new ConcurrentHashMap<>();
+
+    /**
+     * id цвета или {@link #ABSENT}, если такого цвета на складе никогда не было. Для чтения и отпуска:
+     * неизвестный цвет не заводится в словаре.
+     */
+    public int find(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        List<Integer> found = jdbcTemplate.queryForList(SELECT_ID, Integer.class, name);
+        if (found.isEmpty()) {
+            return ABSENT;
+        }
+        remember(found.get(0), name);
+        return found.get(0);
+    }
+
+    /**
+     * id цвета; неизвестный цвет заводится в словаре. Для записей, которые могут создать позицию.
+     */
+    public int idOf(String name) {
+        int id = find(name);
+        if (id != ABSENT) {
+            return id;
+        }
+        Integer created = shardRouter.inShardTransaction(ShardRouting.HOME_SHARD, false,
+                () -> jdbcTemplate.queryForObject(INSERT_COLOR, Integer.class, name));
+        for (int shard = 1; shard < shardRouter.shardCount(); shard++) {
+            shardRouter.inShardTransaction(shard, false, () -> jdbcTemplate.update(COPY_COLOR, created, name));
+        }
+        remember(created, name);
+        log.info("Словарь цветов: цвет '{}' получил id={}", name, created);
+        return created;
+    }
+
+    public String nameOf(int id) {
+        String name = names.get(id);
+        if (name != null) {
+            return name;
+        }
+        List<String> found = jdbcTemplate.queryForList(SELECT_NAME, String.class, id);
+        if (found.isEmpty()) {
+            throw new IllegalStateException("Цвет с id=" + id + " отсутствует в словаре");
+        }
+        remember(id, found.get(0));
+        return found.get(0);
+    }
+
+    private void remember(int id, String name) {
+        ids.put(name, id);
+        names.put(id, name);
+    }
+}
@@ -0,0 +1,30 @@
+package ru.artq.practice.socks.repository;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * Название цвета в сущности, id из словаря в колонке. Применяется и к параметрам запросов JPA,
+ * поэтому условия по цвету в JPQL и Criteria сравнивают целые id.
+ * Конвертер создаётся при сборке EntityManagerFactory, а словарю нужен менеджер транзакций,
+ * построенный на ней, — отсюда отложенное получение словаря.
+ */
+@Component
+@Converter
+@RequiredArgsConstructor
+public class ColorIdConverter implements AttributeConverter<String, Integer> {
+    private final ObjectProvider<ColorDictionary> colorDictionary;
+
+    @Override
+    public Integer convertToDatabaseColumn(String color) {
+        return color == null ? null : colorDictionary.getObject().find(color);
+    }
+
+    @Override
+    public String convertToEntityAttribute(Integer colorId) {
+        return colorId == null ? null : colorDictionary.getObject().nameOf(colorId);
+    }
+}
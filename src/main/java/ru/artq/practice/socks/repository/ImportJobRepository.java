@@ -0,0 +1,15 @@
+package ru.artq.practice.socks.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import ru.artq.practice.socks.model.ImportJob;
+import ru.artq.practice.socks.model.ImportJobStatus;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ImportJobRepository extends JpaRepository<ImportJob, String> {
+
+    List<ImportJob> findByNodeIdAndStatusIn(String nodeId, Collection<ImportJobStatus> statuses);
+}
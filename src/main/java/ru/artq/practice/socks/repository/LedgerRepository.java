@@ -0,0 +1,164 @@
+package ru.artq.practice.socks.repository;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.artq.practice.socks.metrics.SocksMetrics;
+import ru.artq.practice.socks.model.LedgerEntry;
+import ru.artq.practice.socks.model.MovementType;
+import ru.artq.practice.socks.model.SocksFilter;
+import ru.artq.practice.socks.model.SocksTotal;
+import ru.artq.practice.socks.model.StockChange;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Журнал движений и его снимки. Таблица журнала секционирована по месяцам, поэтому Hibernate
+ * ею не управляет: схема создаётся миграцией {@code V2__ledger.sql}, новые секции — {@link #createPartition}.
+ */
+@Repository
+public class LedgerRepository {
+    private static final String INSERT_ENTRY =
+            "INSERT INTO socks_ledger (movement_type, color, cotton_percentage, delta) VALUES (?, ?, ?, ?)";
+    private static final String SELECT_LATEST_RUN = """
+            SELECT id, taken_at FROM socks_ledger_snapshot_runs WHERE taken_at <= ?
+            ORDER BY taken_at DESC LIMIT 1
+            """;
+    private static final String INSERT_RUN =
+            "INSERT INTO socks_ledger_snapshot_runs (taken_at) VALUES (?) RETURNING id";
+    private static final String SNAPSHOT_FROM_LEDGER = """
+            INSERT INTO socks_ledger_snapshots (run_id, color, cotton_percentage, quantity)
+            SELECT ?, color, cotton_percentage, sum(quantity) FROM (
+                SELECT color, cotton_percentage, quantity FROM socks_ledger_snapshots WHERE run_id = ?
+                UNION ALL
+                SELECT color, cotton_percentage, delta FROM socks_ledger WHERE occurred_at > ? AND occurred_at <= ?
+            ) m GROUP BY color, cotton_percentage HAVING sum(quantity) <> 0
+            """;
+    private static final String SELECT_PARTITIONS = """
+            SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = 'socks_ledger'::regclass ORDER BY c.relname
+            """;
+    private static final String SELECT_ENTRIES = """
+            SELECT id, occurred_at, movement_type, color, cotton_percentage, delta FROM socks_ledger
+            WHERE color = ? AND cotton_percentage = ? AND occurred_at >= ? AND occurred_at < ?
+            ORDER BY occurred_at, id LIMIT ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Timer appendTimer;
+    private final Timer snapshotTimer;
+    private final Timer asOfTimer;
+
+    public LedgerRepository(JdbcTemplate jdbcTemplate, SocksMetrics socksMetrics) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.appendTimer = socksMetrics.jdbcTimer("LedgerRepository", "append");
+        this.snapshotTimer = socksMetrics.jdbcTimer("LedgerRepository", "snapshotLedger");
+        this.asOfTimer = socksMetrics.jdbcTimer("LedgerRepository", "sumQuantityAsOf");
+    }
+
+    @Value
+    public static class SnapshotRun {
+        long id;
+        Instant takenAt;
+    }
+
+    public void createPartition(String name, Instant from, Instant to) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF socks_ledger FOR VALUES FROM ('"
+                + from + "') TO ('" + to + "')");
+    }
+
+    public List<String> findPartitions() {
+        return jdbcTemplate.queryForList(SELECT_PARTITIONS, String.class);
+    }
+
+    /**
+     * Отсоединённая секция остаётся отдельной таблицей: её можно выгрузить и удалить, не трогая журнал.
+     * Снимки старше отсоединённого интервала больше не пригодны для расчёта и удаляются.
+     */
+    @Transactional
+    public void detachPartition(String name, Instant rangeEnd) {
+        jdbcTemplate.execute("ALTER TABLE socks_ledger DETACH PARTITION " + name);
+        jdbcTemplate.update("INSERT INTO socks_ledger_archive (partition_name, range_end) VALUES (?, ?)",
+                name, utc(rangeEnd));
+        jdbcTemplate.update("DELETE FROM socks_ledger_snapshot_runs WHERE taken_at < ?", utc(rangeEnd));
+    }
+
+    public Optional<Instant> findArchivedUntil() {
+        OffsetDateTime until = jdbcTemplate.queryForObject(
+                "SELECT max(range_end) FROM socks_ledger_archive", OffsetDateTime.class);
+        return Optional.ofNullable(until).map(OffsetDateTime::toInstant);
+    }
+
+    public void append(MovementType type, List<StockChange> changes) {
+        appendTimer.record(() -> jdbcTemplate.batchUpdate(INSERT_ENTRY, changes, changes.size(), (ps, change) -> {
+            ps.setString(1, type.name());
+            ps.setString(2, change.getKey().getColor());
+            ps.setLong(3, change.getKey().getCottonPart());
+            ps.setInt(4, change.getDelta());
+        }));
+    }
+
+    public Optional<SnapshotRun> findLatestSnapshot(Instant notAfter) {
+        return jdbcTemplate.query(SELECT_LATEST_RUN, (rs, rowNum) ->
+                        new SnapshotRun(rs.getLong(1), rs.getObject(2, OffsetDateTime.class).toInstant()), utc(notAfter))
+                .stream().findFirst();
+    }
+
+    /**
+     * Сворачивает предыдущий снимок и хвост журнала до {@code cut} в новый снимок.
+     */
+    @Transactional
+    public boolean snapshotLedger(Instant cut) {
+        SnapshotRun previous = findLatestSnapshot(Instant.now()).orElse(null);
+        if (previous == null || !previous.getTakenAt().isBefore(cut)) {
+            return false;
+        }
+        Long runId = jdbcTemplate.queryForObject(INSERT_RUN, Long.class, utc(cut));
+        snapshotTimer.record(() -> jdbcTemplate.update(
+                SNAPSHOT_FROM_LEDGER, runId, previous.getId(), utc(previous.getTakenAt()), utc(cut)));
+        return true;
+    }
+
+    /**
+     * Остаток на момент {@code asOf}: ближайший снимок плюс движения между ним и {@code asOf}.
+     * Условие на occurred_at отсекает лишние секции журнала.
+     */
+    @Transactional(readOnly = true)
+    public SocksTotal sumQuantityAsOf(SnapshotRun snapshot, Instant asOf, SocksFilter filter) {
+        List<Object> args = new ArrayList<>();
+        args.add(snapshot.getId());
+        String snapshotFilter = SocksFilterSql.and(filter, args);
+        args.add(utc(snapshot.getTakenAt()));
+        args.add(utc(asOf));
+        String ledgerFilter = SocksFilterSql.and(filter, args);
+        String sql = "SELECT count(*), coalesce(sum(quantity), 0) FROM ("
+                + " SELECT color, cotton_percentage, sum(quantity) AS quantity FROM ("
+                + " SELECT color, cotton_percentage, quantity FROM socks_ledger_snapshots WHERE run_id = ?" + snapshotFilter
+                + " UNION ALL"
+                + " SELECT color, cotton_percentage, delta FROM socks_ledger WHERE occurred_at > ? AND occurred_at <= ?" + ledgerFilter
+                + " ) m GROUP BY color, cotton_percentage HAVING sum(quantity) <> 0) t";
+        return asOfTimer.record(() -> jdbcTemplate.queryForObject(sql,
+                (rs, rowNum) -> new SocksTotal(null, rs.getLong(1), rs.getLong(2)), args.toArray()));
+    }
+
+    public List<LedgerEntry> findEntries(String color, Long cottonPart, Instant from, Instant to, int limit) {
+        return jdbcTemplate.query(SELECT_ENTRIES, (rs, rowNum) -> new LedgerEntry(
+                rs.getLong(1),
+                rs.getObject(2, OffsetDateTime.class).toInstant(),
+                MovementType.valueOf(rs.getString(3)),
+                rs.getString(4),
+                rs.getLong(5),
+                rs.getInt(6)), color, cottonPart, utc(from), utc(to), limit);
+    }
+
+    private static OffsetDateTime utc(Instant instant) {
+        return OffsetDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+}
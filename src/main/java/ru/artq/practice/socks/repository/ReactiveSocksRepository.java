@@ -0,0 +1,215 @@
+package ru.artq.practice.socks.repository;
+
+import io.r2dbc.spi.Readable;
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.artq.practice.socks.model.MovementType;
+import ru.artq.practice.socks.model.Socks;
+import ru.artq.practice.socks.model.SocksFilter;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.model.SocksTotal;
+import ru.artq.practice.socks.model.StockChange;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Те же запросы, что у {@link SocksRepository} и {@link SocksJdbcRepository}, через R2DBC.
+ * Кэш {@link ColorDictionary} блокирующий, поэтому цвет переводится в id прямо в SQL:
+ * чтение идёт через соединение со словарём, запись сначала заводит цвет отдельным запросом.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ReactiveSocksRepository {
+    private static final String SOCKS = """
+            (SELECT s.id, c.name AS color, s.cotton_percentage, s.quantity
+             FROM socks s JOIN socks_colors c ON c.id = s.color_id) socks""";
+    // отдельный запрос видит цвет, закоммиченный параллельной транзакцией, которой ждал INSERT_COLOR
+    private static final String INSERT_COLOR = "INSERT INTO socks_colors (name) VALUES ($1) ON CONFLICT (name) DO NOTHING";
+    private static final String UPSERT_INCREMENT = """
+            INSERT INTO socks (color_id, cotton_percentage, quantity)
+            VALUES ((SELECT id FROM socks_colors WHERE name = $1), $2, $3)
+            ON CONFLICT (color_id, cotton_percentage)
+                DO UPDATE SET quantity = socks.quantity + excluded.quantity
+            """;
+    private static final String INSERT_COLORS =
+            "INSERT INTO socks_colors (name) SELECT DISTINCT unnest($1::varchar[]) ON CONFLICT (name) DO NOTHING";
+    private static final String UPSERT_INCREMENTS = """
+            INSERT INTO socks (color_id, cotton_percentage, quantity)
+            SELECT c.id, v.cotton_percentage, v.quantity
+            FROM unnest($1::varchar[], $2::bigint[], $3::int[]) AS v(name, cotton_percentage, quantity)
+                JOIN socks_colors c ON c.name = v.name
+            ORDER BY c.id, v.cotton_percentage
+            ON CONFLICT (color_id, cotton_percentage)
+                DO UPDATE SET quantity = socks.quantity + excluded.quantity
+            """;
+    private static final String DECREMENT = """
+            UPDATE socks SET quantity = quantity - :quantity
+                WHERE color_id = (SELECT id FROM socks_colors WHERE name = :color)
+                  AND cotton_percentage = :cottonPart AND quantity - :held >= :quantity
+            """;
+
+    private static final String INSERT_LEDGER = """
+            INSERT INTO socks_ledger (movement_type, color, cotton_percentage, delta)
+            SELECT $1, v.color, v.cotton_percentage, v.delta
+            FROM unnest($2::varchar[], $3::bigint[], $4::int[]) AS v(color, cotton_percentage, delta)
+            """;
+
+    private final DatabaseClient databaseClient;
+
+    public Mono<SocksTotal> sumQuantity(SocksFilter filter) {
+        Map<String, Object> binds = new LinkedHashMap<>();
+        String sql = "SELECT count(*) AS rows, coalesce(sum(quantity), 0) AS quantity FROM " + SOCKS + where(filter, binds);
+        return bindAll(databaseClient.sql(sql), binds)
+                .map(row -> new SocksTotal(null, row.get("rows", Long.class), row.get("quantity", Long.class)))
+                .one();
+    }
+
+    public Flux<SocksTotal> sumQuantityGroupedBy(String column, SocksFilter filter) {
+        Map<String, Object> binds = new LinkedHashMap<>();
+        String sql = "SELECT " + column + " AS grp, count(*) AS rows, coalesce(sum(quantity), 0) AS quantity FROM " + SOCKS
+                + where(filter, binds) + " GROUP BY " + column + " ORDER BY " + column;
+        return bindAll(databaseClient.sql(sql), binds)
+                .map(row -> new SocksTotal(String.valueOf(row.get("grp")), row.get("rows", Long.class), row.get("quantity", Long.class)))
+                .all();
+    }
+
+    public Mono<Long> incrementQuantity(SocksKey key, int quantity) {
+        return insertColor(key.getColor()).then(databaseClient.sql(UPSERT_INCREMENT)
+                .bind(0, key.getColor())
+                .bind(1, key.getCottonPart())
+                .bind(2, quantity)
+                .fetch().rowsUpdated());
+    }
+
+    public Mono<Long> decrementQuantity(SocksKey key, int quantity, long held) {
+        return databaseClient.sql(DECREMENT)
+                .bind("color", key.getColor())
+                .bind("cottonPart", key.getCottonPart())
+                .bind("quantity", quantity)
+                .bind("held", held)
+                .fetch().rowsUpdated();
+    }
+
+    public Mono<Socks> findByIdForUpdate(Long id) {
+        return databaseClient.sql("""
+                        SELECT s.id, c.name AS color, s.cotton_percentage, s.quantity
+                        FROM socks s JOIN socks_colors c ON c.id = s.color_id
+                        WHERE s.id = :id FOR UPDATE OF s
+                        """)
+                .bind("id", id)
+                .map(ReactiveSocksRepository::toSocks)
+                .one();
+    }
+
+    public Mono<Long> update(Socks socks) {
+        return insertColor(socks.getColor()).then(databaseClient.sql("""
+                        UPDATE socks SET color_id = (SELECT id FROM socks_colors WHERE name = :color),
+                            cotton_percentage = :cottonPart, quantity = :quantity
+                        WHERE id = :id
+                        """)
+                .bind("color", socks.getColor())
+                .bind("cottonPart", socks.getCottonPart())
+                .bind("quantity", socks.getQuantity())
+                .bind("id", socks.getId())
+                .fetch().rowsUpdated());
+    }
+
+    /**
+     * Одним запросом по массивам: строки вставляются в порядке (id цвета, доля хлопка),
+     * в том же порядке блокировки, что и в {@link SocksJdbcRepository#upsertIncrements}.
+     */
+    public Mono<Void> upsertIncrements(Map<SocksKey, Integer> increments) {
+        if (increments.isEmpty()) {
+            return Mono.empty();
+        }
+        String[] colors = new String[increments.size()];
+        Long[] cottonParts = new Long[increments.size()];
+        Integer[] quantities = new Integer[increments.size()];
+        int i = 0;
+        for (Map.Entry<SocksKey, Integer> entry : increments.entrySet()) {
+            colors[i] = entry.getKey().getColor();
+            cottonParts[i] = entry.getKey().getCottonPart();
+            quantities[i] = entry.getValue();
+            i++;
+        }
+        return databaseClient.sql(INSERT_COLORS).bind(0, colors).fetch().rowsUpdated()
+                .then(databaseClient.sql(UPSERT_INCREMENTS)
+                        .bind(0, colors)
+                        .bind(1, cottonParts)
+                        .bind(2, quantities)
+                        .fetch().rowsUpdated())
+                .then();
+    }
+
+    /**
+     * Записи журнала движений, как {@link LedgerRepository#append}, но в текущей транзакции R2DBC.
+     */
+    public Mono<Void> appendLedger(MovementType type, List<StockChange> changes) {
+        if (changes.isEmpty()) {
+            return Mono.empty();
+        }
+        String[] colors = new String[changes.size()];
+        Long[] cottonParts = new Long[changes.size()];
+        Integer[] deltas = new Integer[changes.size()];
+        for (int i = 0; i < changes.size(); i++) {
+            colors[i] = changes.get(i).getKey().getColor();
+            cottonParts[i] = changes.get(i).getKey().getCottonPart();
+            deltas[i] = changes.get(i).getDelta();
+        }
+        return databaseClient.sql(INSERT_LEDGER)
+                .bind(0, type.name())
+                .bind(1, colors)
+                .bind(2, cottonParts)
+                .bind(3, deltas)
+                .fetch().rowsUpdated()
+                .then();
+    }
+
+    private Mono<Long> insertColor(String color) {
+        return databaseClient.sql(INSERT_COLOR).bind(0, color).fetch().rowsUpdated();
+    }
+
+    private static String where(SocksFilter filter, Map<String, Object> binds) {
+        List<String> conditions = new ArrayList<>();
+        if (filter.getColor() != null) {
+            conditions.add("color = :color");
+            binds.put("color", filter.getColor());
+        }
+        if (filter.getCottonPart() != null) {
+            String operator = switch (filter.getComparison()) {
+                case "moreThen" -> ">";
+                case "lessThan" -> "<";
+                default -> "=";
+            };
+            conditions.add("cotton_percentage " + operator + " :cottonPart");
+            binds.put("cottonPart", filter.getCottonPart());
+        }
+        if (filter.getMinCotton() != null) {
+            conditions.add("cotton_percentage >= :minCotton");
+            binds.put("minCotton", filter.getMinCotton());
+        }
+        if (filter.getMaxCotton() != null) {
+            conditions.add("cotton_percentage <= :maxCotton");
+            binds.put("maxCotton", filter.getMaxCotton());
+        }
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindAll(DatabaseClient.GenericExecuteSpec spec, Map<String, Object> binds) {
+        for (Map.Entry<String, Object> bind : binds.entrySet()) {
+            spec = spec.bind(bind.getKey(), bind.getValue());
+        }
+        return spec;
+    }
+
+    private static Socks toSocks(Readable row) {
+        return new Socks(row.get("id", Long.class), row.get("color", String.class),
+                row.get("cotton_percentage", Long.class), row.get("quantity", Integer.class));
+    }
+}
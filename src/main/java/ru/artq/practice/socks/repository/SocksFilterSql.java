@@ -0,0 +1,57 @@
+package ru.artq.practice.socks.repository;
+
+import ru.artq.practice.socks.model.SocksFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Условия фильтра для запросов JdbcTemplate. Повторяет {@code SocksRepositoryCustomImpl}:
+ * в SQL попадают только заданные условия. Таблица {@code socks} фильтруется по id цвета из словаря,
+ * журнал движений хранит название цвета.
+ */
+final class SocksFilterSql {
+
+    private SocksFilterSql() {
+    }
+
+    static List<String> conditions(SocksFilter filter, List<Object> args) {
+        return conditions(filter, "color = ?", filter.getColor(), args);
+    }
+
+    private static List<String> conditions(SocksFilter filter, String colorCondition, Object color, List<Object> args) {
+        List<String> conditions = new ArrayList<>();
+        if (filter.getColor() != null) {
+            conditions.add(colorCondition);
+            args.add(color);
+        }
+        if (filter.getCottonPart() != null) {
+            conditions.add(switch (filter.getComparison()) {
+                case "moreThen" -> "cotton_percentage > ?";
+                case "lessThan" -> "cotton_percentage < ?";
+                default -> "cotton_percentage = ?";
+            });
+            args.add(filter.getCottonPart());
+        }
+        if (filter.getMinCotton() != null) {
+            conditions.add("cotton_percentage >= ?");
+            args.add(filter.getMinCotton());
+        }
+        if (filter.getMaxCotton() != null) {
+            conditions.add("cotton_percentage <= ?");
+            args.add(filter.getMaxCotton());
+        }
+        return conditions;
+    }
+
+    static String where(SocksFilter filter, ColorDictionary colorDictionary, List<Object> args) {
+        Integer colorId = filter.getColor() == null ? null : colorDictionary.find(filter.getColor());
+        List<String> conditions = conditions(filter, "color_id = ?", colorId, args);
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    static String and(SocksFilter filter, List<Object> args) {
+        List<String> conditions = conditions(filter, args);
+        return conditions.isEmpty() ? "" : " AND " + String.join(" AND ", conditions);
+    }
+}
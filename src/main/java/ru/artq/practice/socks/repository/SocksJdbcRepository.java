@@ -0,0 +1,220 @@
+package ru.artq.practice.socks.repository;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.artq.practice.socks.metrics.SocksMetrics;
+import ru.artq.practice.socks.model.Socks;
+import ru.artq.practice.socks.model.SocksFilter;
+import ru.artq.practice.socks.model.SocksKey;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+@Repository
+public class SocksJdbcRepository {
+    private static final String UPSERT_INCREMENT = """
+            INSERT INTO socks (color_id, cotton_percentage, quantity) VALUES (?, ?, ?)
+            ON CONFLICT (color_id, cotton_percentage)
+                DO UPDATE SET quantity = socks.quantity + excluded.quantity
+            """;
+    private static final String APPLY_COVERED_DECREMENT = """
+            UPDATE socks SET quantity = quantity + ?
+            WHERE color_id = ? AND cotton_percentage = ? AND quantity + ? >= 0
+            """;
+    // курсоры берут название цвета соединением со словарём, а не запросом на каждый промах кэша
+    private static final String SELECT_STOCK = """
+            SELECT c.name, s.cotton_percentage, s.quantity
+            FROM socks s JOIN socks_colors c ON c.id = s.color_id
+            """;
+    private static final int STOCK_FETCH_SIZE = 1000;
+    private static final String SELECT_SOCKS = """
+            SELECT s.id, c.name, s.cotton_percentage, s.quantity
+            FROM socks s JOIN socks_colors c ON c.id = s.color_id
+            """;
+    private static final String SELECT_BY_KEYS =
+            "SELECT id, color_id, cotton_percentage, quantity FROM socks WHERE (color_id, cotton_percentage) IN (";
+    private static final String SELECT_QUANTITIES =
+            "SELECT color_id, cotton_percentage, quantity FROM socks WHERE (color_id, cotton_percentage) IN (";
+
+    private static final Comparator<long[]> LOCK_ORDER =
+            Comparator.<long[]>comparingLong(row -> row[0]).thenComparingLong(row -> row[1]);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ColorDictionary colorDictionary;
+    private final Timer upsertTimer;
+    private final Timer applyTimer;
+    private final Timer stockScanTimer;
+    private final Timer exportTimer;
+    private final Timer lockTimer;
+
+    public SocksJdbcRepository(JdbcTemplate jdbcTemplate, ColorDictionary colorDictionary, SocksMetrics socksMetrics) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.colorDictionary = colorDictionary;
+        this.upsertTimer = socksMetrics.jdbcTimer("SocksJdbcRepository", "upsertIncrements");
+        this.applyTimer = socksMetrics.jdbcTimer("SocksJdbcRepository", "applyIncrements");
+        this.stockScanTimer = socksMetrics.jdbcTimer("SocksJdbcRepository", "forEachStock");
+        this.exportTimer = socksMetrics.jdbcTimer("SocksJdbcRepository", "forEachSocks");
+        this.lockTimer = socksMetrics.jdbcTimer("SocksJdbcRepository", "lockQuantities");
+    }
+
+    @Transactional
+    public void upsertIncrements(Map<SocksKey, Integer> increments) {
+        if (increments.isEmpty()) {
+            return;
+        }
+        List<long[]> rows = new ArrayList<>(increments.size());
+        increments.forEach((key, increment) ->
+                rows.add(new long[]{colorDictionary.idOf(key.getColor()), key.getCottonPart(), increment}));
+        // единый порядок блокировки строк, чтобы параллельные загрузки не ловили дедлок
+        rows.sort(LOCK_ORDER);
+        upsertTimer.record(() -> jdbcTemplate.batchUpdate(UPSERT_INCREMENT, rows, rows.size(), (ps, row) -> {
+            ps.setInt(1, (int) row[0]);
+            ps.setLong(2, row[1]);
+            ps.setInt(3, (int) row[2]);
+        }));
+    }
+
+    /**
+     * Как {@link #upsertIncrements}, но списание, которое остаток не покрывает, не применяется и не
+     * откатывает остальные дельты: такие ключи возвращаются вызывающему.
+     */
+    @Transactional
+    public Set<SocksKey> applyIncrements(Map<SocksKey, Integer> increments) {
+        Map<SocksKey, Integer> incomes = new HashMap<>();
+        List<SocksKey> outcomeKeys = new ArrayList<>();
+        List<long[]> outcomes = new ArrayList<>();
+        Set<SocksKey> rejected = new HashSet<>();
+        increments.forEach((key, increment) -> {
+            if (increment >= 0) {
+                incomes.put(key, increment);
+                return;
+            }
+            int colorId = colorDictionary.find(key.getColor());
+            if (colorId == ColorDictionary.ABSENT) {
+                rejected.add(key);
+                return;
+            }
+            outcomes.add(new long[]{colorId, key.getCottonPart(), increment, outcomeKeys.size()});
+            outcomeKeys.add(key);
+        });
+        upsertIncrements(incomes);
+        if (outcomes.isEmpty()) {
+            return rejected;
+        }
+        outcomes.sort(LOCK_ORDER);
+        int[] updated = applyTimer.record(() -> jdbcTemplate.batchUpdate(APPLY_COVERED_DECREMENT, outcomes, outcomes.size(),
+                (ps, row) -> {
+                    ps.setInt(1, (int) row[2]);
+                    ps.setInt(2, (int) row[0]);
+                    ps.setLong(3, row[1]);
+                    ps.setInt(4, (int) row[2]);
+                }))[0];
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                rejected.add(outcomeKeys.get((int) outcomes.get(i)[3]));
+            }
+        }
+        return rejected;
+    }
+
+    // курсор с fetchSize работает в PostgreSQL только внутри транзакции;
+    // не read-only: индекс и выборка сверяются с событиями коммитов, поэтому читают основную базу, а не реплику
+    @Transactional
+    public void forEachStock(ObjIntConsumer<SocksKey> consumer) {
+        stockScanTimer.record(() -> jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_STOCK);
+            statement.setFetchSize(STOCK_FETCH_SIZE);
+            return statement;
+        }, (RowCallbackHandler) rs ->
+                consumer.accept(new SocksKey(rs.getString(1), rs.getLong(2)), rs.getInt(3))));
+    }
+
+    /**
+     * Построчно отдаёт позиции по фильтру в порядке id. Строки не копятся ни в памяти, ни в контексте JPA:
+     * драйвер держит не больше {@code STOCK_FETCH_SIZE} строк. Время выгрузки включает запись строк потребителем.
+     */
+    @Transactional(readOnly = true)
+    public void forEachSocks(SocksFilter filter, Consumer<Socks> consumer) {
+        List<Object> args = new ArrayList<>();
+        String sql = SELECT_SOCKS + SocksFilterSql.where(filter, colorDictionary, args) + " ORDER BY s.id";
+        exportTimer.record(() -> jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setFetchSize(STOCK_FETCH_SIZE);
+            for (int i = 0; i < args.size(); i++) {
+                statement.setObject(i + 1, args.get(i));
+            }
+            return statement;
+        }, (RowCallbackHandler) rs ->
+                consumer.accept(new Socks(rs.getLong(1), rs.getString(2), rs.getLong(3), rs.getInt(4)))));
+    }
+
+    public Map<SocksKey, Socks> findByKeys(Collection<SocksKey> keys) {
+        Map<SocksKey, Socks> rows = new HashMap<>();
+        if (keys.isEmpty()) {
+            return rows;
+        }
+        List<Object> args = new ArrayList<>(keys.size() * 2);
+        Map<Integer, String> colors = new HashMap<>();
+        String in = keysIn(keys, colors, args);
+        if (args.isEmpty()) {
+            return rows;
+        }
+        jdbcTemplate.query(SELECT_BY_KEYS + in + ")", (RowCallbackHandler) rs -> {
+            Socks socks = new Socks(rs.getLong(1), colors.get(rs.getInt(2)), rs.getLong(3), rs.getInt(4));
+            rows.put(new SocksKey(socks.getColor(), socks.getCottonPart()), socks);
+        }, args.toArray());
+        return rows;
+    }
+
+    /**
+     * Блокирует существующие строки ключей до конца транзакции и возвращает их количества.
+     * Порядок блокировки (id цвета, доля хлопка) совпадает с {@link #upsertIncrements},
+     * поэтому пакетные движения и загрузки не блокируют друг друга крест-накрест.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Map<SocksKey, Integer> lockQuantities(Collection<SocksKey> keys) {
+        Map<SocksKey, Integer> quantities = new HashMap<>();
+        if (keys.isEmpty()) {
+            return quantities;
+        }
+        List<Object> args = new ArrayList<>(keys.size() * 2);
+        Map<Integer, String> colors = new HashMap<>();
+        String in = keysIn(keys, colors, args);
+        if (args.isEmpty()) {
+            return quantities;
+        }
+        String sql = SELECT_QUANTITIES + in + ") ORDER BY color_id, cotton_percentage FOR UPDATE";
+        lockTimer.record(() -> jdbcTemplate.query(sql, (RowCallbackHandler) rs ->
+                quantities.put(new SocksKey(colors.get(rs.getInt(1)), rs.getLong(2)), rs.getInt(3)), args.toArray()));
+        return quantities;
+    }
+
+    // ключи с цветом, которого нет в словаре, пропускаются: таких строк в таблице быть не может
+    private String keysIn(Collection<SocksKey> keys, Map<Integer, String> colors, List<Object> args) {
+        StringBuilder sql = new StringBuilder();
+        for (SocksKey key : keys) {
+            int colorId = colorDictionary.find(key.getColor());
+            if (colorId == ColorDictionary.ABSENT) {
+                continue;
+            }
+            colors.put(colorId, key.getColor());
+            sql.append(args.isEmpty() ? "(?, ?)" : ", (?, ?)");
+            args.add(colorId);
+            args.add(key.getCottonPart());
+        }
+        return sql.toString();
+    }
+}
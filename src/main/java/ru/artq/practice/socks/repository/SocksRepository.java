@@ -1,36 +1,43 @@
 package ru.artq.practice.socks.repository;
 
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.artq.practice.socks.model.Socks;
 
-import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface SocksRepository extends JpaRepository<Socks, Long> {
-
-    @Query("""
-            SELECT s FROM Socks s
-                WHERE (:color IS NULL OR s.color = :color)
-                    AND (:comparison IS NULL OR
-                        (:comparison = 'moreThen' AND s.cottonPart > :cottonPart) OR
-                        (:comparison = 'lessThan' AND s.cottonPart < :cottonPart) OR
-                        (:comparison = 'equal' AND s.cottonPart = :cottonPart))
-                    AND (:cottonPart IS NULL OR s.cottonPart = :cottonPart)
-                    AND (:minCotton IS NULL OR s.cottonPart >= :minCotton)
-                    AND (:maxCotton IS NULL OR s.cottonPart <= :maxCotton)
-                ORDER BY
-                    CASE
-                        WHEN :sortBy = 'color' THEN s.color
-                        ELSE NULL
-                    END ASC
-            """)
-    List<Socks> findByFilters(String color, String comparison, Long cottonPart, Long minCotton, Long maxCotton, String sortBy);
+public interface SocksRepository extends JpaRepository<Socks, Long>, SocksRepositoryCustom {
 
     Optional<Socks> findByColorAndCottonPart(String color, Long cottonPercentage);
 
-    @Query("select count(*) from Socks")
-    long findCount();
+    // на основной базе null: транзакция читает не с реплики
+    @Query(value = "SELECT pg_last_wal_replay_lsn()::text", nativeQuery = true)
+    String findReplayedLsn();
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from Socks s where s.id = :id")
+    Optional<Socks> findByIdForUpdate(Long id);
+
+    @Transactional
+    @Modifying
+    @Query(value = """
+            INSERT INTO socks (color_id, cotton_percentage, quantity) VALUES (:colorId, :cottonPart, :quantity)
+            ON CONFLICT (color_id, cotton_percentage)
+                DO UPDATE SET quantity = socks.quantity + excluded.quantity
+            """, nativeQuery = true)
+    int incrementQuantity(Integer colorId, Long cottonPart, Integer quantity);
+
+    @Transactional
+    @Modifying
+    @Query("""
+            UPDATE Socks s SET s.quantity = s.quantity - :quantity
+                WHERE s.color = :color AND s.cottonPart = :cottonPart AND s.quantity - :held >= :quantity
+            """)
+    int decrementQuantity(String color, Long cottonPart, Integer quantity, Long held);
 }
@@ -0,0 +1,15 @@
+package ru.artq.practice.socks.repository;
+
+import ru.artq.practice.socks.model.SocksFilter;
+import ru.artq.practice.socks.model.SocksTotal;
+
+import java.util.List;
+
+public interface SocksRepositoryCustom {
+
+    SocksTotal sumQuantity(SocksFilter filter);
+
+    List<SocksTotal> sumQuantityByColor(SocksFilter filter);
+
+    List<SocksTotal> sumQuantityByCottonPart(SocksFilter filter);
+}
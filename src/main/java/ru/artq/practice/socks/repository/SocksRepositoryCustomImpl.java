@@ -0,0 +1,85 @@
+package ru.artq.practice.socks.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.*;
+import ru.artq.practice.socks.model.Socks;
+import ru.artq.practice.socks.model.SocksFilter;
+import ru.artq.practice.socks.model.SocksTotal;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Агрегаты считаются в базе: в WHERE попадают только заданные условия, чтобы планировщик мог использовать
+ * индекс (color_id, cotton_percentage), а сущности не загружаются в контекст.
+ * Цвет в условиях и группировке переводится в id словаря конвертером сущности.
+ */
+class SocksRepositoryCustomImpl implements SocksRepositoryCustom {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public SocksTotal sumQuantity(SocksFilter filter) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Socks> root = query.from(Socks.class);
+        query.multiselect(cb.count(root), cb.coalesce(cb.sumAsLong(root.get("quantity")), 0L))
+                .where(predicates(cb, root, filter));
+        Tuple tuple = entityManager.createQuery(query).getSingleResult();
+        return new SocksTotal(null, tuple.get(0, Long.class), tuple.get(1, Long.class));
+    }
+
+    @Override
+    public List<SocksTotal> sumQuantityByColor(SocksFilter filter) {
+        // база упорядочивает по id цвета, ответ — по названию
+        List<SocksTotal> totals = sumGroupedBy("color", filter);
+        totals.sort(Comparator.comparing(SocksTotal::getGroup));
+        return totals;
+    }
+
+    @Override
+    public List<SocksTotal> sumQuantityByCottonPart(SocksFilter filter) {
+        return sumGroupedBy("cottonPart", filter);
+    }
+
+    private List<SocksTotal> sumGroupedBy(String attribute, SocksFilter filter) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Socks> root = query.from(Socks.class);
+        Path<Object> group = root.get(attribute);
+        query.multiselect(group, cb.count(root), cb.coalesce(cb.sumAsLong(root.get("quantity")), 0L))
+                .where(predicates(cb, root, filter))
+                .groupBy(group)
+                .orderBy(cb.asc(group));
+        List<SocksTotal> totals = new ArrayList<>();
+        for (Tuple tuple : entityManager.createQuery(query).getResultList()) {
+            totals.add(new SocksTotal(String.valueOf(tuple.get(0)), tuple.get(1, Long.class), tuple.get(2, Long.class)));
+        }
+        return totals;
+    }
+
+    private static Predicate[] predicates(CriteriaBuilder cb, Root<Socks> root, SocksFilter filter) {
+        List<Predicate> predicates = new ArrayList<>();
+        Path<Long> cottonPart = root.get("cottonPart");
+        if (filter.getColor() != null) {
+            predicates.add(cb.equal(root.get("color"), filter.getColor()));
+        }
+        if (filter.getCottonPart() != null) {
+            predicates.add(switch (filter.getComparison()) {
+                case "moreThen" -> cb.greaterThan(cottonPart, filter.getCottonPart());
+                case "lessThan" -> cb.lessThan(cottonPart, filter.getCottonPart());
+                default -> cb.equal(cottonPart, filter.getCottonPart());
+            });
+        }
+        if (filter.getMinCotton() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(cottonPart, filter.getMinCotton()));
+        }
+        if (filter.getMaxCotton() != null) {
+            predicates.add(cb.lessThanOrEqualTo(cottonPart, filter.getMaxCotton()));
+        }
+        return predicates.toArray(Predicate[]::new);
+    }
+}
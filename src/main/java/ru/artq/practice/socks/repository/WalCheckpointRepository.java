@@ -0,0 +1,9 @@
+package ru.artq.practice.socks.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import ru.artq.practice.socks.model.WalCheckpoint;
+
+@Repository
+public interface WalCheckpointRepository extends JpaRepository<WalCheckpoint, String> {
+}
@@ -0,0 +1,59 @@
+package ru.artq.practice.socks.service;
+
+import ru.artq.practice.socks.model.MovementType;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.model.StockMovement;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+public final class BulkMovements {
+
+    private BulkMovements() {
+    }
+
+    /**
+     * Проверяет движения в порядке поступления по текущим остаткам: приход принимается всегда,
+     * отпуск — если остаток с учётом уже принятых движений пакета его покрывает.
+     */
+    public static boolean[] evaluate(List<StockMovement> movements, ToLongFunction<SocksKey> quantities) {
+        Map<SocksKey, Long> balances = new HashMap<>();
+        boolean[] accepted = new boolean[movements.size()];
+        for (int i = 0; i < movements.size(); i++) {
+            StockMovement movement = movements.get(i);
+            long balance = balances.computeIfAbsent(movement.getKey(), quantities::applyAsLong);
+            long delta = delta(movement);
+            if (delta >= 0 || balance + delta >= 0) {
+                balances.put(movement.getKey(), balance + delta);
+                accepted[i] = true;
+            }
+        }
+        return accepted;
+    }
+
+    public static Map<SocksKey, Integer> netDeltas(List<StockMovement> movements, boolean[] accepted) {
+        Map<SocksKey, Integer> deltas = new HashMap<>();
+        for (int i = 0; i < movements.size(); i++) {
+            if (accepted[i]) {
+                deltas.merge(movements.get(i).getKey(), delta(movements.get(i)), Integer::sum);
+            }
+        }
+        deltas.values().removeIf(delta -> delta == 0);
+        return deltas;
+    }
+
+    public static boolean allAccepted(boolean[] accepted) {
+        for (boolean item : accepted) {
+            if (!item) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int delta(StockMovement movement) {
+        return movement.getType() == MovementType.OUTCOME ? -movement.getQuantity() : movement.getQuantity();
+    }
+}
@@ -0,0 +1,62 @@
+package ru.artq.practice.socks.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+class CountingLineReader implements Closeable {
+    private final InputStream inputStream;
+    private final byte[] buffer = new byte[64 * 1024];
+    private byte[] line = new byte[256];
+    private int bufferPos;
+    private int bufferLimit;
+    private long position;
+
+    CountingLineReader(InputStream inputStream, long startPosition) {
+        this.inputStream = inputStream;
+        this.position = startPosition;
+    }
+
+    String readLine() throws IOException {
+        int length = 0;
+        boolean eof = false;
+        while (true) {
+            if (bufferPos == bufferLimit) {
+                bufferLimit = inputStream.read(buffer);
+                bufferPos = 0;
+                if (bufferLimit <= 0) {
+                    bufferLimit = 0;
+                    eof = true;
+                    break;
+                }
+            }
+            byte b = buffer[bufferPos++];
+            position++;
+            if (b == '\n') {
+                break;
+            }
+            if (length == line.length) {
+                line = Arrays.copyOf(line, length * 2);
+            }
+            line[length++] = b;
+        }
+        if (eof && length == 0) {
+            return null;
+        }
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    long position() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
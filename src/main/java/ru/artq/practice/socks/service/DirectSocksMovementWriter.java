@@ -0,0 +1,71 @@
+package ru.artq.practice.socks.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.artq.practice.socks.model.MovementType;
+import ru.artq.practice.socks.model.Socks;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.model.StockMovement;
+import ru.artq.practice.socks.repository.ColorDictionary;
+import ru.artq.practice.socks.repository.SocksJdbcRepository;
+import ru.artq.practice.socks.repository.SocksRepository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.ToLongFunction;
+
+@Component
+@ConditionalOnProperty(name = "socks.write-behind.enabled", havingValue = "false", matchIfMissing = true)
+@RequiredArgsConstructor
+@Transactional
+public class DirectSocksMovementWriter implements SocksMovementWriter {
+    private final SocksRepository socksRepository;
+    private final SocksJdbcRepository socksJdbcRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ColorDictionary colorDictionary;
+
+    @Override
+    public void income(SocksKey key, int quantity) {
+        socksRepository.incrementQuantity(colorDictionary.idOf(key.getColor()), key.getCottonPart(), quantity);
+        eventPublisher.publishEvent(SocksChangedEvent.of(MovementType.INCOME, key, quantity));
+    }
+
+    @Override
+    public long quantity(SocksKey key) {
+        return socksRepository.findByColorAndCottonPart(key.getColor(), key.getCottonPart())
+                .map(Socks::getQuantity)
+                .orElse(0);
+    }
+
+    @Override
+    public boolean outcome(SocksKey key, int quantity, long held) {
+        if (socksRepository.decrementQuantity(key.getColor(), key.getCottonPart(), quantity, held) == 0) {
+            return false;
+        }
+        eventPublisher.publishEvent(SocksChangedEvent.of(MovementType.OUTCOME, key, -quantity));
+        return true;
+    }
+
+    @Override
+    public boolean[] apply(List<StockMovement> movements, boolean atomic, ToLongFunction<SocksKey> held) {
+        Set<SocksKey> keys = new TreeSet<>();
+        movements.forEach(movement -> keys.add(movement.getKey()));
+        Map<SocksKey, Integer> quantities = socksJdbcRepository.lockQuantities(keys);
+        boolean[] accepted = BulkMovements.evaluate(movements,
+                key -> quantities.getOrDefault(key, 0) - held.applyAsLong(key));
+        if (atomic && !BulkMovements.allAccepted(accepted)) {
+            return accepted;
+        }
+        Map<SocksKey, Integer> deltas = BulkMovements.netDeltas(movements, accepted);
+        socksJdbcRepository.upsertIncrements(deltas);
+        if (!deltas.isEmpty()) {
+            eventPublisher.publishEvent(SocksChangedEvent.of(MovementType.BULK, deltas));
+        }
+        return accepted;
+    }
+}
@@ -0,0 +1,14 @@
+package ru.artq.practice.socks.service;
+
+import org.springframework.core.io.Resource;
+import org.springframework.web.multipart.MultipartFile;
+import ru.artq.practice.socks.model.ImportJobProgress;
+
+public interface ImportJobService {
+
+    ImportJobProgress submit(MultipartFile file);
+
+    ImportJobProgress getProgress(String jobId);
+
+    Resource getErrors(String jobId);
+}
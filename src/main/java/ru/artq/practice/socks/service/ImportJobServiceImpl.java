@@ -0,0 +1,265 @@
+package ru.artq.practice.socks.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import ru.artq.practice.socks.admission.AdaptiveLimit;
+import ru.artq.practice.socks.admission.AdmissionLimits;
+import ru.artq.practice.socks.admission.Bulkhead;
+import ru.artq.practice.socks.errors.CsvProcessingException;
+import ru.artq.practice.socks.errors.ImportRejectedException;
+import ru.artq.practice.socks.errors.SocksNotFoundException;
+import ru.artq.practice.socks.model.ImportJob;
+import ru.artq.practice.socks.model.ImportJobProgress;
+import ru.artq.practice.socks.model.ImportJobStatus;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.repository.ImportJobRepository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.UUID;
+
+@Service
+@Slf4j
+public class ImportJobServiceImpl implements ImportJobService {
+    private static final long BULK_POLL_MS = 200;
+
+    private final ImportJobRepository importJobRepository;
+    private final SocksCsvImporter socksCsvImporter;
+    private final ThreadPoolTaskExecutor importExecutor;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectProvider<AdmissionLimits> admissionLimits;
+    private final Path spoolDir;
+    private final String nodeId;
+    private volatile boolean stopping;
+
+    public ImportJobServiceImpl(ImportJobRepository importJobRepository,
+                                SocksCsvImporter socksCsvImporter,
+                                ThreadPoolTaskExecutor importExecutor,
+                                TransactionTemplate transactionTemplate,
+                                ObjectProvider<AdmissionLimits> admissionLimits,
+                                @Value("${socks.import.spool-dir:${java.io.tmpdir}/socks-import}") Path spoolDir,
+                                @Value("${socks.node-id:${HOSTNAME:local}}") String nodeId) {
+        this.importJobRepository = importJobRepository;
+        this.socksCsvImporter = socksCsvImporter;
+        this.importExecutor = importExecutor;
+        this.transactionTemplate = transactionTemplate;
+        this.admissionLimits = admissionLimits;
+        this.spoolDir = spoolDir;
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public ImportJobProgress submit(MultipartFile file) {
+        ImportJob job = new ImportJob();
+        job.setId(UUID.randomUUID().toString());
+        job.setNodeId(nodeId);
+        job.setFileName(file.getOriginalFilename());
+        job.setStatus(ImportJobStatus.QUEUED);
+        job.setBytesTotal(file.getSize());
+        job.setCreatedAt(Instant.now());
+        try {
+            Files.createDirectories(spoolDir);
+            file.transferTo(dataFile(job.getId()));
+        } catch (IOException e) {
+            log.error("Не удалось сохранить файл загрузки {}", job.getFileName(), e);
+            throw new CsvProcessingException("Ошибки при обработке файлов: ", e);
+        }
+        importJobRepository.save(job);
+        try {
+            importExecutor.execute(() -> runAdmitted(job.getId()));
+        } catch (TaskRejectedException e) {
+            finish(job.getId(), ImportJobStatus.FAILED, "Очередь загрузок переполнена");
+            deleteQuietly(dataFile(job.getId()));
+            throw new ImportRejectedException("Очередь загрузок переполнена, повторите позже", e);
+        }
+        log.info("Загрузка {} поставлена в очередь: файл={}, байт={}", job.getId(), job.getFileName(), job.getBytesTotal());
+        return ImportJobProgress.of(job, Instant.now());
+    }
+
+    @Override
+    public ImportJobProgress getProgress(String jobId) {
+        return ImportJobProgress.of(findJob(jobId), Instant.now());
+    }
+
+    @Override
+    public Resource getErrors(String jobId) {
+        findJob(jobId);
+        Path errors = errorFile(jobId);
+        if (!Files.exists(errors)) {
+            throw new SocksNotFoundException("Отклонённых строк нет");
+        }
+        return new FileSystemResource(errors);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinished() {
+        for (ImportJob job : importJobRepository.findByNodeIdAndStatusIn(
+                nodeId, EnumSet.of(ImportJobStatus.QUEUED, ImportJobStatus.RUNNING))) {
+            if (!Files.exists(dataFile(job.getId()))) {
+                finish(job.getId(), ImportJobStatus.FAILED, "Файл загрузки не найден на узле");
+                continue;
+            }
+            try {
+                importExecutor.execute(() -> runAdmitted(job.getId()));
+                log.info("Загрузка {} возобновлена с позиции {}", job.getId(), job.getByteOffset());
+            } catch (TaskRejectedException e) {
+                log.warn("Загрузка {} не возобновлена: очередь переполнена", job.getId());
+            }
+        }
+    }
+
+    /**
+     * Загрузка ждёт места в группе BULK и держит его до конца, как синхронные загрузки и выгрузки.
+     * Пока места нет, она остаётся в очереди; прерванная остановкой узла возобновится при следующем старте.
+     */
+    private void runAdmitted(String jobId) {
+        AdmissionLimits limits = admissionLimits.getIfAvailable();
+        if (limits == null) {
+            run(jobId);
+            return;
+        }
+        AdaptiveLimit bulk = limits.get(Bulkhead.BULK);
+        try {
+            while (!bulk.tryAcquire()) {
+                Thread.sleep(BULK_POLL_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            run(jobId);
+        } finally {
+            bulk.releaseUnmeasured();
+        }
+    }
+
+    void run(String jobId) {
+        ImportJob job = findJob(jobId);
+        job.setStatus(ImportJobStatus.RUNNING);
+        if (job.getStartedAt() == null) {
+            job.setStartedAt(Instant.now());
+        }
+        importJobRepository.save(job);
+        ImportProgress progress = new ImportProgress(job.getByteOffset(), job.getLineNumber(),
+                job.getRowsRead(), job.getRowsApplied(), job.getRowsRejected());
+        Path errors = errorFile(jobId);
+        try (FileChannel errorChannel = FileChannel.open(errors, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileChannel dataChannel = FileChannel.open(dataFile(jobId), StandardOpenOption.READ)) {
+            // отбрасываем отклонённые строки после последней контрольной точки, они будут прочитаны заново
+            errorChannel.truncate(job.getErrorBytes());
+            errorChannel.position(job.getErrorBytes());
+            dataChannel.position(job.getByteOffset());
+            BufferedWriter errorWriter = new BufferedWriter(Channels.newWriter(errorChannel, StandardCharsets.UTF_8));
+            InputStream input = Channels.newInputStream(dataChannel);
+            socksCsvImporter.importCsv(input, progress,
+                    (chunk, checkpoint) -> checkpoint(jobId, chunk, checkpoint, errorWriter, errorChannel),
+                    (lineNumber, line, reason) -> writeError(errorWriter, lineNumber, line, reason));
+            finish(jobId, ImportJobStatus.COMPLETED, null);
+            deleteQuietly(dataFile(jobId));
+            log.info("Загрузка {} завершена: прочитано={}, применено={}, отклонено={}",
+                    jobId, progress.getRowsRead(), progress.getRowsApplied(), progress.getRowsRejected());
+        } catch (RuntimeException | IOException e) {
+            if (stopping || Thread.currentThread().isInterrupted() || e instanceof ClosedByInterruptException) {
+                // загрузка остаётся RUNNING и при следующем старте продолжится с последней контрольной точки
+                log.info("Загрузка {} остановлена вместе с узлом на позиции {}", jobId, progress.getByteOffset());
+                return;
+            }
+            log.error("Загрузка {} прервана на позиции {}", jobId, progress.getByteOffset(), e);
+            finish(jobId, ImportJobStatus.FAILED, e.getMessage());
+        }
+    }
+
+    // сервис останавливается раньше пула загрузок, который при остановке прерывает работающие загрузки
+    @PreDestroy
+    public void stop() {
+        stopping = true;
+    }
+
+    private void checkpoint(String jobId, Map<SocksKey, Integer> chunk,
+                            ImportProgress progress, BufferedWriter errorWriter, FileChannel errorChannel) {
+        long errorBytes;
+        try {
+            errorWriter.flush();
+            errorChannel.force(false);
+            errorBytes = errorChannel.position();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // чанк и позиция фиксируются одной транзакцией, поэтому после рестарта строки не применяются дважды
+        transactionTemplate.executeWithoutResult(status -> {
+            socksCsvImporter.applyChunk(chunk);
+            ImportJob job = findJob(jobId);
+            job.setByteOffset(progress.getByteOffset());
+            job.setLineNumber(progress.getLineNumber());
+            job.setRowsRead(progress.getRowsRead());
+            job.setRowsApplied(progress.getRowsApplied());
+            job.setRowsRejected(progress.getRowsRejected());
+            job.setErrorBytes(errorBytes);
+            importJobRepository.save(job);
+        });
+    }
+
+    private void finish(String jobId, ImportJobStatus status, String message) {
+        importJobRepository.findById(jobId).ifPresent(job -> {
+            job.setStatus(status);
+            job.setMessage(message);
+            job.setFinishedAt(Instant.now());
+            importJobRepository.save(job);
+        });
+    }
+
+    private static void writeError(BufferedWriter writer, long lineNumber, String line, String reason) {
+        try {
+            writer.write(lineNumber + ",\"" + line.replace("\"", "\"\"") + "\",\""
+                    + String.valueOf(reason).replace("\"", "\"\"") + "\"");
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ImportJob findJob(String jobId) {
+        return importJobRepository.findById(jobId)
+                .orElseThrow(() -> new SocksNotFoundException("Загрузка не найдена"));
+    }
+
+    private Path dataFile(String jobId) {
+        return spoolDir.resolve(jobId + ".csv");
+    }
+
+    private Path errorFile(String jobId) {
+        return spoolDir.resolve(jobId + ".errors.csv");
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить {}", path, e);
+        }
+    }
+}
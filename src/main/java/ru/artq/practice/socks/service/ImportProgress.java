@@ -0,0 +1,16 @@
+package ru.artq.practice.socks.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportProgress {
+    private long byteOffset;
+    private long lineNumber;
+    private long rowsRead;
+    private long rowsApplied;
+    private long rowsRejected;
+}
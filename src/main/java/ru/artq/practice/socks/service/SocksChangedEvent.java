@@ -0,0 +1,34 @@
+package ru.artq.practice.socks.service;
+
+import lombok.Value;
+import ru.artq.practice.socks.model.MovementType;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.model.StockChange;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Value
+public class SocksChangedEvent {
+    MovementType type;
+    List<StockChange> changes;
+    /**
+     * Журнал движений уже записан в транзакции изменения: v2 пишет его через R2DBC, а не слушателем.
+     */
+    boolean recorded;
+
+    public static SocksChangedEvent of(MovementType type, SocksKey key, int delta) {
+        return new SocksChangedEvent(type, List.of(new StockChange(key, delta)), false);
+    }
+
+    public static SocksChangedEvent of(MovementType type, Map<SocksKey, Integer> deltas) {
+        List<StockChange> changes = new ArrayList<>(deltas.size());
+        deltas.forEach((key, delta) -> changes.add(new StockChange(key, delta)));
+        return new SocksChangedEvent(type, changes, false);
+    }
+
+    public SocksChangedEvent recorded() {
+        return new SocksChangedEvent(type, changes, true);
+    }
+}
@@ -0,0 +1,206 @@
+package ru.artq.practice.socks.service;
+
+import com.opencsv.CSVParser;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.artq.practice.socks.datasource.ShardRouter;
+import ru.artq.practice.socks.datasource.ShardRouting;
+import ru.artq.practice.socks.errors.CsvProcessingException;
+import ru.artq.practice.socks.errors.SocksArgumentException;
+import ru.artq.practice.socks.metrics.SocksMetrics;
+import ru.artq.practice.socks.model.BatchResult;
+import ru.artq.practice.socks.model.MovementType;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.repository.SocksJdbcRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+@Component
+@Slf4j
+public class SocksCsvImporter {
+    private final SocksJdbcRepository socksJdbcRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SocksMetrics socksMetrics;
+    private final ShardRouter shardRouter;
+    private final int chunkSize;
+
+    public SocksCsvImporter(SocksJdbcRepository socksJdbcRepository,
+                            TransactionTemplate transactionTemplate,
+                            ApplicationEventPublisher eventPublisher,
+                            SocksMetrics socksMetrics,
+                            ShardRouter shardRouter,
+                            @Value("${socks.import.chunk-size:5000}") int chunkSize) {
+        this.socksJdbcRepository = socksJdbcRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.socksMetrics = socksMetrics;
+        this.shardRouter = shardRouter;
+        this.chunkSize = chunkSize;
+    }
+
+    public BatchResult importCsv(InputStream inputStream) {
+        ImportProgress progress = new ImportProgress();
+        importCsv(inputStream, progress,
+                (chunk, checkpoint) -> {
+                    if (!chunk.isEmpty()) {
+                        transactionTemplate.executeWithoutResult(status -> applyChunk(chunk));
+                    }
+                },
+                (lineNumber, line, reason) -> log.warn("Строка {} отклонена: {} ({})", lineNumber, line, reason));
+        log.info("Загрузка партий носков завершена: прочитано={}, применено={}, отклонено={}",
+                progress.getRowsRead(), progress.getRowsApplied(), progress.getRowsRejected());
+        return new BatchResult(progress.getRowsRead(), progress.getRowsApplied(), progress.getRowsRejected());
+    }
+
+    /**
+     * Читает поток с позиции {@code progress.byteOffset}. Чанк сбрасывается каждые {@code chunk-size}
+     * прочитанных строк, включая отклонённые, поэтому транзакция и память ограничены и при малом числе
+     * позиций. Перед каждым сбросом позиция выставляется на конец последней учтённой строки, так что
+     * сохранённый вместе с чанком прогресс можно использовать как точку возобновления.
+     */
+    public void importCsv(InputStream inputStream, ImportProgress progress, ChunkSink sink, RejectHandler rejects) {
+        CSVParser parser = new CSVParser();
+        Map<SocksKey, Integer> chunk = new HashMap<>();
+        long chunkRows = 0;
+        long rowsReadAtFlush = progress.getRowsRead();
+        try (CountingLineReader reader = new CountingLineReader(inputStream, progress.getByteOffset())) {
+            long lineStart = reader.position();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                long lineNumber = progress.getLineNumber() + 1;
+                if (line.isBlank() || lineNumber == 1 && isHeader(line)) {
+                    progress.setLineNumber(lineNumber);
+                    lineStart = reader.position();
+                    continue;
+                }
+                SocksKey key = null;
+                int quantity = 0;
+                String rejectReason = null;
+                try {
+                    String[] record = parser.parseLine(line);
+                    quantity = parseQuantity(record);
+                    key = new SocksKey(record[0].trim(), Long.parseLong(record[1].trim()));
+                } catch (IOException | NumberFormatException | SocksArgumentException e) {
+                    rejectReason = e.getMessage();
+                }
+                if (key != null && !fits(chunk, key, quantity)) {
+                    // сумма по позиции не поместится в int столбца quantity: чанк фиксируется до этой строки
+                    flush(chunk, chunkRows, lineStart, progress, sink);
+                    chunkRows = 0;
+                    rowsReadAtFlush = progress.getRowsRead();
+                }
+                progress.setLineNumber(lineNumber);
+                progress.setRowsRead(progress.getRowsRead() + 1);
+                if (key != null) {
+                    chunk.merge(key, quantity, Integer::sum);
+                    chunkRows++;
+                } else {
+                    progress.setRowsRejected(progress.getRowsRejected() + 1);
+                    socksMetrics.importRowRejected();
+                    rejects.reject(lineNumber, line, rejectReason);
+                }
+                lineStart = reader.position();
+                if (progress.getRowsRead() - rowsReadAtFlush >= chunkSize) {
+                    flush(chunk, chunkRows, lineStart, progress, sink);
+                    chunkRows = 0;
+                    rowsReadAtFlush = progress.getRowsRead();
+                }
+            }
+            flush(chunk, chunkRows, lineStart, progress, sink);
+        } catch (IOException e) {
+            log.error("Ошибка при обработке CSV файла, применено строк: {}", progress.getRowsApplied(), e);
+            throw new CsvProcessingException("Ошибки при обработке файлов: ", e);
+        }
+    }
+
+    /**
+     * Помещается ли строка в чанк: сумма по позиции не должна выходить за int, иначе чанк нужно
+     * зафиксировать и начать новый.
+     */
+    public static boolean fits(Map<SocksKey, Integer> chunk, SocksKey key, int quantity) {
+        Integer current = chunk.get(key);
+        return current == null || current + (long) quantity <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Часть чанка, принадлежащая шарду 0, применяется в текущей транзакции вместе с прогрессом загрузки,
+     * части других шардов — собственными транзакциями до неё. Если текущая транзакция откатится, эти части
+     * при возобновлении загрузки применятся повторно: однократность гарантирована только без шардирования.
+     */
+    public void applyChunk(Map<SocksKey, Integer> chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        if (!shardRouter.isSharded()) {
+            upsert(chunk);
+            return;
+        }
+        Map<Integer, Map<SocksKey, Integer>> parts = shardRouter.partition(chunk);
+        parts.forEach((shard, part) -> {
+            if (shard != ShardRouting.HOME_SHARD) {
+                shardRouter.inShardTransaction(shard, false, () -> {
+                    upsert(part);
+                    return null;
+                });
+            }
+        });
+        Map<SocksKey, Integer> home = parts.get(ShardRouting.HOME_SHARD);
+        if (home != null) {
+            upsert(home);
+        }
+    }
+
+    private void upsert(Map<SocksKey, Integer> chunk) {
+        socksJdbcRepository.upsertIncrements(chunk);
+        eventPublisher.publishEvent(SocksChangedEvent.of(MovementType.IMPORT, chunk));
+    }
+
+    private void flush(Map<SocksKey, Integer> chunk, long chunkRows, long position,
+                       ImportProgress progress, ChunkSink sink) {
+        long bytes = position - progress.getByteOffset();
+        progress.setByteOffset(position);
+        progress.setRowsApplied(progress.getRowsApplied() + chunkRows);
+        sink.flush(chunk, progress);
+        socksMetrics.importRowsApplied(chunkRows, bytes);
+        chunk.clear();
+    }
+
+    private static Integer parseQuantity(String[] record) {
+        if (record.length != 3) {
+            throw new SocksArgumentException("Некорректный формат данных: " + String.join(", ", record));
+        }
+        Integer quantity = Integer.parseInt(record[2].trim());
+        SocksValidator.checkParams(record[0].trim(), Long.parseLong(record[1].trim()), quantity);
+        return quantity;
+    }
+
+    /**
+     * Заголовок - первая строка, у которой первое поле ровно {@code color}: строки вроде
+     * {@code colorblock,80,10} остаются данными.
+     */
+    public static boolean isHeader(String line) {
+        try {
+            String[] record = new CSVParser().parseLine(line);
+            return record.length > 0 && record[0].trim().equalsIgnoreCase("color");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @FunctionalInterface
+    public interface ChunkSink {
+        void flush(Map<SocksKey, Integer> chunk, ImportProgress progress);
+    }
+
+    @FunctionalInterface
+    public interface RejectHandler {
+        void reject(long lineNumber, String line, String reason);
+    }
+}
@@ -0,0 +1,37 @@
+package ru.artq.practice.socks.service;
+
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.model.StockMovement;
+
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+public interface SocksMovementWriter {
+
+    void income(SocksKey key, int quantity);
+
+    /**
+     * Текущий остаток позиции, по которому проверяются списания, включая принятые, но ещё не записанные
+     * в базу движения.
+     */
+    long quantity(SocksKey key);
+
+    /**
+     * Списывает, если остаток за вычетом {@code held} покрывает количество. {@code held} - резервы
+     * по позиции, которые это списание не забирает; проверка идёт в том же условном уменьшении.
+     */
+    boolean outcome(SocksKey key, int quantity, long held);
+
+    /**
+     * Применяет пакет движений одной операцией. Возвращает признак принятия для каждого движения;
+     * в атомарном режиме при любом отклонении не применяется ничего. Отпуски не трогают резервы {@code held}.
+     */
+    boolean[] apply(List<StockMovement> movements, boolean atomic, ToLongFunction<SocksKey> held);
+
+    /**
+     * Доводит до базы принятые, но ещё не записанные движения. Вызывается перед записью абсолютного
+     * количества; при прямой записи движения уже в базе.
+     */
+    default void flushPending() {
+    }
+}
@@ -1,20 +1,63 @@
 package ru.artq.practice.socks.service;
 
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.artq.practice.socks.model.BatchResult;
+import ru.artq.practice.socks.model.BulkMode;
+import ru.artq.practice.socks.model.BulkMovementResult;
+import ru.artq.practice.socks.model.ExportFormat;
+import ru.artq.practice.socks.model.LedgerEntry;
+import ru.artq.practice.socks.model.MovementRequest;
+import ru.artq.practice.socks.model.Reservation;
 import ru.artq.practice.socks.model.Socks;
+import ru.artq.practice.socks.model.SocksTotal;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
 
 public interface SocksService {
 
 
+    /**
+     * Версия склада для условных запросов: общая или по цвету, если фильтр задан по цвету.
+     * Пока по цвету есть резервы этого узла, к ней добавляется версия резервов вместе с id узла.
+     */
+    String getInventoryVersion(String color);
+
     Integer getSocks(String color, String comparison, Long cottonPart, Long minCotton, Long maxCotton, String sortBy);
 
+    List<SocksTotal> getSocksTotals(String groupBy, Long bucket, String color, String comparison,
+                                    Long cottonPart, Long minCotton, Long maxCotton);
+
+    Integer getSocksAsOf(Instant asOf, String color, String comparison,
+                         Long cottonPart, Long minCotton, Long maxCotton);
+
+    List<LedgerEntry> getLedger(String color, Long cottonPart, Instant from, Instant to, int limit);
+
     void registerIncome(String color, Long cottonPart, Integer quantity);
 
     void registerOutcome(String color, Long cottonPart, Integer quantity);
 
+    /**
+     * Резерв под оформление заказа на {@code ttlSeconds} (по умолчанию {@code socks.reservation.default-ttl}).
+     */
+    Reservation reserveSocks(String color, Long cottonPart, Integer quantity, Long ttlSeconds);
+
+    void confirmReservation(UUID id);
+
+    void releaseReservation(UUID id);
+
+    BulkMovementResult registerMovements(List<MovementRequest> requests, BulkMode mode);
+
     void updateSocks(Long id, String color, Long cottonPart, Integer quantity);
 
-    void batchSocks(MultipartFile file);
+    BatchResult batchSocks(MultipartFile file);
+
+    StreamingResponseBody exportSocks(ExportFormat format, String color, String comparison,
+                                      Long cottonPart, Long minCotton, Long maxCotton);
+
+    Socks getAnySocks(boolean weighted);
 
-    Socks getAnySocks();
+    List<Socks> getAnySocks(int n, boolean weighted);
 }
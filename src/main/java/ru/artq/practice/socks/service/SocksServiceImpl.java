@@ -1,145 +1,511 @@
 package ru.artq.practice.socks.service;
 
-import com.opencsv.CSVReader;
-import com.opencsv.exceptions.CsvException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.artq.practice.socks.cache.InventoryVersions;
+import ru.artq.practice.socks.datasource.ReplicaLagMonitor;
+import ru.artq.practice.socks.datasource.ReplicaRouting;
+import ru.artq.practice.socks.datasource.ShardRouter;
+import ru.artq.practice.socks.datasource.WalPosition;
 import ru.artq.practice.socks.errors.CsvProcessingException;
 import ru.artq.practice.socks.errors.SocksArgumentException;
 import ru.artq.practice.socks.errors.SocksNotFoundException;
+import ru.artq.practice.socks.metrics.SocksMetrics;
+import ru.artq.practice.socks.model.BatchResult;
+import ru.artq.practice.socks.model.BulkMode;
+import ru.artq.practice.socks.model.BulkMovementResult;
+import ru.artq.practice.socks.model.ExportFormat;
+import ru.artq.practice.socks.model.LedgerEntry;
+import ru.artq.practice.socks.model.MovementRequest;
+import ru.artq.practice.socks.model.MovementResult;
+import ru.artq.practice.socks.model.MovementStatus;
+import ru.artq.practice.socks.model.MovementType;
+import ru.artq.practice.socks.model.Reservation;
 import ru.artq.practice.socks.model.Socks;
+import ru.artq.practice.socks.model.SocksFilter;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.model.SocksTotal;
+import ru.artq.practice.socks.model.StockMovement;
+import ru.artq.practice.socks.repository.ColorDictionary;
 import ru.artq.practice.socks.repository.SocksRepository;
+import ru.artq.practice.socks.service.export.SocksExporter;
+import ru.artq.practice.socks.service.index.InventoryIndex;
+import ru.artq.practice.socks.service.ledger.StockLedger;
+import ru.artq.practice.socks.service.reservation.ReservationStore;
+import ru.artq.practice.socks.service.sampling.SocksSampler;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.List;
-import java.util.Objects;
-import java.util.Random;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
 @Transactional
 @Slf4j
 public class SocksServiceImpl implements SocksService {
+    private static final int MAX_SAMPLE_SIZE = 1000;
+    private static final int MAX_BULK_SIZE = 1000;
+    private static final int MAX_LEDGER_PAGE = 10000;
+
     private final SocksRepository socksRepository;
     private final RedisTemplate<String, Object> redisTemplate;
+    private final SocksCsvImporter socksCsvImporter;
+    private final SocksMovementWriter socksMovementWriter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final InventoryIndex inventoryIndex;
+    private final SocksSampler socksSampler;
+    private final SocksMetrics socksMetrics;
+    private final SocksExporter socksExporter;
+    private final StockLedger stockLedger;
+    private final ShardRouter shardRouter;
+    private final ColorDictionary colorDictionary;
+    private final InventoryVersions inventoryVersions;
+    private final ReservationStore reservationStore;
+    private final ObjectProvider<ReplicaLagMonitor> replicaLagMonitor;
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public String getInventoryVersion(String color) {
+        // без резервов количество одинаково на всех узлах, и метка от другого узла остаётся годной
+        String stock = String.valueOf(inventoryVersions.version(color));
+        return reservationStore.holds(color) ? stock + "-" + reservationStore.versionTag() : stock;
+    }
 
-    @Cacheable(value = "socks", key = "#color")
+    // индекс в памяти отвечает быстрее Redis, поэтому при готовом индексе кэш не используется;
+    // количество за вычетом резервов своё у каждого узла и при резервах по цвету не кэшируется;
+    // результат отстающей реплики не кэшируется под текущей версией склада
+    @Cacheable(value = "socks", keyGenerator = "socksCacheKeyGenerator",
+            condition = "!@inventoryIndex.ready && !@reservationStore.holds(#color)",
+            unless = "T(ru.artq.practice.socks.datasource.ReplicaRouting).isStaleRead()")
     @Override
+    @Transactional(readOnly = true)
     public Integer getSocks(
             String color, String comparison,
             Long cottonPart, Long minCotton,
             Long maxCotton, String sortBy) {
-        if (minCotton != null && maxCotton != null && minCotton > maxCotton) {
-            throw new SocksArgumentException("Минимальная часть хлопка не может быть больше максимальной");
+        SocksFilter filter = SocksFilter.of(color, comparison, cottonPart, minCotton, maxCotton);
+        SocksValidator.checkFilter(filter);
+        ReplicaRouting.takeStaleRead();
+        SocksTotal total = inventoryIndex.isReady()
+                ? inventoryIndex.sumQuantity(filter)
+                : SocksTotals.sum(scatterOnReplicas(() -> socksRepository.sumQuantity(filter)));
+        if (total.getRows() == 0) {
+            log.warn("Запрос количества носков: носки не найдены для фильтра: {}", filter);
+            throw new SocksNotFoundException("На складе носки не найдены");
         }
-        List<Socks> socksList = socksRepository
-                .findByFilters(color, comparison, cottonPart, minCotton, maxCotton, sortBy);
-        if (socksList.isEmpty()) {
-            log.warn("Запрос количества носков: носки не найдены для фильтра: color={}, comparison={}, cottonPart={}, minCotton={}, maxCotton={}, sortBy={}", color, comparison, cottonPart, minCotton, maxCotton, sortBy);
+        long available = Math.max(total.getQuantity() - reservationStore.reserved(filter), 0);
+        log.info("Запрос количества носков: {} позиций, {} носков, {} свободно для фильтра: {}",
+                total.getRows(), total.getQuantity(), available, filter);
+        return Math.toIntExact(available);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<SocksTotal> getSocksTotals(
+            String groupBy, Long bucket,
+            String color, String comparison,
+            Long cottonPart, Long minCotton, Long maxCotton) {
+        SocksFilter filter = SocksFilter.of(color, comparison, cottonPart, minCotton, maxCotton);
+        SocksValidator.checkFilter(filter);
+        ReplicaRouting.takeStaleRead();
+        return switch (groupBy) {
+            case "color" -> SocksTotals.mergeGroups(
+                    scatterOnReplicas(() -> socksRepository.sumQuantityByColor(filter)));
+            case "cotton" -> {
+                if (bucket == null || bucket <= 0) {
+                    throw new SocksArgumentException("Размер интервала хлопка должен быть больше 0");
+                }
+                yield SocksTotals.bucketByCotton(SocksTotals.mergeGroups(
+                        scatterOnReplicas(() -> socksRepository.sumQuantityByCottonPart(filter))), bucket);
+            }
+            default -> throw new SocksArgumentException("Группировка возможна по color или cotton");
+        };
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Integer getSocksAsOf(Instant asOf, String color, String comparison,
+                                Long cottonPart, Long minCotton, Long maxCotton) {
+        SocksFilter filter = SocksFilter.of(color, comparison, cottonPart, minCotton, maxCotton);
+        SocksValidator.checkFilter(filter);
+        SocksTotal total = stockLedger.sumQuantityAsOf(filter, asOf);
+        if (total.getRows() == 0) {
+            log.warn("Запрос количества носков на {}: носки не найдены для фильтра: {}", asOf, filter);
             throw new SocksNotFoundException("На складе носки не найдены");
         }
-        log.info("Запрос количества носков: найдено {} носков для фильтра: color={}, comparison={}, cottonPart={}, minCotton={}, maxCotton={}, sortBy={}", socksList, color, comparison, cottonPart, minCotton, maxCotton, sortBy);
-        return socksList.stream().mapToInt(Socks::getQuantity).sum();
+        log.info("Запрос количества носков на {}: {} позиций, {} носков для фильтра: {}",
+                asOf, total.getRows(), total.getQuantity(), filter);
+        return Math.toIntExact(total.getQuantity());
     }
 
     @Override
+    @Transactional(readOnly = true)
+    public List<LedgerEntry> getLedger(String color, Long cottonPart, Instant from, Instant to, int limit) {
+        checkParams(color, cottonPart, 1);
+        if (!from.isBefore(to)) {
+            throw new SocksArgumentException("Начало интервала должно быть раньше конца");
+        }
+        if (limit < 1 || limit > MAX_LEDGER_PAGE) {
+            throw new SocksArgumentException("Размер страницы должен быть от 1 до " + MAX_LEDGER_PAGE);
+        }
+        return stockLedger.findEntries(color, cottonPart, from, to, limit);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void registerIncome(String color, Long cottonPart, Integer quantity) {
         checkParams(color, cottonPart, quantity);
-        Socks socks = findByColorAndCottonPart(color, cottonPart);
-        socks.setQuantity(socks.getQuantity() + quantity);
-        socksRepository.save(socks);
+        SocksKey key = new SocksKey(color, cottonPart);
+        shardRouter.onShard(shardRouter.shardOf(key), () -> socksMovementWriter.income(key, quantity));
+        socksMetrics.incomeApplied();
         log.info("Приход носков: color={}, cottonPart={}, quantity={}", color, cottonPart, quantity);
-
     }
 
     @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void registerOutcome(String color, Long cottonPart, Integer quantity) {
+        registerOutcome(color, cottonPart, quantity, 0);
+    }
+
+    // ownHold - резерв, который этот отпуск забирает: остальные резервы по позиции остаются нетронутыми
+    private void registerOutcome(String color, Long cottonPart, Integer quantity, int ownHold) {
         checkParams(color, cottonPart, quantity);
-        Socks socks = findByColorAndCottonPart(color, cottonPart);
-        if (socks.getQuantity() < quantity) {
+        SocksKey key = new SocksKey(color, cottonPart);
+        boolean applied = duringOutcome(List.of(key), () -> {
+            long held = Math.max(reservationStore.reserved(key) - ownHold, 0);
+            return shardRouter.onShard(shardRouter.shardOf(key), () -> socksMovementWriter.outcome(key, quantity, held));
+        });
+        if (!applied) {
+            socksMetrics.outcomeRejected();
             log.warn("Отпуск носков: недостаточно носков на складе для color={}, cottonPart={}, требуемое количество: {}", color, cottonPart, quantity);
             throw new SocksNotFoundException("Нехватка носков на складе");
         }
-        socks.setQuantity(socks.getQuantity() - quantity);
-        socksRepository.save(socks);
+        socksMetrics.outcomeApplied();
         log.info("Отпуск носков: color={}, cottonPart={}, quantity={}", color, cottonPart, quantity);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Reservation reserveSocks(String color, Long cottonPart, Integer quantity, Long ttlSeconds) {
+        checkParams(color, cottonPart, quantity);
+        SocksKey key = new SocksKey(color, cottonPart);
+        // в режиме отложенной записи остаток в базе отстаёт от принятых движений, поэтому он берётся у writer
+        Reservation reservation = reservationStore.reserve(key, quantity,
+                () -> ReplicaRouting.onPrimary(() -> shardRouter.onShard(shardRouter.shardOf(key),
+                        () -> socksMovementWriter.quantity(key))),
+                ttlSeconds == null ? null : Duration.ofSeconds(ttlSeconds));
+        log.info("Резерв {}: color={}, cottonPart={}, quantity={}, до {}",
+                reservation.getId(), color, cottonPart, quantity, reservation.getExpiresAt());
+        return reservation;
+    }
 
+    /**
+     * Подтверждение - один отпуск зарезервированного количества, без блокировок на время оформления.
+     * Резерв снимается с учёта после завершения транзакции отпуска; при отказе он снимается тоже.
+     */
+    @Override
+    public void confirmReservation(UUID id) {
+        Reservation reservation = reservationStore.claim(id);
+        try {
+            registerOutcome(reservation.getColor(), reservation.getCottonPart(), reservation.getQuantity(),
+                    reservation.getQuantity());
+        } catch (RuntimeException e) {
+            reservationStore.settle(reservation);
+            throw e;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    reservationStore.settle(reservation);
+                }
+            });
+        } else {
+            reservationStore.settle(reservation);
+        }
+        log.info("Резерв {} подтверждён", id);
     }
 
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void releaseReservation(UUID id) {
+        reservationStore.release(id);
+        log.info("Резерв {} снят", id);
+    }
+
+    /**
+     * Пакет приходов и отпусков за один запрос. Движения проверяются в порядке следования,
+     * отпуск видит приходы, стоящие перед ним в пакете; в базу уходит одна суммарная дельта на позицию.
+     * При нескольких шардах пакет применяется отдельной транзакцией на каждом шарде, поэтому атомарный
+     * пакет должен целиком лежать на одном шарде.
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public BulkMovementResult registerMovements(List<MovementRequest> requests, BulkMode mode) {
+        if (requests == null || requests.isEmpty() || requests.size() > MAX_BULK_SIZE) {
+            throw new SocksArgumentException("Количество движений в пакете должно быть от 1 до " + MAX_BULK_SIZE);
+        }
+        boolean atomic = mode == BulkMode.ATOMIC;
+        MovementResult[] results = new MovementResult[requests.size()];
+        List<StockMovement> movements = new ArrayList<>(requests.size());
+        List<Integer> positions = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                movements.add(toMovement(requests.get(i)));
+                positions.add(i);
+            } catch (SocksArgumentException e) {
+                if (atomic) {
+                    throw new SocksArgumentException("Движение #" + i + ": " + e.getMessage());
+                }
+                results[i] = new MovementResult(i, MovementStatus.INVALID, e.getMessage());
+            }
+        }
+        boolean[] accepted = movements.isEmpty()
+                ? new boolean[0]
+                : duringOutcome(outcomeKeys(movements), () -> applyByShard(movements, atomic));
+        if (atomic && !BulkMovements.allAccepted(accepted)) {
+            int rejected = positions.get(indexOfRejected(accepted));
+            socksMetrics.outcomeRejected();
+            log.warn("Пакет движений отклонён: нехватка носков для движения #{}", rejected);
+            throw new SocksNotFoundException("Нехватка носков на складе для движения #" + rejected);
+        }
+        long applied = 0;
+        for (int j = 0; j < movements.size(); j++) {
+            int i = positions.get(j);
+            boolean income = movements.get(j).getType() == MovementType.INCOME;
+            if (accepted[j]) {
+                applied++;
+                if (income) {
+                    socksMetrics.incomeApplied();
+                } else {
+                    socksMetrics.outcomeApplied();
+                }
+                results[i] = new MovementResult(i, MovementStatus.APPLIED, null);
+            } else {
+                socksMetrics.outcomeRejected();
+                results[i] = new MovementResult(i, MovementStatus.REJECTED, "Нехватка носков на складе");
+            }
+        }
+        log.info("Пакет движений: mode={}, всего={}, применено={}", mode, requests.size(), applied);
+        return new BulkMovementResult(applied, requests.size() - applied, Arrays.asList(results));
+    }
+
+    /**
+     * Позиция ищется на шарде, которому принадлежит её id; смена цвета или доли хлопка не должна
+     * переносить позицию на другой шард.
+     */
     @Override
     public void updateSocks(Long id, String color, Long cottonPart, Integer quantity) {
-        Socks socks = socksRepository.findById(id)
+        int shard = shardRouter.shardOfId(id);
+        shardRouter.onShard(shard, () -> updateOnShard(shard, id, color, cottonPart, quantity));
+    }
+
+    private void updateOnShard(int shard, Long id, String color, Long cottonPart, Integer quantity) {
+        // до блокировки строки: иначе отложенные дельты легли бы поверх нового количества,
+        // а сброс ждал бы блокировку, взятую этой же транзакцией
+        socksMovementWriter.flushPending();
+        Socks socks = socksRepository.findByIdForUpdate(id)
                 .orElseThrow(() -> {
                     log.warn("Обновление носков: носки с id={} не найдены", id);
                     return new SocksNotFoundException("На складе носки не найдены");
                 });
         checkParams(color, cottonPart, quantity);
+        SocksKey oldKey = new SocksKey(socks.getColor(), socks.getCottonPart());
+        SocksKey newKey = new SocksKey(color, cottonPart);
+        if (shardRouter.shardOf(newKey) != shard) {
+            log.warn("Обновление носков: позиция id={} переходит на другой шард", id);
+            throw new SocksArgumentException("Смена цвета или доли хлопка переносит позицию на другой шард");
+        }
+        Map<SocksKey, Integer> deltas = new LinkedHashMap<>();
+        deltas.merge(oldKey, -socks.getQuantity(), Integer::sum);
+        deltas.merge(newKey, quantity, Integer::sum);
+        deltas.values().removeIf(delta -> delta == 0);
+        // новый цвет заводится в словаре до сохранения: конвертер сущности только ищет id
+        colorDictionary.idOf(color);
         socks.setColor(color);
         socks.setCottonPart(cottonPart);
         socks.setQuantity(quantity);
         socksRepository.save(socks);
+        eventPublisher.publishEvent(SocksChangedEvent.of(MovementType.UPDATE, deltas));
         log.info("Обновление носков: id={}, color={}, cottonPart={}, quantity={}", id, color, cottonPart, quantity);
 
     }
 
     @Override
-    public void batchSocks(MultipartFile file) {
-        try (CSVReader csvReader = new CSVReader(new InputStreamReader(file.getInputStream()))) {
-            List<String[]> records = csvReader.readAll();
-            records.forEach(record -> {
-                try {
-                    if (record.length != 3) {
-                        throw new SocksArgumentException("Некорректный формат данных: " + String.join(", ", record));
-                    }
-                    String color = record[0].trim();
-                    Long cottonPart = Long.parseLong(record[1].trim());
-                    Integer quantity = Integer.parseInt(record[2].trim());
-                    registerIncome(color, cottonPart, quantity);
-                } catch (NumberFormatException | SocksArgumentException e) {
-                    log.error("Ошибка обработки записи: {}", String.join(", ", record), e);
-                    throw new CsvProcessingException("Ошибки при обработке файла: ", e);
-                }
-            });
-            log.info("Загрузка партий носков завершена успешно, количество партий: {}", records.size());
-        } catch (IOException | CsvException e) {
-            log.error("Ошибка при обработке CSV файла", e);
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public BatchResult batchSocks(MultipartFile file) {
+        try {
+            return socksCsvImporter.importCsv(file.getInputStream());
+        } catch (IOException e) {
+            log.error("Ошибка при чтении CSV файла", e);
             throw new CsvProcessingException("Ошибки при обработке файлов: ", e);
         }
     }
 
+    /**
+     * Фильтр проверяется сразу, пока ответ ещё можно вернуть с кодом 400; сами строки пишутся
+     * позже, в потоке асинхронной обработки запроса, в собственной read-only транзакции курсора.
+     */
     @Override
-    public Socks getAnySocks() {
-        long count = new Random().nextLong(1, socksRepository.findCount());
-        Socks socks = socksRepository.findById(count).orElse(new Socks());
-        log.info("Запрос количества носков: найдено {}", socks);
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public StreamingResponseBody exportSocks(ExportFormat format, String color, String comparison,
+                                             Long cottonPart, Long minCotton, Long maxCotton) {
+        SocksFilter filter = SocksFilter.of(color, comparison, cottonPart, minCotton, maxCotton);
+        SocksValidator.checkFilter(filter);
+        return outputStream -> socksExporter.export(filter, format, outputStream);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Socks getAnySocks(boolean weighted) {
+        return getAnySocks(1, weighted).get(0);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Socks> getAnySocks(int n, boolean weighted) {
+        if (n < 1 || n > MAX_SAMPLE_SIZE) {
+            throw new SocksArgumentException("Размер выборки должен быть от 1 до " + MAX_SAMPLE_SIZE);
+        }
+        List<Socks> socks = socksSampler.sample(n, weighted);
+        if (socks.isEmpty()) {
+            log.warn("Случайная выборка носков: склад пуст, weighted={}", weighted);
+            throw new SocksNotFoundException("На складе носки не найдены");
+        }
+        log.info("Случайная выборка носков: n={}, weighted={}, найдено {}", n, weighted, socks.size());
         return socks;
     }
 
-    private Socks findByColorAndCottonPart(String color, Long cottonPart) {
-        return socksRepository.findByColorAndCottonPart(color, cottonPart)
-                .orElseGet(() -> {
-                    log.info("Создание новой записи для color={}, cottonPart={}", color, cottonPart);
-                    return new Socks(color, cottonPart, 0);
-                });
+    /**
+     * Версия склада (ключ кэша и ETag) прочитана до вызова, поэтому позиция WAL основной базы, взятая сейчас,
+     * покрывает все изменения этой версии. Реплика, которая её ещё не воспроизвела, отвечает как обычно,
+     * но чтение помечается устаревшим: результат не кладётся в Redis, а контроллер отдаёт его без ETag.
+     * Шарды опрашиваются в своих потоках, поэтому отметка ставится уже в потоке запроса.
+     */
+    private <T> List<T> scatterOnReplicas(Supplier<T> query) {
+        List<ReplicaRead<T>> reads = shardRouter.scatter(true, shard -> readOnReplica(query));
+        if (reads.stream().anyMatch(ReplicaRead::stale)) {
+            ReplicaRouting.markStaleRead();
+        }
+        return reads.stream().map(ReplicaRead::value).toList();
+    }
+
+    // позиция реплики читается первым запросом транзакции, до подсчёта, так что подсчёт видит не меньше
+    private <T> ReplicaRead<T> readOnReplica(Supplier<T> query) {
+        ReplicaLagMonitor monitor = replicaLagMonitor.getIfAvailable();
+        if (monitor == null) {
+            return new ReplicaRead<>(query.get(), false);
+        }
+        long primaryLsn;
+        try {
+            primaryLsn = monitor.currentPrimaryLsn();
+        } catch (SQLException e) {
+            log.warn("Не удалось получить позицию WAL основной базы, количество не кэшируется: {}", e.getMessage());
+            primaryLsn = Long.MAX_VALUE;
+        }
+        String replayed = socksRepository.findReplayedLsn();
+        boolean stale = replayed != null && WalPosition.parse(replayed) < primaryLsn;
+        return new ReplicaRead<>(query.get(), stale);
+    }
 
+    private record ReplicaRead<T>(T value, boolean stale) {
     }
 
-    void checkParams(String color, Long cottonPart, Integer quantity) {
-        validateCondition(!color.isEmpty(), "Цвет не может быть пустым");
-        validateCondition(cottonPart > 0, "Часть хлопка должна быть больше 0");
-        validateCondition(quantity > 0, "Количество должно быть больше 0");
+    private StockMovement toMovement(MovementRequest request) {
+        if (request == null || request.getType() == null || request.getColor() == null
+                || request.getCottonPart() == null || request.getQuantity() == null) {
+            throw new SocksArgumentException("Не заполнены поля type, color, cottonPart или quantity");
+        }
+        MovementType type = switch (request.getType().toLowerCase(Locale.ROOT)) {
+            case "income" -> MovementType.INCOME;
+            case "outcome" -> MovementType.OUTCOME;
+            default -> throw new SocksArgumentException("Тип движения должен быть income или outcome");
+        };
+        checkParams(request.getColor(), request.getCottonPart(), request.getQuantity());
+        return new StockMovement(type, new SocksKey(request.getColor(), request.getCottonPart()), request.getQuantity());
     }
 
-    private void validateCondition(Boolean condition, String message) {
-        if (!condition) {
-            log.warn("Ошибка проверки параметров: {}", message);
-            throw new SocksArgumentException(message);
+    /**
+     * Выполняет отпуски по позициям так, чтобы резерв по ним не был выдан между чтением суммы резервов
+     * и списанием (см. {@link ReservationStore}). Отпуск считается идущим до завершения транзакции,
+     * после которого списание видно при чтении остатка.
+     */
+    private <T> T duringOutcome(Collection<SocksKey> keys, Supplier<T> action) {
+        keys.forEach(reservationStore::beginOutcome);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    keys.forEach(reservationStore::endOutcome);
+                }
+            });
+            return action.get();
+        }
+        try {
+            return action.get();
+        } finally {
+            keys.forEach(reservationStore::endOutcome);
+        }
+    }
+
+    private boolean[] applyByShard(List<StockMovement> movements, boolean atomic) {
+        if (!shardRouter.isSharded()) {
+            return socksMovementWriter.apply(movements, atomic, reservationStore::reserved);
+        }
+        List<Integer> indexes = new ArrayList<>(movements.size());
+        for (int i = 0; i < movements.size(); i++) {
+            indexes.add(i);
         }
+        Map<Integer, List<Integer>> byShard = shardRouter.partition(indexes, i -> movements.get(i).getKey());
+        if (atomic && byShard.size() > 1) {
+            throw new SocksArgumentException("Атомарный пакет должен затрагивать позиции одного шарда");
+        }
+        boolean[] accepted = new boolean[movements.size()];
+        byShard.forEach((shard, part) -> {
+            List<StockMovement> shardMovements = part.stream().map(movements::get).toList();
+            boolean[] shardAccepted = shardRouter.onShard(shard,
+                    () -> socksMovementWriter.apply(shardMovements, atomic, reservationStore::reserved));
+            for (int j = 0; j < part.size(); j++) {
+                accepted[part.get(j)] = shardAccepted[j];
+            }
+        });
+        return accepted;
+    }
+
+    private static Set<SocksKey> outcomeKeys(List<StockMovement> movements) {
+        Set<SocksKey> keys = new HashSet<>();
+        for (StockMovement movement : movements) {
+            if (movement.getType() == MovementType.OUTCOME) {
+                keys.add(movement.getKey());
+            }
+        }
+        return keys;
+    }
+
+    private static int indexOfRejected(boolean[] accepted) {
+        for (int i = 0; i < accepted.length; i++) {
+            if (!accepted[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    void checkParams(String color, Long cottonPart, Integer quantity) {
+        SocksValidator.checkParams(color, cottonPart, quantity);
     }
 }
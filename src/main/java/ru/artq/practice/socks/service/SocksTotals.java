@@ -0,0 +1,57 @@
+package ru.artq.practice.socks.service;
+
+import ru.artq.practice.socks.model.SocksTotal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public final class SocksTotals {
+
+    private SocksTotals() {
+    }
+
+    public static SocksTotal sum(List<SocksTotal> parts) {
+        long rows = 0;
+        long quantity = 0;
+        for (SocksTotal part : parts) {
+            rows += part.getRows();
+            quantity += part.getQuantity();
+        }
+        return new SocksTotal(null, rows, quantity);
+    }
+
+    // позиция живёт ровно на одном шарде, но одна группа (цвет, доля хлопка) может собираться с нескольких
+    public static List<SocksTotal> mergeGroups(List<List<SocksTotal>> parts) {
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        Map<String, long[]> groups = new TreeMap<>();
+        for (List<SocksTotal> part : parts) {
+            for (SocksTotal total : part) {
+                long[] sums = groups.computeIfAbsent(total.getGroup(), k -> new long[2]);
+                sums[0] += total.getRows();
+                sums[1] += total.getQuantity();
+            }
+        }
+        List<SocksTotal> totals = new ArrayList<>(groups.size());
+        groups.forEach((group, sums) -> totals.add(new SocksTotal(group, sums[0], sums[1])));
+        return totals;
+    }
+
+    // Различных значений хлопка не больше сотни, поэтому интервалы собираются из группировки по cotton_percentage.
+    public static List<SocksTotal> bucketByCotton(List<SocksTotal> byCottonPart, long bucket) {
+        Map<Long, long[]> buckets = new TreeMap<>();
+        for (SocksTotal total : byCottonPart) {
+            long from = Long.parseLong(total.getGroup()) / bucket * bucket;
+            long[] sums = buckets.computeIfAbsent(from, k -> new long[2]);
+            sums[0] += total.getRows();
+            sums[1] += total.getQuantity();
+        }
+        List<SocksTotal> totals = new ArrayList<>(buckets.size());
+        buckets.forEach((from, sums) ->
+                totals.add(new SocksTotal(from + "-" + (from + bucket - 1), sums[0], sums[1])));
+        return totals;
+    }
+}
@@ -0,0 +1,39 @@
+package ru.artq.practice.socks.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.artq.practice.socks.errors.SocksArgumentException;
+import ru.artq.practice.socks.model.SocksFilter;
+
+import java.util.Set;
+
+@Slf4j
+public final class SocksValidator {
+    private static final Set<String> COMPARISONS = Set.of("moreThen", "lessThan", "equal");
+
+    private SocksValidator() {
+    }
+
+    public static void checkParams(String color, Long cottonPart, Integer quantity) {
+        validateCondition(!color.isEmpty(), "Цвет не может быть пустым");
+        validateCondition(cottonPart > 0, "Часть хлопка должна быть больше 0");
+        validateCondition(cottonPart <= 100, "Часть хлопка не может быть больше 100");
+        validateCondition(quantity > 0, "Количество должно быть больше 0");
+    }
+
+    public static void checkFilter(SocksFilter filter) {
+        validateCondition(filter.getComparison() == null || COMPARISONS.contains(filter.getComparison()),
+                "Оператор сравнения должен быть одним из: moreThen, lessThan, equal");
+        validateCondition(filter.getComparison() == null || filter.getCottonPart() != null,
+                "Для оператора сравнения нужно указать часть хлопка");
+        validateCondition(filter.getMinCotton() == null || filter.getMaxCotton() == null
+                        || filter.getMinCotton() <= filter.getMaxCotton(),
+                "Минимальная часть хлопка не может быть больше максимальной");
+    }
+
+    private static void validateCondition(Boolean condition, String message) {
+        if (!condition) {
+            log.warn("Ошибка проверки параметров: {}", message);
+            throw new SocksArgumentException(message);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ru.artq.practice.socks.service.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.artq.practice.socks.datasource.ShardRouter;
+import ru.artq.practice.socks.model.ExportFormat;
+import ru.artq.practice.socks.model.Socks;
+import ru.artq.practice.socks.model.SocksFilter;
+import ru.artq.practice.socks.repository.SocksJdbcRepository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Выгрузка склада прямо в поток ответа: строки идут из курсора базы в буфер записи по одной,
+ * поэтому расход памяти не зависит от размера таблицы.
+ * CSV совпадает по колонкам с файлом загрузки, так что выгрузку можно отдать обратно в {@code batch}.
+ * Шарды выгружаются по очереди, внутри шарда строки идут в порядке id.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SocksExporter {
+    private static final String CSV_HEADER = "color,cottonPart,quantity\n";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final SocksJdbcRepository socksJdbcRepository;
+    private final ObjectMapper objectMapper;
+    private final ShardRouter shardRouter;
+
+    public long export(SocksFilter filter, ExportFormat format, OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        long rows = switch (format) {
+            case CSV -> exportCsv(filter, writer);
+            case NDJSON -> exportNdjson(filter, writer);
+        };
+        writer.flush();
+        log.info("Выгрузка носков: format={}, строк={}, фильтр: {}", format, rows, filter);
+        return rows;
+    }
+
+    private long exportCsv(SocksFilter filter, Writer writer) throws IOException {
+        writer.write(CSV_HEADER);
+        return forEach(filter, socks -> {
+            try {
+                writeCsvField(writer, socks.getColor());
+                writer.write(',');
+                writer.write(String.valueOf(socks.getCottonPart()));
+                writer.write(',');
+                writer.write(String.valueOf(socks.getQuantity()));
+                writer.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private long exportNdjson(SocksFilter filter, Writer writer) throws IOException {
+        // без сброса после каждого объекта: строки копятся в буфере записи
+        ObjectWriter rowWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            // поток ответа закрывает контейнер, генератор только сбрасывает буфер
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(new SerializedString("\n"));
+            long rows = forEach(filter, socks -> {
+                try {
+                    rowWriter.writeValue(generator, socks);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (rows > 0) {
+                generator.writeRaw('\n');
+            }
+            return rows;
+        }
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private long forEach(SocksFilter filter, Consumer<Socks> consumer) throws IOException {
+        long[] rows = {0};
+        try {
+            shardRouter.forEachShard(shard -> socksJdbcRepository.forEachSocks(filter, socks -> {
+                consumer.accept(socks);
+                rows[0]++;
+            }));
+        } catch (UncheckedIOException e) {
+            // клиент оборвал соединение: курсор закрывается вместе с откатом read-only транзакции
+            throw e.getCause();
+        }
+        return rows[0];
+    }
+}
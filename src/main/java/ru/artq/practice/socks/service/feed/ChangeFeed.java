@@ -0,0 +1,264 @@
+package ru.artq.practice.socks.service.feed;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.artq.practice.socks.errors.SocksArgumentException;
+import ru.artq.practice.socks.model.ChangeFeedEntry;
+import ru.artq.practice.socks.model.ChangeFeedPage;
+import ru.artq.practice.socks.model.StockChange;
+import ru.artq.practice.socks.repository.ChangeLogRepository;
+import ru.artq.practice.socks.service.SocksChangedEvent;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Лента изменений остатков. Изменение получает номер после коммита, попадает в кольцевой буфер
+ * для догоняющих потребителей и пачками пишется в {@code socks_change_log}, откуда читаются
+ * позиции, уже вытесненные из буфера. Нумерация своя у каждого узла, поэтому позиция потребителя -
+ * курсор {@code <узел>:<номер>}: курсор другого узла (балансировщик переключил потребителя) даёт {@code resync}.
+ */
+@Component
+@Slf4j
+public class ChangeFeed {
+    private final ChangeLogRepository changeLogRepository;
+    private final String nodeId;
+    private final long flushIntervalMs;
+    private final Duration retention;
+    private final ChangeFeedEntry[] ring;
+    private final int mask;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final ReentrantLock flushMutex = new ReentrantLock();
+    private List<ChangeFeedEntry> pending = new ArrayList<>();
+    private long head;
+    private long firstSeq = 1;
+    private ScheduledExecutorService scheduler;
+
+    public ChangeFeed(ChangeLogRepository changeLogRepository,
+                      @Value("${socks.node-id:${HOSTNAME:local}}") String nodeId,
+                      @Value("${socks.feed.buffer-size:65536}") int bufferSize,
+                      @Value("${socks.feed.flush-interval-ms:200}") long flushIntervalMs,
+                      @Value("${socks.feed.retention:24h}") Duration retention) {
+        this.changeLogRepository = changeLogRepository;
+        this.nodeId = nodeId;
+        this.flushIntervalMs = flushIntervalMs;
+        this.retention = retention;
+        int capacity = Integer.highestOneBit(Math.max(bufferSize - 1, 1)) << 1;
+        this.ring = new ChangeFeedEntry[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * После аварийной остановки последние изменения могли не попасть в журнал, а номера, выданные
+     * потребителям, — потеряться. Нумерация продолжается с разрывом больше буфера, так что такой
+     * потребитель получает {@code resync}, а не чужие изменения под знакомыми номерами.
+     */
+    @PostConstruct
+    public void start() {
+        long lastSeq = changeLogRepository.findLastSeq(nodeId);
+        Long cleanStop = changeLogRepository.takeCleanStop(nodeId);
+        head = cleanStop != null && cleanStop == lastSeq ? lastSeq : lastSeq + ring.length + 1;
+        firstSeq = head + 1;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "socks-change-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::trimQuietly, 1, 1, TimeUnit.HOURS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        flush();
+        lock.lock();
+        try {
+            if (pending.isEmpty()) {
+                changeLogRepository.markCleanStop(nodeId, head);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSocksChanged(SocksChangedEvent event) {
+        Instant committedAt = Instant.now();
+        boolean flushNow;
+        lock.lock();
+        try {
+            for (StockChange change : event.getChanges()) {
+                ChangeFeedEntry entry = new ChangeFeedEntry(++head, committedAt, event.getType(),
+                        change.getKey().getColor(), change.getKey().getCottonPart(), change.getDelta());
+                ring[(int) (entry.getSeq() & mask)] = entry;
+                pending.add(entry);
+            }
+            flushNow = pending.size() >= ring.length / 2;
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        // буфер не должен обогнать журнал, иначе догоняющие потребители получат resync
+        if (flushNow && scheduler != null) {
+            scheduler.execute(this::flushQuietly);
+        }
+    }
+
+    public long lastSeq() {
+        lock.lock();
+        try {
+            return head;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String cursor() {
+        return nodeId + ":" + lastSeq();
+    }
+
+    /**
+     * Ждёт изменений после курсора {@code cursor} не дольше {@code timeout}. Пустая порция означает,
+     * что изменений не было.
+     */
+    public ChangeFeedPage await(String cursor, Duration timeout, int limit) throws InterruptedException {
+        Long since = sinceOf(cursor);
+        if (since == null) {
+            return foreignCursor(cursor);
+        }
+        return await(since, timeout, limit);
+    }
+
+    public ChangeFeedPage read(String cursor, int limit) {
+        Long since = sinceOf(cursor);
+        if (since == null) {
+            return foreignCursor(cursor);
+        }
+        return read(since, limit);
+    }
+
+    ChangeFeedPage await(long since, Duration timeout, int limit) throws InterruptedException {
+        long nanos = timeout.toNanos();
+        lock.lock();
+        try {
+            while (head == since && nanos > 0) {
+                nanos = appended.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return read(since, limit);
+    }
+
+    ChangeFeedPage read(long since, int limit) {
+        long ringStart;
+        lock.lock();
+        try {
+            if (since > head) {
+                return new ChangeFeedPage(nodeId, head, true, List.of());
+            }
+            ringStart = Math.max(firstSeq - 1, head - ring.length);
+            if (since >= ringStart) {
+                List<ChangeFeedEntry> changes = new ArrayList<>((int) Math.min(limit, head - since));
+                for (long seq = since + 1; seq <= head && changes.size() < limit; seq++) {
+                    changes.add(ring[(int) (seq & mask)]);
+                }
+                return new ChangeFeedPage(nodeId, since + changes.size(), false, changes);
+            }
+        } finally {
+            lock.unlock();
+        }
+        List<ChangeFeedEntry> changes = changeLogRepository.findAfter(nodeId, since, limit);
+        if (changes.isEmpty() || changes.get(0).getSeq() != since + 1) {
+            long lastSeq = lastSeq();
+            log.info("Лента изменений: позиция {} больше недоступна, потребителю нужна пересинхронизация", since);
+            return new ChangeFeedPage(nodeId, lastSeq, true, List.of());
+        }
+        return new ChangeFeedPage(nodeId, changes.get(changes.size() - 1).getSeq(), false, changes);
+    }
+
+    // номер из курсора этого узла; null - курсор выдан другим узлом
+    private Long sinceOf(String cursor) {
+        int separator = cursor.lastIndexOf(':');
+        if (separator < 0) {
+            throw new SocksArgumentException("Позиция ленты должна иметь вид <узел>:<номер>");
+        }
+        long since;
+        try {
+            since = Long.parseLong(cursor.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new SocksArgumentException("Позиция ленты должна иметь вид <узел>:<номер>");
+        }
+        return nodeId.equals(cursor.substring(0, separator)) ? since : null;
+    }
+
+    private ChangeFeedPage foreignCursor(String cursor) {
+        log.info("Лента изменений: позиция {} выдана другим узлом, потребителю нужна пересинхронизация", cursor);
+        return new ChangeFeedPage(nodeId, lastSeq(), true, List.of());
+    }
+
+    public void flush() {
+        flushMutex.lock();
+        try {
+            List<ChangeFeedEntry> batch;
+            lock.lock();
+            try {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                changeLogRepository.insert(nodeId, batch);
+            } catch (RuntimeException e) {
+                // порядок номеров в журнале сохраняется: неудачная пачка встаёт перед новыми изменениями
+                lock.lock();
+                try {
+                    batch.addAll(pending);
+                    pending = batch;
+                } finally {
+                    lock.unlock();
+                }
+                throw e;
+            }
+        } finally {
+            flushMutex.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Ошибка записи ленты изменений, повтор при следующем сбросе", e);
+        }
+    }
+
+    private void trimQuietly() {
+        try {
+            int deleted = changeLogRepository.deleteBefore(Instant.now().minus(retention));
+            if (deleted > 0) {
+                log.info("Лента изменений: удалено {} записей старше {}", deleted, retention);
+            }
+        } catch (RuntimeException e) {
+            log.error("Ошибка очистки ленты изменений", e);
+        }
+    }
+}
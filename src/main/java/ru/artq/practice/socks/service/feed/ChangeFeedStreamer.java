@@ -0,0 +1,62 @@
+package ru.artq.practice.socks.service.feed;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.artq.practice.socks.model.ChangeFeedPage;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Отдаёт ленту изменений подписчику SSE. Каждый подписчик обслуживается своим виртуальным потоком,
+ * который ждёт изменений в {@link ChangeFeed#await}, поэтому ожидание не держит ни поток контейнера,
+ * ни соединение с базой.
+ */
+@Component
+@Slf4j
+public class ChangeFeedStreamer {
+    private static final int BATCH_SIZE = 1000;
+
+    private final ChangeFeed changeFeed;
+    private final Duration heartbeat;
+
+    public ChangeFeedStreamer(ChangeFeed changeFeed,
+                              @Value("${socks.feed.heartbeat:15s}") Duration heartbeat) {
+        this.changeFeed = changeFeed;
+        this.heartbeat = heartbeat;
+    }
+
+    public SseEmitter subscribe(String since) {
+        SseEmitter emitter = new SseEmitter(0L);
+        Thread.ofVirtual().name("socks-change-feed-sse").start(() -> pump(emitter, since));
+        return emitter;
+    }
+
+    private void pump(SseEmitter emitter, String since) {
+        String cursor = since;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                ChangeFeedPage page = changeFeed.await(cursor, heartbeat, BATCH_SIZE);
+                if (page.isResync()) {
+                    emitter.send(SseEmitter.event().name("resync").id(page.getCursor()).data(page.getCursor()));
+                } else if (page.getChanges().isEmpty()) {
+                    // комментарий держит соединение и быстро обнаруживает ушедшего подписчика
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                } else {
+                    emitter.send(SseEmitter.event().name("changes").id(page.getCursor()).data(page.getChanges()));
+                }
+                cursor = page.getCursor();
+            }
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Подписчик ленты изменений отключился на позиции {}", cursor);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            emitter.complete();
+        } catch (RuntimeException e) {
+            log.error("Ошибка отправки ленты изменений", e);
+            emitter.completeWithError(e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package ru.artq.practice.socks.service.index;
+
+/**
+ * Количества и число позиций по доле хлопка 0..100 для одного цвета или для всего склада.
+ */
+final class CottonIndex {
+    static final int MAX_COTTON_PART = 100;
+    private static final int SIZE = MAX_COTTON_PART + 1;
+
+    private final long[] quantities = new long[SIZE];
+    private final int[] rows = new int[SIZE];
+    private final FenwickTree quantityTree = new FenwickTree(SIZE);
+    private final FenwickTree rowTree = new FenwickTree(SIZE);
+
+    void add(int cottonPart, long delta, int rowsDelta) {
+        if (delta != 0) {
+            quantities[cottonPart] += delta;
+            quantityTree.add(cottonPart, delta);
+        }
+        if (rowsDelta != 0) {
+            rows[cottonPart] += rowsDelta;
+            rowTree.add(cottonPart, rowsDelta);
+        }
+    }
+
+    boolean hasRow(int cottonPart) {
+        return rows[cottonPart] > 0;
+    }
+
+    long quantity(int cottonPart) {
+        return quantities[cottonPart];
+    }
+
+    long quantitySum(int from, int to) {
+        return quantityTree.rangeSum(from, to);
+    }
+
+    long rowSum(int from, int to) {
+        return rowTree.rangeSum(from, to);
+    }
+}
@@ -0,0 +1,27 @@
+package ru.artq.practice.socks.service.index;
+
+final class FenwickTree {
+    private final long[] tree;
+
+    FenwickTree(int size) {
+        this.tree = new long[size + 1];
+    }
+
+    void add(int index, long delta) {
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    long prefixSum(int index) {
+        long sum = 0;
+        for (int i = index + 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    long rangeSum(int from, int to) {
+        return prefixSum(to) - (from == 0 ? 0 : prefixSum(from - 1));
+    }
+}
@@ -0,0 +1,328 @@
+package ru.artq.practice.socks.service.index;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.artq.practice.socks.cache.InvalidationBus;
+import ru.artq.practice.socks.datasource.ShardRouter;
+import ru.artq.practice.socks.model.MovementType;
+import ru.artq.practice.socks.model.SocksFilter;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.model.SocksTotal;
+import ru.artq.practice.socks.model.StockChange;
+import ru.artq.practice.socks.repository.SocksJdbcRepository;
+import ru.artq.practice.socks.service.SocksChangedEvent;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Read-модель склада в памяти: по каждому цвету дерево Фенвика по доле хлопка, поэтому любой фильтр
+ * getSocks считается двумя префиксными суммами. Заполняется из базы после старта, обновляется событиями
+ * после коммита и периодически сверяется с базой. Изменения других узлов приходят через шину инвалидации
+ * и вызывают внеочередную сверку. Пока индекс не готов, запросы идут в базу.
+ */
+@Component
+@Slf4j
+public class InventoryIndex {
+    private static final int BOOTSTRAP_ATTEMPTS = 20;
+    private static final long BOOTSTRAP_RETRY_MS = 200;
+
+    private final SocksJdbcRepository socksJdbcRepository;
+    private final ShardRouter shardRouter;
+    private final InvalidationBus invalidationBus;
+    private final boolean enabled;
+    private final long reconcileIntervalMs;
+    private final long remoteReconcileDelayMs;
+    private final StampedLock lock = new StampedLock();
+    // транзакции, опубликовавшие изменения, но ещё не завершившиеся: снимок базы в это время может их не видеть
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong modifications = new AtomicLong();
+    private final AtomicBoolean remoteReconcilePending = new AtomicBoolean();
+    private volatile Snapshot snapshot = new Snapshot();
+    private volatile boolean ready;
+    private ScheduledExecutorService scheduler;
+
+    public InventoryIndex(SocksJdbcRepository socksJdbcRepository,
+                          ShardRouter shardRouter,
+                          InvalidationBus invalidationBus,
+                          @Value("${socks.inventory-index.enabled:false}") boolean enabled,
+                          @Value("${socks.inventory-index.reconcile-interval-ms:60000}") long reconcileIntervalMs,
+                          @Value("${socks.inventory-index.remote-reconcile-delay-ms:200}") long remoteReconcileDelayMs) {
+        this.socksJdbcRepository = socksJdbcRepository;
+        this.shardRouter = shardRouter;
+        this.invalidationBus = invalidationBus;
+        this.enabled = enabled;
+        this.reconcileIntervalMs = reconcileIntervalMs;
+        this.remoteReconcileDelayMs = remoteReconcileDelayMs;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "socks-inventory-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(this::bootstrap);
+        invalidationBus.subscribeRemote(colors -> requestRemoteReconcile());
+        scheduler.scheduleWithFixedDelay(this::reconcileQuietly, reconcileIntervalMs, reconcileIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public SocksTotal sumQuantity(SocksFilter filter) {
+        long from = 0;
+        long to = CottonIndex.MAX_COTTON_PART;
+        if (filter.getCottonPart() != null) {
+            long cottonPart = filter.getCottonPart();
+            switch (filter.getComparison()) {
+                case "moreThen" -> from = Math.max(from, cottonPart + 1);
+                case "lessThan" -> to = Math.min(to, cottonPart - 1);
+                default -> {
+                    from = Math.max(from, cottonPart);
+                    to = Math.min(to, cottonPart);
+                }
+            }
+        }
+        if (filter.getMinCotton() != null) {
+            from = Math.max(from, filter.getMinCotton());
+        }
+        if (filter.getMaxCotton() != null) {
+            to = Math.min(to, filter.getMaxCotton());
+        }
+        if (from > to) {
+            return new SocksTotal(null, 0, 0);
+        }
+        long stamp = lock.tryOptimisticRead();
+        SocksTotal total = snapshot.sum(filter.getColor(), (int) from, (int) to);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                total = snapshot.sum(filter.getColor(), (int) from, (int) to);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return total;
+    }
+
+    @EventListener
+    public void onSocksChanged(SocksChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        List<StockChange> changes = event.getChanges();
+        boolean rowsMoved = event.getType() == MovementType.UPDATE;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(changes, rowsMoved);
+            return;
+        }
+        inFlight.incrementAndGet();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    if (status == STATUS_COMMITTED) {
+                        apply(changes, rowsMoved);
+                    }
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                if (status == STATUS_COMMITTED && rowsMoved) {
+                    requestReconcile();
+                }
+            }
+        });
+    }
+
+    private void apply(List<StockChange> changes, boolean rowsMoved) {
+        long stamp = lock.writeLock();
+        try {
+            for (StockChange change : changes) {
+                if (!snapshot.add(change.getKey(), change.getDelta())) {
+                    ready = false;
+                    log.error("Индекс склада отключён: доля хлопка вне диапазона 0..{} у {}",
+                            CottonIndex.MAX_COTTON_PART, change.getKey());
+                }
+            }
+        } finally {
+            modifications.incrementAndGet();
+            lock.unlockWrite(stamp);
+        }
+        // обновление переносит строку на другой ключ, а по дельтам не видно, исчезла ли старая позиция
+        if (rowsMoved && !TransactionSynchronizationManager.isSynchronizationActive()) {
+            requestReconcile();
+        }
+    }
+
+    private void requestReconcile() {
+        if (scheduler != null && !scheduler.isShutdown()) {
+            scheduler.execute(this::reconcileQuietly);
+        }
+    }
+
+    /**
+     * Чужой узел изменил склад: сообщения за remote-reconcile-delay-ms схлопываются в одну сверку.
+     * Если сверку сорвали локальные изменения, она повторяется, а не ждёт плановой.
+     */
+    private void requestRemoteReconcile() {
+        if (scheduler == null || scheduler.isShutdown() || !remoteReconcilePending.compareAndSet(false, true)) {
+            return;
+        }
+        scheduler.schedule(() -> {
+            remoteReconcilePending.set(false);
+            try {
+                if (!reconcile()) {
+                    requestRemoteReconcile();
+                }
+            } catch (RuntimeException e) {
+                log.error("Не удалось сверить индекс склада с базой", e);
+            }
+        }, remoteReconcileDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void bootstrap() {
+        try {
+            for (int attempt = 1; attempt <= BOOTSTRAP_ATTEMPTS; attempt++) {
+                if (reconcile()) {
+                    log.info("Индекс склада построен с попытки {}", attempt);
+                    return;
+                }
+                Thread.sleep(BOOTSTRAP_RETRY_MS);
+            }
+            log.warn("Индекс склада не построен: склад постоянно меняется, повтор при следующей сверке");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Не удалось построить индекс склада", e);
+        }
+    }
+
+    private void reconcileQuietly() {
+        try {
+            if (!reconcile()) {
+                log.debug("Сверка индекса склада пропущена: есть незавершённые изменения");
+            }
+        } catch (RuntimeException e) {
+            log.error("Не удалось сверить индекс склада с базой", e);
+        }
+    }
+
+    /**
+     * Строит индекс заново из базы и подменяет им текущий, если за время чтения не было изменений.
+     */
+    boolean reconcile() {
+        if (inFlight.get() != 0) {
+            return false;
+        }
+        long before = modifications.get();
+        Snapshot fresh = new Snapshot();
+        Set<SocksKey> outOfRange = new HashSet<>();
+        shardRouter.forEachShard(shard -> socksJdbcRepository.forEachStock((key, quantity) -> {
+            if (!fresh.addRow(key, quantity)) {
+                outOfRange.add(key);
+            }
+        }));
+        if (!outOfRange.isEmpty()) {
+            ready = false;
+            log.error("Индекс склада отключён: доля хлопка вне диапазона 0..{} у {}", CottonIndex.MAX_COTTON_PART, outOfRange);
+            return true;
+        }
+        long stamp = lock.writeLock();
+        try {
+            if (inFlight.get() != 0 || modifications.get() != before) {
+                return false;
+            }
+            if (ready) {
+                int drift = snapshot.differences(fresh);
+                if (drift > 0) {
+                    log.warn("Сверка индекса склада: расхождений с базой {}", drift);
+                }
+            }
+            snapshot = fresh;
+            ready = true;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private static final class Snapshot {
+        private final Map<String, CottonIndex> byColor = new ConcurrentHashMap<>();
+        private final CottonIndex all = new CottonIndex();
+
+        boolean add(SocksKey key, int delta) {
+            return add(key, delta, false);
+        }
+
+        boolean addRow(SocksKey key, int quantity) {
+            return add(key, quantity, true);
+        }
+
+        private boolean add(SocksKey key, long delta, boolean newRow) {
+            long cottonPart = key.getCottonPart();
+            if (cottonPart < 0 || cottonPart > CottonIndex.MAX_COTTON_PART) {
+                return false;
+            }
+            CottonIndex color = byColor.computeIfAbsent(key.getColor(), c -> new CottonIndex());
+            int rowsDelta = newRow || !color.hasRow((int) cottonPart) ? 1 : 0;
+            color.add((int) cottonPart, delta, rowsDelta);
+            all.add((int) cottonPart, delta, rowsDelta);
+            return true;
+        }
+
+        SocksTotal sum(String color, int from, int to) {
+            CottonIndex index = color == null ? all : byColor.get(color);
+            if (index == null) {
+                return new SocksTotal(null, 0, 0);
+            }
+            return new SocksTotal(null, index.rowSum(from, to), index.quantitySum(from, to));
+        }
+
+        int differences(Snapshot other) {
+            Set<String> colors = new HashSet<>(byColor.keySet());
+            colors.addAll(other.byColor.keySet());
+            CottonIndex empty = new CottonIndex();
+            int differences = 0;
+            for (String color : colors) {
+                CottonIndex mine = byColor.getOrDefault(color, empty);
+                CottonIndex theirs = other.byColor.getOrDefault(color, empty);
+                for (int cottonPart = 0; cottonPart <= CottonIndex.MAX_COTTON_PART; cottonPart++) {
+                    if (mine.quantity(cottonPart) != theirs.quantity(cottonPart)
+                            || mine.hasRow(cottonPart) != theirs.hasRow(cottonPart)) {
+                        differences++;
+                    }
+                }
+            }
+            return differences;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package ru.artq.practice.socks.service.ledger;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.artq.practice.socks.datasource.ShardRouter;
+import ru.artq.practice.socks.errors.SocksArgumentException;
+import ru.artq.practice.socks.model.LedgerEntry;
+import ru.artq.practice.socks.model.SocksFilter;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.model.SocksTotal;
+import ru.artq.practice.socks.repository.LedgerRepository;
+import ru.artq.practice.socks.repository.LedgerRepository.SnapshotRun;
+import ru.artq.practice.socks.service.SocksChangedEvent;
+import ru.artq.practice.socks.service.SocksTotals;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Журнал движений: каждое изменение остатков дописывается в секционированную по месяцам таблицу
+ * в той же транзакции, что и само изменение. Раз в {@code snapshot-interval-ms} журнал сворачивается
+ * в снимок, так что остаток на любой момент считается по ближайшему снимку и ограниченному хвосту движений.
+ * При шардировании у каждого шарда свой журнал: запись идёт в транзакции шарда, остаток на дату собирается со всех.
+ * Схему, секции на ближайшие месяцы и начальный снимок создаёт миграция {@code V2__ledger.sql}.
+ */
+@Component
+@Slf4j
+public class StockLedger {
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final String PARTITION_PREFIX = "socks_ledger_p";
+
+    private final LedgerRepository ledgerRepository;
+    private final ShardRouter shardRouter;
+    private final Clock clock;
+    private final long snapshotIntervalMs;
+    private final long snapshotLagMs;
+    private final int partitionsAhead;
+    private final int retentionMonths;
+    private ScheduledExecutorService scheduler;
+
+    public StockLedger(LedgerRepository ledgerRepository,
+                       ShardRouter shardRouter,
+                       @Value("${socks.ledger.snapshot-interval-ms:3600000}") long snapshotIntervalMs,
+                       @Value("${socks.ledger.snapshot-lag-ms:60000}") long snapshotLagMs,
+                       @Value("${socks.ledger.partitions-ahead:2}") int partitionsAhead,
+                       @Value("${socks.ledger.retention-months:0}") int retentionMonths) {
+        this(ledgerRepository, shardRouter, Clock.systemUTC(), snapshotIntervalMs, snapshotLagMs, partitionsAhead, retentionMonths);
+    }
+
+    StockLedger(LedgerRepository ledgerRepository, ShardRouter shardRouter, Clock clock, long snapshotIntervalMs,
+                long snapshotLagMs, int partitionsAhead, int retentionMonths) {
+        this.ledgerRepository = ledgerRepository;
+        this.shardRouter = shardRouter;
+        this.clock = clock;
+        this.snapshotIntervalMs = snapshotIntervalMs;
+        this.snapshotLagMs = snapshotLagMs;
+        this.partitionsAhead = partitionsAhead;
+        this.retentionMonths = retentionMonths;
+    }
+
+    // при запуске DDL не выполняется; после готовности досоздаются только недостающие секции,
+    // если база долго стояла без работающих экземпляров
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "socks-ledger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(this::createPartitionsQuietly);
+        scheduler.scheduleWithFixedDelay(this::maintainQuietly, snapshotIntervalMs, snapshotIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @EventListener
+    public void onSocksChanged(SocksChangedEvent event) {
+        if (!event.isRecorded() && !event.getChanges().isEmpty()) {
+            ledgerRepository.append(event.getType(), event.getChanges());
+        }
+    }
+
+    public SocksTotal sumQuantityAsOf(SocksFilter filter, Instant asOf) {
+        return SocksTotals.sum(shardRouter.scatter(true, shard -> sumShardQuantityAsOf(filter, asOf)));
+    }
+
+    public List<LedgerEntry> findEntries(String color, Long cottonPart, Instant from, Instant to, int limit) {
+        int shard = shardRouter.shardOf(new SocksKey(color, cottonPart));
+        return shardRouter.onShard(shard, () -> ledgerRepository.findEntries(color, cottonPart, from, to, limit));
+    }
+
+    private SocksTotal sumShardQuantityAsOf(SocksFilter filter, Instant asOf) {
+        SnapshotRun snapshot = ledgerRepository.findLatestSnapshot(asOf)
+                .orElseThrow(() -> new SocksArgumentException("История движений начинается позже " + asOf));
+        ledgerRepository.findArchivedUntil().ifPresent(archivedUntil -> {
+            if (snapshot.getTakenAt().isBefore(archivedUntil)) {
+                throw new SocksArgumentException("История движений до " + archivedUntil + " перенесена в архив");
+            }
+        });
+        return ledgerRepository.sumQuantityAsOf(snapshot, asOf, filter);
+    }
+
+    /**
+     * Срез снимка отстаёт от текущего времени на {@code snapshot-lag-ms}: запись журнала получает время
+     * при вставке, а видна становится при коммите, и транзакция, ещё не закоммиченная к моменту снимка,
+     * не должна оказаться по обе стороны среза.
+     */
+    void maintain() {
+        Instant cut = clock.instant().minusMillis(snapshotLagMs);
+        shardRouter.forEachShard(shard -> {
+            createPartitions();
+            if (ledgerRepository.snapshotLedger(cut)) {
+                log.info("Журнал движений: снимок шарда {} на {}", shard, cut);
+            }
+            if (retentionMonths > 0) {
+                archivePartitions();
+            }
+        });
+    }
+
+    private void maintainQuietly() {
+        try {
+            maintain();
+        } catch (RuntimeException e) {
+            log.error("Ошибка обслуживания журнала движений, повтор через {} мс", snapshotIntervalMs, e);
+        }
+    }
+
+    private void createPartitionsQuietly() {
+        try {
+            shardRouter.forEachShard(shard -> createPartitions());
+        } catch (RuntimeException e) {
+            log.error("Не удалось создать секции журнала движений, повтор через {} мс", snapshotIntervalMs, e);
+        }
+    }
+
+    private void createPartitions() {
+        Set<String> existing = new HashSet<>(ledgerRepository.findPartitions());
+        YearMonth current = YearMonth.now(clock);
+        for (int i = 0; i <= partitionsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            if (existing.contains(partitionName(month))) {
+                continue;
+            }
+            ledgerRepository.createPartition(partitionName(month), monthStart(month), monthStart(month.plusMonths(1)));
+        }
+    }
+
+    // секция отсоединяется, только если после её конца есть снимок: иначе текущие остатки на дату не посчитать
+    private void archivePartitions() {
+        Instant retainFrom = monthStart(YearMonth.now(clock).minusMonths(retentionMonths));
+        Instant latestSnapshot = ledgerRepository.findLatestSnapshot(clock.instant())
+                .map(SnapshotRun::getTakenAt)
+                .orElse(Instant.MIN);
+        for (String partition : ledgerRepository.findPartitions()) {
+            YearMonth month = partitionMonth(partition);
+            if (month == null) {
+                continue;
+            }
+            Instant end = monthStart(month.plusMonths(1));
+            if (!end.isAfter(retainFrom) && !end.isAfter(latestSnapshot)) {
+                ledgerRepository.detachPartition(partition, end);
+                log.info("Журнал движений: секция {} отсоединена для архивации", partition);
+            }
+        }
+    }
+
+    static String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+    }
+
+    static YearMonth partitionMonth(String partition) {
+        if (!partition.startsWith(PARTITION_PREFIX)) {
+            return null;
+        }
+        return YearMonth.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+    }
+
+    private static Instant monthStart(YearMonth month) {
+        return month.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+    }
+}
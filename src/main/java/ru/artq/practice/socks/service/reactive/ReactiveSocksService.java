@@ -0,0 +1,26 @@
+package ru.artq.practice.socks.service.reactive;
+
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.artq.practice.socks.model.BatchResult;
+import ru.artq.practice.socks.model.Socks;
+import ru.artq.practice.socks.model.SocksTotal;
+
+public interface ReactiveSocksService {
+
+    Mono<Integer> getSocks(String color, String comparison, Long cottonPart, Long minCotton, Long maxCotton);
+
+    Flux<SocksTotal> getSocksTotals(String groupBy, Long bucket, String color, String comparison,
+                                    Long cottonPart, Long minCotton, Long maxCotton);
+
+    Mono<Void> registerIncome(String color, Long cottonPart, Integer quantity);
+
+    Mono<Void> registerOutcome(String color, Long cottonPart, Integer quantity);
+
+    Mono<Void> updateSocks(Long id, String color, Long cottonPart, Integer quantity);
+
+    Mono<BatchResult> batchSocks(MultipartFile file);
+
+    Flux<Socks> getAnySocks(int n, boolean weighted);
+}
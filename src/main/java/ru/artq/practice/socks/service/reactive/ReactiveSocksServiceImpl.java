@@ -0,0 +1,350 @@
+package ru.artq.practice.socks.service.reactive;
+
+import com.opencsv.CSVParser;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import ru.artq.practice.socks.cache.InventoryVersions;
+import ru.artq.practice.socks.cache.SocksCacheKeyGenerator;
+import ru.artq.practice.socks.datasource.ShardRouter;
+import ru.artq.practice.socks.errors.SocksArgumentException;
+import ru.artq.practice.socks.errors.SocksNotFoundException;
+import ru.artq.practice.socks.metrics.SocksMetrics;
+import ru.artq.practice.socks.model.*;
+import ru.artq.practice.socks.repository.ReactiveSocksRepository;
+import ru.artq.practice.socks.service.SocksChangedEvent;
+import ru.artq.practice.socks.service.ImportProgress;
+import ru.artq.practice.socks.service.SocksCsvImporter;
+import ru.artq.practice.socks.service.SocksMovementWriter;
+import ru.artq.practice.socks.service.SocksTotals;
+import ru.artq.practice.socks.service.SocksValidator;
+import ru.artq.practice.socks.service.index.InventoryIndex;
+import ru.artq.practice.socks.service.reservation.ReservationStore;
+import ru.artq.practice.socks.service.sampling.SocksSampler;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Реактивный вариант {@link ru.artq.practice.socks.service.SocksService}: R2DBC и реактивный Redis,
+ * проверки параметров общие с блокирующим API. Кэш количества использует те же ключи Redis, что и
+ * {@code @Cacheable} в v1, а изменения публикуют те же события, поэтому версии кэша, индекс и выборка
+ * остаются согласованными для обоих API. Количество, как и в v1, считается за вычетом резервов этого узла,
+ * а при резервах по цвету не кэшируется. R2DBC подключён только к основной базе, поэтому при шардировании
+ * запросы к складу через v2 отклоняются: они прочитали бы и изменили только шард 0.
+ */
+@Service
+@Slf4j
+public class ReactiveSocksServiceImpl implements ReactiveSocksService {
+    private static final String CACHE_PREFIX = "socks::";
+    private static final Duration CACHE_TTL = Duration.ofMinutes(10);
+    private static final int MAX_SAMPLE_SIZE = 1000;
+
+    private final ReactiveSocksRepository reactiveSocksRepository;
+    private final ReactiveRedisTemplate<String, Object> reactiveRedisTemplate;
+    private final ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+    private final TransactionalOperator transactionalOperator;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SocksMovementWriter socksMovementWriter;
+    private final InventoryIndex inventoryIndex;
+    private final SocksSampler socksSampler;
+    private final SocksMetrics socksMetrics;
+    private final ReservationStore reservationStore;
+    private final ShardRouter shardRouter;
+    private final boolean writeBehind;
+    private final int chunkSize;
+
+    public ReactiveSocksServiceImpl(ReactiveSocksRepository reactiveSocksRepository,
+                                    ReactiveRedisTemplate<String, Object> reactiveRedisTemplate,
+                                    ReactiveStringRedisTemplate reactiveStringRedisTemplate,
+                                    TransactionalOperator transactionalOperator,
+                                    ApplicationEventPublisher eventPublisher,
+                                    SocksMovementWriter socksMovementWriter,
+                                    InventoryIndex inventoryIndex,
+                                    SocksSampler socksSampler,
+                                    SocksMetrics socksMetrics,
+                                    ReservationStore reservationStore,
+                                    ShardRouter shardRouter,
+                                    @Value("${socks.write-behind.enabled:false}") boolean writeBehind,
+                                    @Value("${socks.import.chunk-size:5000}") int chunkSize) {
+        this.reactiveSocksRepository = reactiveSocksRepository;
+        this.reactiveRedisTemplate = reactiveRedisTemplate;
+        this.reactiveStringRedisTemplate = reactiveStringRedisTemplate;
+        this.transactionalOperator = transactionalOperator;
+        this.eventPublisher = eventPublisher;
+        this.socksMovementWriter = socksMovementWriter;
+        this.inventoryIndex = inventoryIndex;
+        this.socksSampler = socksSampler;
+        this.socksMetrics = socksMetrics;
+        this.reservationStore = reservationStore;
+        this.shardRouter = shardRouter;
+        this.writeBehind = writeBehind;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public Mono<Integer> getSocks(String color, String comparison, Long cottonPart, Long minCotton, Long maxCotton) {
+        return Mono.defer(() -> {
+            SocksFilter filter = SocksFilter.of(color, comparison, cottonPart, minCotton, maxCotton);
+            SocksValidator.checkFilter(filter);
+            if (inventoryIndex.isReady()) {
+                return toQuantity(filter, Mono.just(inventoryIndex.sumQuantity(filter)));
+            }
+            checkNotSharded();
+            // количество за вычетом резервов своё у каждого узла, а кэш общий
+            if (reservationStore.holds(filter.getColor())) {
+                return toQuantity(filter, reactiveSocksRepository.sumQuantity(filter));
+            }
+            return reactiveStringRedisTemplate.opsForValue().get(InventoryVersions.versionKey(filter.getColor()))
+                    .map(Long::parseLong)
+                    .defaultIfEmpty(0L)
+                    .flatMap(version -> cached(CACHE_PREFIX + SocksCacheKeyGenerator.cacheKey(filter, version), filter))
+                    .onErrorResume(e -> !(e instanceof SocksNotFoundException), e -> {
+                        log.warn("Кэш недоступен, количество считается в базе: {}", e.getMessage());
+                        return toQuantity(filter, reactiveSocksRepository.sumQuantity(filter));
+                    });
+        });
+    }
+
+    @Override
+    public Flux<SocksTotal> getSocksTotals(String groupBy, Long bucket, String color, String comparison,
+                                           Long cottonPart, Long minCotton, Long maxCotton) {
+        return Flux.defer(() -> {
+            SocksFilter filter = SocksFilter.of(color, comparison, cottonPart, minCotton, maxCotton);
+            SocksValidator.checkFilter(filter);
+            checkNotSharded();
+            return switch (groupBy) {
+                case "color" -> reactiveSocksRepository.sumQuantityGroupedBy("color", filter);
+                case "cotton" -> {
+                    if (bucket == null || bucket <= 0) {
+                        throw new SocksArgumentException("Размер интервала хлопка должен быть больше 0");
+                    }
+                    yield reactiveSocksRepository.sumQuantityGroupedBy("cotton_percentage", filter)
+                            .collectList()
+                            .flatMapIterable(totals -> SocksTotals.bucketByCotton(totals, bucket));
+                }
+                default -> throw new SocksArgumentException("Группировка возможна по color или cotton");
+            };
+        });
+    }
+
+    @Override
+    public Mono<Void> registerIncome(String color, Long cottonPart, Integer quantity) {
+        return Mono.defer(() -> {
+            SocksValidator.checkParams(color, cottonPart, quantity);
+            checkNotSharded();
+            SocksKey key = new SocksKey(color, cottonPart);
+            if (writeBehind) {
+                return blocking(() -> {
+                    socksMovementWriter.income(key, quantity);
+                    return true;
+                }).then();
+            }
+            return reactiveSocksRepository.incrementQuantity(key, quantity)
+                    .then(record(SocksChangedEvent.of(MovementType.INCOME, key, quantity)))
+                    .as(transactionalOperator::transactional)
+                    .flatMap(this::publish);
+        }).doOnSuccess(ignored -> {
+            socksMetrics.incomeApplied();
+            log.info("Приход носков (v2): color={}, cottonPart={}, quantity={}", color, cottonPart, quantity);
+        });
+    }
+
+    @Override
+    public Mono<Void> registerOutcome(String color, Long cottonPart, Integer quantity) {
+        return Mono.defer(() -> {
+            SocksValidator.checkParams(color, cottonPart, quantity);
+            checkNotSharded();
+            SocksKey key = new SocksKey(color, cottonPart);
+            // резерв по позиции не выдаётся, пока отпуск не завершится: сумма резервов читается до списания
+            reservationStore.beginOutcome(key);
+            long held = reservationStore.reserved(key);
+            Mono<Boolean> applied = writeBehind
+                    ? blocking(() -> socksMovementWriter.outcome(key, quantity, held))
+                    : reactiveSocksRepository.decrementQuantity(key, quantity, held)
+                    .flatMap(rows -> rows == 0
+                            ? Mono.<SocksChangedEvent>empty()
+                            : record(SocksChangedEvent.of(MovementType.OUTCOME, key, -quantity)))
+                    .as(transactionalOperator::transactional)
+                    .flatMap(event -> publish(event).thenReturn(true))
+                    .defaultIfEmpty(false);
+            return applied.doFinally(signal -> reservationStore.endOutcome(key)).flatMap(ok -> {
+                if (!ok) {
+                    socksMetrics.outcomeRejected();
+                    log.warn("Отпуск носков (v2): недостаточно носков на складе для color={}, cottonPart={}, требуемое количество: {}", color, cottonPart, quantity);
+                    return Mono.error(new SocksNotFoundException("Нехватка носков на складе"));
+                }
+                socksMetrics.outcomeApplied();
+                log.info("Отпуск носков (v2): color={}, cottonPart={}, quantity={}", color, cottonPart, quantity);
+                return Mono.empty();
+            });
+        });
+    }
+
+    @Override
+    public Mono<Void> updateSocks(Long id, String color, Long cottonPart, Integer quantity) {
+        return Mono.fromRunnable(this::checkNotSharded)
+                .then(reactiveSocksRepository.findByIdForUpdate(id))
+                .switchIfEmpty(Mono.defer(() -> {
+                    log.warn("Обновление носков (v2): носки с id={} не найдены", id);
+                    return Mono.error(new SocksNotFoundException("На складе носки не найдены"));
+                }))
+                .flatMap(socks -> {
+                    SocksValidator.checkParams(color, cottonPart, quantity);
+                    Map<SocksKey, Integer> deltas = new LinkedHashMap<>();
+                    deltas.merge(new SocksKey(socks.getColor(), socks.getCottonPart()), -socks.getQuantity(), Integer::sum);
+                    deltas.merge(new SocksKey(color, cottonPart), quantity, Integer::sum);
+                    deltas.values().removeIf(delta -> delta == 0);
+                    return reactiveSocksRepository.update(new Socks(id, color, cottonPart, quantity))
+                            .then(record(SocksChangedEvent.of(MovementType.UPDATE, deltas)));
+                })
+                .as(transactionalOperator::transactional)
+                .flatMap(this::publish)
+                .doOnSuccess(ignored -> log.info("Обновление носков (v2): id={}, color={}, cottonPart={}, quantity={}", id, color, cottonPart, quantity));
+    }
+
+    /**
+     * Файл читается буферами по запросу: следующий чанк строк разбирается только после того,
+     * как предыдущий записан в базу, поэтому в памяти не больше одного чанка.
+     */
+    @Override
+    public Mono<BatchResult> batchSocks(MultipartFile file) {
+        if (shardRouter.isSharded()) {
+            return Mono.fromRunnable(this::checkNotSharded);
+        }
+        ImportProgress progress = new ImportProgress();
+        CSVParser parser = new CSVParser();
+        AtomicInteger pendingRows = new AtomicInteger();
+        Map<SocksKey, Integer> pendingSums = new HashMap<>();
+        Flux<String> lines = StringDecoder.textPlainOnly().decode(
+                DataBufferUtils.readInputStream(file::getInputStream, DefaultDataBufferFactory.sharedInstance, 8192),
+                ResolvableType.forClass(String.class), null, null);
+        return lines
+                .index()
+                .filter(line -> !line.getT2().isBlank()
+                        && !(line.getT1() == 0 && SocksCsvImporter.isHeader(line.getT2())))
+                .<StockChange>handle((line, sink) -> {
+                    progress.setRowsRead(progress.getRowsRead() + 1);
+                    try {
+                        String[] record = parser.parseLine(line.getT2());
+                        if (record.length != 3) {
+                            throw new SocksArgumentException("Некорректный формат данных: " + String.join(", ", record));
+                        }
+                        String color = record[0].trim();
+                        long cottonPart = Long.parseLong(record[1].trim());
+                        int quantity = Integer.parseInt(record[2].trim());
+                        SocksValidator.checkParams(color, cottonPart, quantity);
+                        sink.next(new StockChange(new SocksKey(color, cottonPart), quantity));
+                    } catch (IOException | NumberFormatException | SocksArgumentException e) {
+                        progress.setRowsRejected(progress.getRowsRejected() + 1);
+                        socksMetrics.importRowRejected();
+                        log.warn("Строка {} отклонена: {} ({})", line.getT1() + 1, line.getT2(), e.getMessage());
+                    }
+                })
+                .bufferUntil(row -> {
+                    // чанк - chunk-size строк, но сумма по позиции в нём должна помещаться в int
+                    boolean cut = pendingRows.get() == chunkSize
+                            || !SocksCsvImporter.fits(pendingSums, row.getKey(), row.getDelta());
+                    if (cut) {
+                        pendingRows.set(0);
+                        pendingSums.clear();
+                    }
+                    pendingRows.incrementAndGet();
+                    pendingSums.merge(row.getKey(), row.getDelta(), Integer::sum);
+                    return cut;
+                }, true)
+                .concatMap(rows -> {
+                    Map<SocksKey, Integer> chunk = new HashMap<>();
+                    rows.forEach(row -> chunk.merge(row.getKey(), row.getDelta(), Integer::sum));
+                    return reactiveSocksRepository.upsertIncrements(chunk)
+                            .then(record(SocksChangedEvent.of(MovementType.IMPORT, chunk)))
+                            .as(transactionalOperator::transactional)
+                            .flatMap(this::publish)
+                            .doOnSuccess(ignored -> {
+                                progress.setRowsApplied(progress.getRowsApplied() + rows.size());
+                                socksMetrics.importRowsApplied(rows.size(), 0);
+                            });
+                }, 1)
+                .then(Mono.fromSupplier(() -> new BatchResult(progress.getRowsRead(), progress.getRowsApplied(), progress.getRowsRejected())))
+                .doOnSuccess(result -> log.info("Загрузка партий носков (v2) завершена: прочитано={}, применено={}, отклонено={}",
+                        result.getRowsRead(), result.getRowsApplied(), result.getRowsRejected()));
+    }
+
+    // резервуар выборки живёт в памяти, но дочитывает строки через JDBC, поэтому вызов уходит с event loop
+    @Override
+    public Flux<Socks> getAnySocks(int n, boolean weighted) {
+        if (n < 1 || n > MAX_SAMPLE_SIZE) {
+            return Flux.error(new SocksArgumentException("Размер выборки должен быть от 1 до " + MAX_SAMPLE_SIZE));
+        }
+        return blocking(() -> socksSampler.sample(n, weighted))
+                .flatMapMany(socks -> socks.isEmpty()
+                        ? Flux.error(new SocksNotFoundException("На складе носки не найдены"))
+                        : Flux.fromIterable(socks));
+    }
+
+    private void checkNotSharded() {
+        if (shardRouter.isSharded()) {
+            log.warn("Запрос v2 отклонён: склад шардирован");
+            throw new SocksArgumentException("API v2 не работает с шардированным складом, используйте /api/socks");
+        }
+    }
+
+    private Mono<Integer> cached(String key, SocksFilter filter) {
+        return reactiveRedisTemplate.opsForValue().get(key)
+                .cast(Integer.class)
+                .switchIfEmpty(Mono.defer(() -> toQuantity(filter, reactiveSocksRepository.sumQuantity(filter))
+                        .flatMap(quantity -> reactiveRedisTemplate.opsForValue().set(key, quantity, CACHE_TTL)
+                                .onErrorReturn(false)
+                                .thenReturn(quantity))));
+    }
+
+    private Mono<Integer> toQuantity(SocksFilter filter, Mono<SocksTotal> total) {
+        return total.flatMap(t -> {
+            if (t.getRows() == 0) {
+                log.warn("Запрос количества носков (v2): носки не найдены для фильтра: {}", filter);
+                return Mono.error(new SocksNotFoundException("На складе носки не найдены"));
+            }
+            return Mono.just(Math.toIntExact(Math.max(t.getQuantity() - reservationStore.reserved(filter), 0)));
+        });
+    }
+
+    // журнал движений пишется в той же транзакции R2DBC, что и остатки: после коммита его не потерять
+    private Mono<SocksChangedEvent> record(SocksChangedEvent event) {
+        return reactiveSocksRepository.appendLedger(event.getType(), event.getChanges()).thenReturn(event.recorded());
+    }
+
+    /**
+     * Событие уходит после коммита, и его слушатели не транзакционны, как и в v1 после коммита:
+     * если узел упадёт между коммитом и публикацией, версия кэша не сдвинется и количество доживёт до TTL,
+     * индекс исправит плановая сверка, а лента изменений начнёт нумерацию с разрывом и отдаст потребителям
+     * resync ({@link ru.artq.practice.socks.service.feed.ChangeFeed#start}). Журнал движений не теряется,
+     * см. {@link #record}. Слушатели блокирующие (Redis, JDBC), поэтому публикация идёт на отдельном планировщике.
+     */
+    private Mono<Void> publish(SocksChangedEvent event) {
+        if (event.getChanges().isEmpty()) {
+            return Mono.empty();
+        }
+        return Mono.fromRunnable(() -> eventPublisher.publishEvent(event))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    private static <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+}
@@ -0,0 +1,245 @@
+package ru.artq.practice.socks.service.reservation;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.artq.practice.socks.errors.SocksArgumentException;
+import ru.artq.practice.socks.errors.SocksNotFoundException;
+import ru.artq.practice.socks.model.Reservation;
+import ru.artq.practice.socks.model.SocksFilter;
+import ru.artq.practice.socks.model.SocksKey;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Резервы под оформление заказа. Сумма резервов по позиции - счётчик, который меняется CAS без блокировок,
+ * так что резервы разных позиций не мешают друг другу, а одной - не теряются. Истёкшие резервы снимает
+ * колесо таймеров. Резервы живут в памяти узла: подтверждать их нужно на том же узле, и при перезапуске
+ * они пропадают, а свободный остаток уменьшают только на этом узле.
+ * <p>
+ * Отпуск читает сумму резервов до условного списания, поэтому резерв, выданный между чтением и списанием,
+ * списание бы не учло. Чтобы принятый резерв всегда можно было подтвердить, отпуск объявляет себя
+ * ({@link #beginOutcome}) до чтения суммы, а резерв не выдаётся, пока по позиции идёт отпуск, и
+ * пересчитывается, если отпуск начался во время его проверки.
+ */
+@Component
+@Slf4j
+public class ReservationStore {
+    // счётчики позиций не удаляются: позиций ограниченное число, а удаление гонялось бы с CAS
+    private final Map<SocksKey, AtomicLong> reserved = new ConcurrentHashMap<>();
+    private final Map<UUID, Hold> holds = new ConcurrentHashMap<>();
+    private final Map<SocksKey, OutcomeGate> outcomes = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private final String nodeId;
+    private final Clock clock;
+    private final long tickMillis;
+    private final Duration defaultTtl;
+    private final Duration maxTtl;
+    private final TimerWheel<Hold> wheel;
+    private ScheduledExecutorService scheduler;
+
+    public ReservationStore(@Value("${socks.node-id:${HOSTNAME:local}}") String nodeId,
+                            @Value("${socks.reservation.tick-ms:100}") long tickMillis,
+                            @Value("${socks.reservation.wheel-size:4096}") int wheelSize,
+                            @Value("${socks.reservation.default-ttl:10m}") Duration defaultTtl,
+                            @Value("${socks.reservation.max-ttl:1h}") Duration maxTtl) {
+        this(nodeId, Clock.systemUTC(), tickMillis, wheelSize, defaultTtl, maxTtl);
+    }
+
+    ReservationStore(String nodeId, Clock clock, long tickMillis, int wheelSize, Duration defaultTtl, Duration maxTtl) {
+        this.nodeId = nodeId;
+        this.clock = clock;
+        this.tickMillis = tickMillis;
+        this.defaultTtl = defaultTtl;
+        this.maxTtl = maxTtl;
+        this.wheel = new TimerWheel<>(tickMillis, wheelSize, clock.millis());
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "socks-reservations");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::expireQuietly, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Резервирует количество, если складской остаток за вычетом других резервов его покрывает.
+     * Остаток {@code stock} читается, когда по позиции не идёт ни одного отпуска; если отпуск начался
+     * до выдачи резерва, резерв откатывается и проверяется заново.
+     * Остальные отпуски на этом узле проверяют остаток за вычетом {@link #reserved(SocksKey)}.
+     */
+    public Reservation reserve(SocksKey key, int quantity, LongSupplier stock, Duration ttl) {
+        Duration holdFor = ttl == null ? defaultTtl : ttl;
+        if (holdFor.toSeconds() < 1 || holdFor.compareTo(maxTtl) > 0) {
+            throw new SocksArgumentException("Срок резерва должен быть от 1 секунды до " + maxTtl.toSeconds() + " секунд");
+        }
+        AtomicLong counter = reserved.computeIfAbsent(key, k -> new AtomicLong());
+        OutcomeGate gate = outcomes.computeIfAbsent(key, k -> new OutcomeGate());
+        while (true) {
+            long started = gate.started.get();
+            if (gate.active.get() > 0) {
+                LockSupport.parkNanos(100_000);
+                continue;
+            }
+            long available = stock.getAsLong();
+            long current;
+            do {
+                current = counter.get();
+                if (available - current < quantity) {
+                    throw new SocksNotFoundException("Нехватка носков на складе");
+                }
+            } while (!counter.compareAndSet(current, current + quantity));
+            if (gate.started.get() == started) {
+                break;
+            }
+            counter.addAndGet(-quantity);
+        }
+        Reservation reservation = new Reservation(UUID.randomUUID(), key.getColor(), key.getCottonPart(),
+                quantity, clock.instant().plus(holdFor));
+        Hold hold = new Hold(key, reservation);
+        holds.put(reservation.getId(), hold);
+        wheel.schedule(hold, reservation.getExpiresAt().toEpochMilli());
+        version.incrementAndGet();
+        return reservation;
+    }
+
+    /**
+     * Объявляет отпуск по позиции; вызывается до чтения {@link #reserved(SocksKey)} для проверки отпуска.
+     * Отпуск идёт до {@link #endOutcome}, который вызывается, когда списание видно при чтении остатка.
+     */
+    public void beginOutcome(SocksKey key) {
+        OutcomeGate gate = outcomes.computeIfAbsent(key, k -> new OutcomeGate());
+        gate.active.incrementAndGet();
+        gate.started.incrementAndGet();
+    }
+
+    public void endOutcome(SocksKey key) {
+        outcomes.get(key).active.decrementAndGet();
+    }
+
+    /**
+     * Забирает резерв: после этого он не истечёт и не будет снят повторно, но остаётся в учёте
+     * до {@link #settle}, чтобы свободный остаток не вырос раньше, чем отпуск станет виден.
+     */
+    public Reservation claim(UUID id) {
+        Hold hold = holds.get(id);
+        if (hold == null || !hold.claimed.compareAndSet(false, true)) {
+            throw new SocksNotFoundException("Резерв не найден или истёк");
+        }
+        return hold.reservation;
+    }
+
+    public void settle(Reservation reservation) {
+        Hold hold = holds.remove(reservation.getId());
+        if (hold != null) {
+            reserved.get(hold.key).addAndGet(-reservation.getQuantity());
+            version.incrementAndGet();
+        }
+    }
+
+    public void release(UUID id) {
+        settle(claim(id));
+    }
+
+    public long reserved(SocksKey key) {
+        AtomicLong counter = reserved.get(key);
+        return counter == null ? 0 : counter.get();
+    }
+
+    public long reserved(SocksFilter filter) {
+        long total = 0;
+        for (Map.Entry<SocksKey, AtomicLong> entry : reserved.entrySet()) {
+            if (filter.matches(entry.getKey())) {
+                total += entry.getValue().get();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Есть ли резервы по цвету, а без цвета - хоть какие-то. Пока они есть, количество не кэшируется:
+     * кэш общий для узлов, а резервы у каждого свои.
+     */
+    public boolean holds(String color) {
+        for (Map.Entry<SocksKey, AtomicLong> entry : reserved.entrySet()) {
+            if (entry.getValue().get() > 0 && (color == null || color.equals(entry.getKey().getColor()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Растёт при каждом изменении резервов.
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Версия резервов для ETag. Счётчик свой у каждого узла, поэтому в метку входит id узла:
+     * одинаковые числа с разных узлов не должны давать совпадающую метку.
+     */
+    public String versionTag() {
+        return nodeId + "." + version.get();
+    }
+
+    void expire() {
+        wheel.advance(clock.millis(), hold -> {
+            if (hold.claimed.compareAndSet(false, true)) {
+                settle(hold.reservation);
+                log.info("Резерв {} истёк: color={}, cottonPart={}, quantity={}", hold.reservation.getId(),
+                        hold.key.getColor(), hold.key.getCottonPart(), hold.reservation.getQuantity());
+            }
+        });
+    }
+
+    private void expireQuietly() {
+        try {
+            expire();
+        } catch (RuntimeException e) {
+            log.error("Ошибка снятия истёкших резервов", e);
+        }
+    }
+
+    private static final class OutcomeGate {
+        // active увеличивается раньше started: резерв, увидевший новый started, увидит и идущий отпуск
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicLong started = new AtomicLong();
+    }
+
+    private static final class Hold {
+        private final SocksKey key;
+        private final Reservation reservation;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private Hold(SocksKey key, Reservation reservation) {
+            this.key = key;
+            this.reservation = reservation;
+        }
+    }
+}
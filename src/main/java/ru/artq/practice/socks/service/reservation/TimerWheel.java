@@ -0,0 +1,70 @@
+package ru.artq.practice.socks.service.reservation;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Хешированное колесо таймеров: срок округляется вверх до тика, элемент кладётся в ячейку
+ * {@code тик % размер}, и за тик просматривается одна ячейка. Постановка - O(1) без общей блокировки,
+ * срабатывание запаздывает не больше чем на тик. Элементы со сроком дальше оборота колеса
+ * остаются в ячейке до своего оборота.
+ */
+class TimerWheel<T> {
+    private final long tickMillis;
+    private final Queue<Entry<T>>[] buckets;
+    private final int mask;
+    private volatile long processedTick;
+
+    @SuppressWarnings("unchecked")
+    TimerWheel(long tickMillis, int size, long nowMillis) {
+        int capacity = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.buckets = new Queue[capacity];
+        for (int i = 0; i < capacity; i++) {
+            buckets[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.mask = capacity - 1;
+        this.processedTick = nowMillis / tickMillis;
+    }
+
+    void schedule(T item, long deadlineMillis) {
+        long tick = Math.max(Math.ceilDiv(deadlineMillis, tickMillis), processedTick + 1);
+        buckets[(int) (tick & mask)].add(new Entry<>(item, tick));
+    }
+
+    /**
+     * Отдаёт элементы со сроком не позже {@code nowMillis}. Вызывается из одного потока.
+     */
+    void advance(long nowMillis, Consumer<T> expired) {
+        long now = nowMillis / tickMillis;
+        long from = processedTick + 1;
+        // после паузы дольше оборота каждая ячейка всё равно просматривается один раз
+        long to = Math.min(now, processedTick + buckets.length);
+        processedTick = Math.max(processedTick, now);
+        for (long tick = from; tick <= to; tick++) {
+            Queue<Entry<T>> bucket = buckets[(int) (tick & mask)];
+            for (int n = bucket.size(); n > 0; n--) {
+                Entry<T> entry = bucket.poll();
+                if (entry == null) {
+                    break;
+                }
+                if (entry.tick <= now) {
+                    expired.accept(entry.item);
+                } else {
+                    bucket.add(entry);
+                }
+            }
+        }
+    }
+
+    private static final class Entry<T> {
+        private final T item;
+        private final long tick;
+
+        private Entry(T item, long tick) {
+            this.item = item;
+            this.tick = tick;
+        }
+    }
+}
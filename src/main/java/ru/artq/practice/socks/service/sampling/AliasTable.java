@@ -0,0 +1,83 @@
+package ru.artq.practice.socks.service.sampling;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Таблица псевдонимов (метод Воуза): выбор индекса с вероятностью, пропорциональной весу, за O(1).
+ */
+final class AliasTable {
+    private final long[] weights;
+    private final double[] probability;
+    private final int[] alias;
+    private final long total;
+
+    private AliasTable(long[] weights, double[] probability, int[] alias, long total) {
+        this.weights = weights;
+        this.probability = probability;
+        this.alias = alias;
+        this.total = total;
+    }
+
+    static AliasTable build(long[] weights) {
+        int n = weights.length;
+        long total = 0;
+        for (long weight : weights) {
+            total += weight;
+        }
+        double[] probability = new double[n];
+        int[] alias = new int[n];
+        if (total == 0) {
+            return new AliasTable(weights, probability, alias, 0);
+        }
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallSize = 0;
+        int largeSize = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = (double) weights[i] * n / total;
+            if (scaled[i] < 1.0) {
+                small[smallSize++] = i;
+            } else {
+                large[largeSize++] = i;
+            }
+        }
+        while (smallSize > 0 && largeSize > 0) {
+            int less = small[--smallSize];
+            int more = large[--largeSize];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallSize++] = more;
+            } else {
+                large[largeSize++] = more;
+            }
+        }
+        // остатки появляются только из-за погрешности округления
+        while (largeSize > 0) {
+            probability[large[--largeSize]] = 1.0;
+        }
+        while (smallSize > 0) {
+            probability[small[--smallSize]] = 1.0;
+        }
+        return new AliasTable(weights, probability, alias, total);
+    }
+
+    int sample(ThreadLocalRandom random) {
+        int column = random.nextInt(probability.length);
+        return random.nextDouble() < probability[column] ? column : alias[column];
+    }
+
+    int size() {
+        return weights.length;
+    }
+
+    long weight(int index) {
+        return weights[index];
+    }
+
+    long total() {
+        return total;
+    }
+}
@@ -0,0 +1,314 @@
+package ru.artq.practice.socks.service.sampling;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.artq.practice.socks.datasource.ShardRouter;
+import ru.artq.practice.socks.model.Socks;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.model.StockChange;
+import ru.artq.practice.socks.repository.SocksJdbcRepository;
+import ru.artq.practice.socks.service.SocksChangedEvent;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Резервуар ключей склада для случайной выборки. Ключи загружаются при первом запросе и пополняются
+ * событиями после коммита, сами строки читаются из базы одним запросом. Исчезнувшие ключи удаляются
+ * при выборке, а количества уточняются по прочитанным строкам.
+ * Взвешенная выборка идёт по таблице псевдонимов, построенной с запасом по весам: выбранный ключ
+ * принимается с вероятностью текущее/заложенное, поэтому таблица перестраивается только когда
+ * появляются новые ключи или количество выходит за запас.
+ * События приходят только от своего узла, поэтому резервуар периодически перечитывается из базы целиком:
+ * так в выборку попадают позиции, заведённые другими узлами.
+ */
+@Component
+@Slf4j
+public class SocksSampler {
+    private static final int FETCH_ATTEMPTS = 3;
+    private static final int MAX_REJECTIONS = 64;
+
+    private final SocksJdbcRepository socksJdbcRepository;
+    private final ShardRouter shardRouter;
+    private final long reloadIntervalMs;
+    private final AtomicLong modifications = new AtomicLong();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<SocksKey, Integer> positions = new HashMap<>();
+    private SocksKey[] keys = new SocksKey[16];
+    private long[] quantities = new long[16];
+    private int size;
+    private volatile boolean loaded;
+    private volatile AliasTable aliasTable;
+    private ScheduledExecutorService scheduler;
+
+    public SocksSampler(SocksJdbcRepository socksJdbcRepository,
+                        ShardRouter shardRouter,
+                        @Value("${socks.sampler.reload-interval-ms:60000}") long reloadIntervalMs) {
+        this.socksJdbcRepository = socksJdbcRepository;
+        this.shardRouter = shardRouter;
+        this.reloadIntervalMs = reloadIntervalMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "socks-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::reloadQuietly, reloadIntervalMs, reloadIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public List<Socks> sample(int n, boolean weighted) {
+        ensureLoaded();
+        List<Socks> result = new ArrayList<>(n);
+        for (int attempt = 0; attempt < FETCH_ATTEMPTS && result.size() < n; attempt++) {
+            List<SocksKey> picked = pick(n - result.size(), weighted);
+            if (picked.isEmpty()) {
+                break;
+            }
+            Map<SocksKey, Socks> rows = findByKeys(picked);
+            for (SocksKey key : picked) {
+                Socks socks = rows.get(key);
+                if (socks != null) {
+                    result.add(socks);
+                }
+            }
+            reconcile(picked, rows);
+        }
+        return result;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSocksChanged(SocksChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            modifications.incrementAndGet();
+            if (!loaded) {
+                return;
+            }
+            for (StockChange change : event.getChanges()) {
+                Integer position = positions.get(change.getKey());
+                if (position == null) {
+                    add(change.getKey(), Math.max(change.getDelta(), 0));
+                } else {
+                    setQuantity(position, quantities[position] + change.getDelta());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private List<SocksKey> pick(int n, boolean weighted) {
+        AliasTable table = weighted ? aliasTable() : null;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<SocksKey> picked = new ArrayList<>(n);
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return picked;
+            }
+            for (int i = 0; i < n; i++) {
+                int position = weighted ? pickWeighted(table, random) : random.nextInt(size);
+                if (position < 0) {
+                    break;
+                }
+                picked.add(keys[position]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return picked;
+    }
+
+    private int pickWeighted(AliasTable table, ThreadLocalRandom random) {
+        if (table.total() == 0) {
+            return -1;
+        }
+        for (int attempt = 0; attempt < MAX_REJECTIONS; attempt++) {
+            int position = table.sample(random);
+            if (position >= size) {
+                continue;
+            }
+            long built = table.weight(position);
+            long current = Math.max(quantities[position], 0);
+            if (current >= built || random.nextLong(built) < current) {
+                return position;
+            }
+        }
+        // таблица слишком расходится с текущими количествами
+        aliasTable = null;
+        return -1;
+    }
+
+    private AliasTable aliasTable() {
+        AliasTable table = aliasTable;
+        if (table != null) {
+            return table;
+        }
+        lock.writeLock().lock();
+        try {
+            if (aliasTable == null) {
+                long[] weights = new long[size];
+                for (int i = 0; i < size; i++) {
+                    weights[i] = withHeadroom(quantities[i]);
+                }
+                aliasTable = AliasTable.build(weights);
+            }
+            return aliasTable;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                readStock().forEach(this::add);
+                loaded = true;
+                log.info("Резервуар для случайной выборки загружен: ключей={}", size);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Перечитывает резервуар из базы вне блокировки и подменяет его, если за время чтения не пришло
+     * ни одного события: иначе изменение могло бы учесться дважды или потеряться.
+     */
+    boolean reload() {
+        if (!loaded) {
+            return true;
+        }
+        long before = modifications.get();
+        Map<SocksKey, Integer> stock = readStock();
+        lock.writeLock().lock();
+        try {
+            if (modifications.get() != before) {
+                return false;
+            }
+            Arrays.fill(keys, 0, size, null);
+            positions.clear();
+            size = 0;
+            stock.forEach(this::add);
+            aliasTable = null;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void reloadQuietly() {
+        try {
+            if (!reload()) {
+                log.debug("Перечитывание резервуара выборки пропущено: склад менялся во время чтения");
+            }
+        } catch (RuntimeException e) {
+            log.error("Не удалось перечитать резервуар выборки", e);
+        }
+    }
+
+    private Map<SocksKey, Integer> readStock() {
+        if (!shardRouter.isSharded()) {
+            Map<SocksKey, Integer> stock = new HashMap<>();
+            socksJdbcRepository.forEachStock(stock::put);
+            return stock;
+        }
+        // шарды читаются параллельно, а резервуар заполняется только под блокировкой вызывающего потока
+        Map<SocksKey, Integer> stock = new HashMap<>();
+        shardRouter.scatter(false, shard -> {
+            Map<SocksKey, Integer> part = new HashMap<>();
+            socksJdbcRepository.forEachStock(part::put);
+            return part;
+        }).forEach(stock::putAll);
+        return stock;
+    }
+
+    private Map<SocksKey, Socks> findByKeys(List<SocksKey> picked) {
+        if (!shardRouter.isSharded()) {
+            return socksJdbcRepository.findByKeys(new HashSet<>(picked));
+        }
+        Map<Integer, List<SocksKey>> byShard = shardRouter.partition(new HashSet<>(picked), key -> key);
+        Map<SocksKey, Socks> rows = new HashMap<>();
+        shardRouter.scatter(true, shard -> socksJdbcRepository.findByKeys(byShard.getOrDefault(shard, List.of())))
+                .forEach(rows::putAll);
+        return rows;
+    }
+
+    private void reconcile(List<SocksKey> picked, Map<SocksKey, Socks> rows) {
+        lock.writeLock().lock();
+        try {
+            for (SocksKey key : picked) {
+                Integer position = positions.get(key);
+                if (position == null) {
+                    continue;
+                }
+                Socks socks = rows.get(key);
+                if (socks == null) {
+                    remove(position);
+                } else {
+                    setQuantity(position, socks.getQuantity());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(SocksKey key, long quantity) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            quantities = Arrays.copyOf(quantities, size * 2);
+        }
+        keys[size] = key;
+        quantities[size] = quantity;
+        positions.put(key, size++);
+        aliasTable = null;
+    }
+
+    private void remove(int position) {
+        positions.remove(keys[position]);
+        int last = --size;
+        if (position != last) {
+            keys[position] = keys[last];
+            quantities[position] = quantities[last];
+            positions.put(keys[position], position);
+        }
+        keys[last] = null;
+        aliasTable = null;
+    }
+
+    private void setQuantity(int position, long quantity) {
+        quantities[position] = quantity;
+        AliasTable table = aliasTable;
+        if (table != null && (position >= table.size() || quantity > table.weight(position))) {
+            aliasTable = null;
+        }
+    }
+
+    private static long withHeadroom(long quantity) {
+        return quantity <= 0 ? 0 : quantity + quantity / 4 + 1;
+    }
+}
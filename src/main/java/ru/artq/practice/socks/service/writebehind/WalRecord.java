@@ -0,0 +1,11 @@
+package ru.artq.practice.socks.service.writebehind;
+
+import lombok.Value;
+import ru.artq.practice.socks.model.SocksKey;
+
+@Value
+public class WalRecord {
+    long seq;
+    SocksKey key;
+    int delta;
+}
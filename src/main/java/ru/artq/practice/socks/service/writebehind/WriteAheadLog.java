@@ -0,0 +1,259 @@
+package ru.artq.practice.socks.service.writebehind;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import ru.artq.practice.socks.model.SocksKey;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал движений, разбитый на сегменты. Записи дописываются в текущий сегмент, а {@link #sync(long)}
+ * выполняет групповой fsync: один поток сбрасывает файл за всех, кто ждёт своей записи.
+ */
+@Slf4j
+public class WriteAheadLog implements Closeable {
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_BYTES = Integer.BYTES;
+    private static final int FIXED_BODY_BYTES = Long.BYTES + Long.BYTES + Integer.BYTES + Short.BYTES;
+
+    private final Path dir;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buffer = ByteBuffer.allocate(256);
+    private volatile FileChannel channel;
+    private Path segment;
+    private long segmentFirstSeq;
+    private long lastSeq;
+    private volatile long writtenSeq;
+    private long durableSeq;
+    private boolean syncing;
+
+    public WriteAheadLog(Path dir) {
+        this.dir = dir;
+    }
+
+    public Recovery recover(long checkpointSeq) throws IOException {
+        Files.createDirectories(dir);
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(dir)) {
+            segments = files.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .sorted()
+                    .toList();
+        }
+        List<WalRecord> records = new ArrayList<>();
+        long maxSeq = checkpointSeq;
+        for (Path path : segments) {
+            for (WalRecord record : readSegment(path)) {
+                records.add(record);
+                maxSeq = Math.max(maxSeq, record.getSeq());
+            }
+        }
+        lastSeq = maxSeq;
+        writtenSeq = maxSeq;
+        durableSeq = maxSeq;
+        openSegment();
+        // пустой последний сегмент мог получить то же имя, что и новый: удалять его после доигрывания нельзя
+        Path current = segment;
+        return new Recovery(records, segments.stream().filter(path -> !path.equals(current)).toList());
+    }
+
+    /**
+     * Записи закрытых сегментов в порядке сегментов.
+     */
+    public List<WalRecord> read(List<Path> segments) throws IOException {
+        List<WalRecord> records = new ArrayList<>();
+        for (Path path : segments) {
+            records.addAll(readSegment(path));
+        }
+        return records;
+    }
+
+    public long append(SocksKey key, int delta) throws IOException {
+        appendLock.lock();
+        try {
+            long seq = lastSeq + 1;
+            ByteBuffer record = encode(seq, key, delta);
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            lastSeq = seq;
+            writtenSeq = seq;
+            return seq;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public void sync(long seq) throws IOException {
+        syncLock.lock();
+        try {
+            while (durableSeq < seq) {
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                long target = writtenSeq;
+                FileChannel current = channel;
+                syncLock.unlock();
+                boolean forced = false;
+                try {
+                    current.force(false);
+                    forced = true;
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    if (forced) {
+                        durableSeq = Math.max(durableSeq, target);
+                    }
+                    synced.signalAll();
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    public long lastSeq() {
+        appendLock.lock();
+        try {
+            return lastSeq;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Закрывает текущий сегмент и открывает новый. Возвращает закрытый сегмент, если в него
+     * что-то писали: его можно удалить после того, как записи применены к базе.
+     */
+    public List<Path> rotate() throws IOException {
+        appendLock.lock();
+        try {
+            if (lastSeq < segmentFirstSeq) {
+                return List.of();
+            }
+            syncLock.lock();
+            try {
+                while (syncing) {
+                    synced.awaitUninterruptibly();
+                }
+                channel.force(false);
+                durableSeq = lastSeq;
+                channel.close();
+                synced.signalAll();
+            } finally {
+                syncLock.unlock();
+            }
+            Path closed = segment;
+            openSegment();
+            return List.of(closed);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public void delete(List<Path> segments) {
+        for (Path path : segments) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Не удалось удалить сегмент журнала {}", path, e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            if (channel != null && channel.isOpen()) {
+                channel.force(false);
+                channel.close();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void openSegment() throws IOException {
+        segmentFirstSeq = lastSeq + 1;
+        segment = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segmentFirstSeq, SEGMENT_SUFFIX));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private ByteBuffer encode(long seq, SocksKey key, int delta) {
+        byte[] color = key.getColor().getBytes(StandardCharsets.UTF_8);
+        int bodyLength = FIXED_BODY_BYTES + color.length;
+        int total = HEADER_BYTES + bodyLength + Integer.BYTES;
+        if (buffer.capacity() < total) {
+            buffer = ByteBuffer.allocate(Math.max(total, buffer.capacity() * 2));
+        }
+        buffer.clear();
+        buffer.putInt(bodyLength)
+                .putLong(seq)
+                .putLong(key.getCottonPart())
+                .putInt(delta)
+                .putShort((short) color.length)
+                .put(color);
+        crc.reset();
+        crc.update(buffer.array(), HEADER_BYTES, bodyLength);
+        buffer.putInt((int) crc.getValue());
+        return buffer.flip();
+    }
+
+    private static List<WalRecord> readSegment(Path path) throws IOException {
+        List<WalRecord> records = new ArrayList<>();
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+        CRC32 checksum = new CRC32();
+        while (data.remaining() >= HEADER_BYTES) {
+            int start = data.position();
+            int bodyLength = data.getInt();
+            if (bodyLength < FIXED_BODY_BYTES || data.remaining() < bodyLength + Integer.BYTES) {
+                log.warn("Обрезанная запись в {} на позиции {}, остаток сегмента пропущен", path, start);
+                break;
+            }
+            checksum.reset();
+            checksum.update(data.array(), data.position(), bodyLength);
+            long seq = data.getLong();
+            long cottonPart = data.getLong();
+            int delta = data.getInt();
+            int colorLength = Short.toUnsignedInt(data.getShort());
+            if (FIXED_BODY_BYTES + colorLength != bodyLength) {
+                log.warn("Повреждённая запись в {} на позиции {}, остаток сегмента пропущен", path, start);
+                break;
+            }
+            byte[] color = new byte[colorLength];
+            data.get(color);
+            if ((int) checksum.getValue() != data.getInt()) {
+                log.warn("Повреждённая запись в {} на позиции {}, остаток сегмента пропущен", path, start);
+                break;
+            }
+            records.add(new WalRecord(seq, new SocksKey(new String(color, StandardCharsets.UTF_8), cottonPart), delta));
+        }
+        return records;
+    }
+
+    @Value
+    public static class Recovery {
+        List<WalRecord> records;
+        List<Path> segments;
+    }
+}
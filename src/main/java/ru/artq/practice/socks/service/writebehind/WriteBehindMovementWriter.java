@@ -0,0 +1,547 @@
+package ru.artq.practice.socks.service.writebehind;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.artq.practice.socks.datasource.ShardRouter;
+import ru.artq.practice.socks.metrics.SocksMetrics;
+import ru.artq.practice.socks.model.MovementType;
+import ru.artq.practice.socks.model.Socks;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.model.StockChange;
+import ru.artq.practice.socks.model.StockMovement;
+import ru.artq.practice.socks.model.WalCheckpoint;
+import ru.artq.practice.socks.repository.SocksJdbcRepository;
+import ru.artq.practice.socks.repository.SocksRepository;
+import ru.artq.practice.socks.repository.WalCheckpointRepository;
+import ru.artq.practice.socks.service.BulkMovements;
+import ru.artq.practice.socks.service.SocksChangedEvent;
+import ru.artq.practice.socks.service.SocksMovementWriter;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToLongFunction;
+
+/**
+ * Режим отложенной записи: движения копятся в памяти по ключу и раз в {@code flush-interval-ms}
+ * или каждые {@code flush-ops} операций сбрасываются в базу одной дельтой на ключ.
+ * Подтверждённое движение сначала попадает в WAL, поэтому после падения оно будет доиграно при старте.
+ * Балансы кэшируются узлом, поэтому режим допускает один узел на базу: это закрепляется advisory-блокировкой
+ * Postgres на всё время работы. Списание, которое при сбросе не покрыл остаток (его уменьшили мимо узла),
+ * не валит сброс остальных ключей: оно остаётся в журнале, а баланс ключа перечитывается из базы.
+ * В журнал движений сброс пишет по записи на каждое движение из сброшенных сегментов WAL (пакет - по записи
+ * на ключ), с типом {@code WRITE_BEHIND} и временем сброса, а не подтверждения.
+ */
+@Component
+@ConditionalOnProperty(name = "socks.write-behind.enabled", havingValue = "true")
+@Slf4j
+public class WriteBehindMovementWriter implements SocksMovementWriter {
+    private static final long SINGLE_NODE_LOCK = 0x736f636b7357424cL;
+
+    private final SocksRepository socksRepository;
+    private final SocksJdbcRepository socksJdbcRepository;
+    private final WalCheckpointRepository walCheckpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final DataSource dataSource;
+    private final SocksMetrics socksMetrics;
+    private final ApplicationEventPublisher eventPublisher;
+    private final WriteAheadLog wal;
+    private final ShardRouter shardRouter;
+    private final String nodeId;
+    private final long flushIntervalMs;
+    private final int flushOps;
+
+    private final ReentrantLock[] stripes;
+    private final Map<SocksKey, Balance> balances = new ConcurrentHashMap<>();
+    private final Map<SocksKey, Integer> externalInFlight = new ConcurrentHashMap<>();
+    // растёт при каждой внешней записи по ключу, даже если баланс ещё не загружен
+    private final Map<SocksKey, AtomicLong> generations = new ConcurrentHashMap<>();
+    // движения держат read-блокировку, сброс берёт write-блокировку, чтобы снятые дельты совпадали с закрытым сегментом
+    private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock();
+    private final ReentrantLock flushMutex = new ReentrantLock();
+    private final AtomicInteger opsSinceFlush = new AtomicInteger();
+    private final List<Path> unappliedSegments = new ArrayList<>();
+    private ScheduledExecutorService scheduler;
+    private Connection lockConnection;
+
+    public WriteBehindMovementWriter(SocksRepository socksRepository,
+                                     SocksJdbcRepository socksJdbcRepository,
+                                     WalCheckpointRepository walCheckpointRepository,
+                                     TransactionTemplate transactionTemplate,
+                                     ApplicationEventPublisher eventPublisher,
+                                     ShardRouter shardRouter,
+                                     DataSource dataSource,
+                                     SocksMetrics socksMetrics,
+                                     @Value("${socks.write-behind.wal-dir:${java.io.tmpdir}/socks-wal}") Path walDir,
+                                     @Value("${socks.node-id:${HOSTNAME:local}}") String nodeId,
+                                     @Value("${socks.write-behind.flush-interval-ms:200}") long flushIntervalMs,
+                                     @Value("${socks.write-behind.flush-ops:1000}") int flushOps,
+                                     @Value("${socks.write-behind.stripes:64}") int stripes) {
+        this.socksRepository = socksRepository;
+        this.socksJdbcRepository = socksJdbcRepository;
+        this.walCheckpointRepository = walCheckpointRepository;
+        // сброс может понадобиться внутри чужой транзакции (обновление позиции) и должен коммититься сам
+        this.transactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.dataSource = dataSource;
+        this.socksMetrics = socksMetrics;
+        this.eventPublisher = eventPublisher;
+        this.wal = new WriteAheadLog(walDir);
+        this.shardRouter = shardRouter;
+        this.nodeId = nodeId;
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushOps = flushOps;
+        this.stripes = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        // контрольная точка WAL фиксируется в одной транзакции со сбросом дельт, а она не может охватить несколько шардов
+        if (shardRouter.isSharded()) {
+            throw new IllegalStateException("Отложенная запись не поддерживает шардирование склада");
+        }
+        lockSingleNode();
+        long checkpoint = walCheckpointRepository.findById(nodeId).map(WalCheckpoint::getLastSeq).orElse(0L);
+        WriteAheadLog.Recovery recovery = wal.recover(checkpoint);
+        Map<SocksKey, Integer> deltas = new HashMap<>();
+        List<StockChange> movements = new ArrayList<>();
+        long lastSeq = checkpoint;
+        for (WalRecord record : recovery.getRecords()) {
+            if (record.getSeq() > checkpoint) {
+                deltas.merge(record.getKey(), record.getDelta(), Integer::sum);
+                movements.add(new StockChange(record.getKey(), record.getDelta()));
+                lastSeq = Math.max(lastSeq, record.getSeq());
+            }
+        }
+        deltas.values().removeIf(delta -> delta == 0);
+        if (lastSeq > checkpoint) {
+            Set<SocksKey> rejected = apply(deltas, movements, lastSeq);
+            log.info("Журнал движений доигран: записи {}..{}, ключей={}", checkpoint + 1, lastSeq, deltas.size());
+            requeue(deltas, rejected);
+        }
+        wal.delete(recovery.getSegments());
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "socks-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        flushQuietly();
+        wal.close();
+        unlockSingleNode();
+    }
+
+    /**
+     * Доводит до базы принятые движения перед записью абсолютного количества, иначе отложенные
+     * дельты легли бы поверх него. Сброс коммитится отдельной транзакцией.
+     */
+    @Override
+    public void flushPending() {
+        flush();
+    }
+
+    @Override
+    public void income(SocksKey key, int quantity) {
+        Balance balance = balance(key);
+        long seq;
+        flushLock.readLock().lock();
+        try {
+            ReentrantLock stripe = stripe(key);
+            stripe.lock();
+            try {
+                seq = append(key, quantity);
+                balance.quantity += quantity;
+                balance.pending.addAndGet(quantity);
+            } finally {
+                stripe.unlock();
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+        awaitDurable(seq);
+    }
+
+    @Override
+    public long quantity(SocksKey key) {
+        Balance balance = balance(key);
+        ReentrantLock stripe = stripe(key);
+        stripe.lock();
+        try {
+            return balance.quantity;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    @Override
+    public boolean outcome(SocksKey key, int quantity, long held) {
+        Balance balance = balance(key);
+        long seq;
+        flushLock.readLock().lock();
+        try {
+            ReentrantLock stripe = stripe(key);
+            stripe.lock();
+            try {
+                if (balance.quantity - held < quantity) {
+                    return false;
+                }
+                seq = append(key, -quantity);
+                balance.quantity -= quantity;
+                balance.pending.addAndGet(-quantity);
+            } finally {
+                stripe.unlock();
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+        awaitDurable(seq);
+        return true;
+    }
+
+    /**
+     * Пакет движений под блокировками всех своих полос сразу: проверка остатков и запись в журнал
+     * выполняются как одна операция, поэтому атомарный режим не требует компенсаций.
+     */
+    @Override
+    public boolean[] apply(List<StockMovement> movements, boolean atomic, ToLongFunction<SocksKey> held) {
+        Map<SocksKey, Balance> involved = new HashMap<>();
+        movements.forEach(movement -> involved.computeIfAbsent(movement.getKey(), this::balance));
+        int[] stripeIndexes = involved.keySet().stream().mapToInt(this::stripeIndex).distinct().sorted().toArray();
+        boolean[] accepted;
+        long seq = 0;
+        flushLock.readLock().lock();
+        try {
+            for (int index : stripeIndexes) {
+                stripes[index].lock();
+            }
+            try {
+                accepted = BulkMovements.evaluate(movements, key -> involved.get(key).quantity - held.applyAsLong(key));
+                if (atomic && !BulkMovements.allAccepted(accepted)) {
+                    return accepted;
+                }
+                for (Map.Entry<SocksKey, Integer> delta : BulkMovements.netDeltas(movements, accepted).entrySet()) {
+                    Balance balance = involved.get(delta.getKey());
+                    seq = append(delta.getKey(), delta.getValue());
+                    balance.quantity += delta.getValue();
+                    balance.pending.addAndGet(delta.getValue());
+                }
+            } finally {
+                for (int i = stripeIndexes.length - 1; i >= 0; i--) {
+                    stripes[stripeIndexes[i]].unlock();
+                }
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+        if (seq > 0) {
+            awaitDurable(seq);
+        }
+        return accepted;
+    }
+
+    /**
+     * Изменения, записанные в базу мимо журнала (обновление, загрузки), переносятся в баланс
+     * после коммита. До завершения транзакции ключ помечен, и баланс для него из базы не читается.
+     */
+    @EventListener
+    public void onSocksChanged(SocksChangedEvent event) {
+        if (event.getType() == MovementType.WRITE_BEHIND) {
+            return;
+        }
+        List<StockChange> changes = event.getChanges();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            adjust(changes);
+            return;
+        }
+        changes.forEach(change -> externalInFlight.merge(change.getKey(), 1, Integer::sum));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    if (status == STATUS_COMMITTED) {
+                        adjust(changes);
+                    }
+                } finally {
+                    changes.forEach(change -> externalInFlight.computeIfPresent(
+                            change.getKey(), (key, count) -> count == 1 ? null : count - 1));
+                }
+            }
+        });
+    }
+
+    public void flush() {
+        flushMutex.lock();
+        try {
+            Map<SocksKey, Integer> deltas = new HashMap<>();
+            long lastSeq;
+            flushLock.writeLock().lock();
+            try {
+                unappliedSegments.addAll(wal.rotate());
+                lastSeq = wal.lastSeq();
+                balances.forEach((key, balance) -> {
+                    long pending = balance.pending.getAndSet(0);
+                    if (pending != 0) {
+                        deltas.put(key, Math.toIntExact(pending));
+                    }
+                });
+                opsSinceFlush.set(0);
+            } finally {
+                flushLock.writeLock().unlock();
+            }
+            if (unappliedSegments.isEmpty()) {
+                return;
+            }
+            Set<SocksKey> rejected;
+            try {
+                List<StockChange> movements = wal.read(unappliedSegments).stream()
+                        .map(record -> new StockChange(record.getKey(), record.getDelta()))
+                        .toList();
+                rejected = apply(deltas, movements, lastSeq);
+            } catch (RuntimeException | IOException e) {
+                // сегменты остаются на диске, дельты вернутся в следующий сброс
+                deltas.forEach((key, delta) -> balances.get(key).pending.addAndGet(delta));
+                throw e;
+            }
+            // отклонённые дельты переписываются в новый сегмент до удаления старых
+            requeue(deltas, rejected);
+            wal.delete(unappliedSegments);
+            unappliedSegments.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            flushMutex.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Ошибка сброса отложенных движений, повтор при следующем сбросе", e);
+        }
+    }
+
+    /**
+     * Возвращает ключи, списание по которым остаток в базе не покрыл; остальные дельты и контрольная
+     * точка фиксируются одной транзакцией. Событие несёт отдельные движения, а не дельты: по нему
+     * журнал движений получает запись на каждое движение в той же транзакции.
+     */
+    private Set<SocksKey> apply(Map<SocksKey, Integer> deltas, List<StockChange> movements, long lastSeq) {
+        return transactionTemplate.execute(status -> {
+            Set<SocksKey> rejected = socksJdbcRepository.applyIncrements(deltas);
+            walCheckpointRepository.save(new WalCheckpoint(nodeId, lastSeq));
+            List<StockChange> applied = movements.stream()
+                    .filter(movement -> !rejected.contains(movement.getKey()))
+                    .toList();
+            if (!applied.isEmpty()) {
+                eventPublisher.publishEvent(new SocksChangedEvent(MovementType.WRITE_BEHIND, applied, false));
+            }
+            return rejected;
+        });
+    }
+
+    /**
+     * Отклонённое списание уже подтверждено клиенту, поэтому не теряется: оно снова пишется в журнал
+     * и повторяется при каждом сбросе, пока остаток не позволит. Баланс ключа перечитывается из базы
+     * и уходит в минус, так что новые списания по нему не принимаются.
+     */
+    private void requeue(Map<SocksKey, Integer> deltas, Set<SocksKey> rejected) {
+        if (rejected.isEmpty()) {
+            return;
+        }
+        long seq = 0;
+        flushLock.readLock().lock();
+        try {
+            for (SocksKey key : rejected) {
+                int delta = deltas.get(key);
+                ReentrantLock stripe = stripe(key);
+                stripe.lock();
+                try {
+                    seq = append(key, delta);
+                    Balance balance = balances.computeIfAbsent(key, k -> new Balance(0));
+                    long pending = balance.pending.addAndGet(delta);
+                    balance.quantity = storedQuantity(key) + pending;
+                } finally {
+                    stripe.unlock();
+                }
+                log.error("Отложенное списание не покрыто остатком в базе, повтор при следующем сбросе: "
+                        + "color={}, cottonPart={}, delta={}", key.getColor(), key.getCottonPart(), delta);
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+        try {
+            wal.sync(seq);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        socksMetrics.writeBehindRejected(rejected.size());
+    }
+
+    /**
+     * Остаток читается вне блокировки полосы и принимается, только если за время чтения по ключу
+     * не было внешней записи: ни незавершённой, ни уже перенесённой в баланс ({@code generations}).
+     */
+    private Balance balance(SocksKey key) {
+        Balance balance = balances.get(key);
+        if (balance != null) {
+            return balance;
+        }
+        ReentrantLock stripe = stripe(key);
+        AtomicLong generation = generation(key);
+        while (true) {
+            while (externalInFlight.containsKey(key)) {
+                LockSupport.parkNanos(100_000);
+            }
+            long readAt = generation.get();
+            long quantity = storedQuantity(key);
+            stripe.lock();
+            try {
+                balance = balances.get(key);
+                if (balance != null) {
+                    return balance;
+                }
+                if (!externalInFlight.containsKey(key) && generation.get() == readAt) {
+                    balance = new Balance(quantity);
+                    balances.put(key, balance);
+                    return balance;
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+
+    private void adjust(List<StockChange> changes) {
+        for (StockChange change : changes) {
+            ReentrantLock stripe = stripe(change.getKey());
+            stripe.lock();
+            try {
+                generation(change.getKey()).incrementAndGet();
+                Balance balance = balances.get(change.getKey());
+                if (balance != null) {
+                    balance.quantity += change.getDelta();
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+
+    private AtomicLong generation(SocksKey key) {
+        return generations.computeIfAbsent(key, k -> new AtomicLong());
+    }
+
+    private long storedQuantity(SocksKey key) {
+        return socksRepository.findByColorAndCottonPart(key.getColor(), key.getCottonPart())
+                .map(Socks::getQuantity)
+                .orElse(0);
+    }
+
+    private void lockSingleNode() {
+        try {
+            lockConnection = dataSource.getConnection();
+            try (PreparedStatement statement = lockConnection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+                statement.setLong(1, SINGLE_NODE_LOCK);
+                try (ResultSet rs = statement.executeQuery()) {
+                    if (rs.next() && rs.getBoolean(1)) {
+                        return;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            unlockSingleNode();
+            throw new IllegalStateException("Не удалось проверить единственность узла отложенной записи", e);
+        }
+        unlockSingleNode();
+        throw new IllegalStateException("Отложенная запись уже включена на другом узле с этой базой");
+    }
+
+    // блокировка сессионная и снимается закрытием соединения
+    private void unlockSingleNode() {
+        if (lockConnection == null) {
+            return;
+        }
+        try {
+            lockConnection.close();
+        } catch (SQLException e) {
+            log.warn("Ошибка закрытия соединения блокировки отложенной записи", e);
+        }
+        lockConnection = null;
+    }
+
+    private long append(SocksKey key, int delta) {
+        try {
+            return wal.append(key, delta);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void awaitDurable(long seq) {
+        try {
+            wal.sync(seq);
+        } catch (IOException e) {
+            log.error("Не удалось записать журнал движений на диск", e);
+            throw new UncheckedIOException(e);
+        }
+        if (opsSinceFlush.incrementAndGet() == flushOps) {
+            scheduler.execute(this::flushQuietly);
+        }
+    }
+
+    private ReentrantLock stripe(SocksKey key) {
+        return stripes[stripeIndex(key)];
+    }
+
+    private int stripeIndex(SocksKey key) {
+        return (key.hashCode() & 0x7fffffff) % stripes.length;
+    }
+
+    private static final class Balance {
+        private long quantity;
+        private final AtomicLong pending = new AtomicLong();
+
+        private Balance(long quantity) {
+            this.quantity = quantity;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+-- Цвета хранятся в словаре, строки склада ссылаются на них целым id.
+-- Базы, созданные до миграций (Hibernate ddl-auto или scheme.sql), переводятся на словарь здесь же.
+create table if not exists socks_colors
+(
+    id   serial primary key,
+    name varchar(255) not null,
+    constraint socks_colors_name_key unique (name)
+);
+
+create table if not exists socks
+(
+    id                bigserial primary key,
+    color_id          integer not null references socks_colors (id),
+    cotton_percentage bigint  not null check (cotton_percentage >= 0 and cotton_percentage <= 100),
+    quantity          integer not null check (quantity >= 0),
+    constraint socks_color_cotton_percentage_key unique (color_id, cotton_percentage)
+);
+
+do
+$$
+    begin
+        if exists (select 1
+                   from information_schema.columns
+                   where table_schema = current_schema()
+                     and table_name = 'socks'
+                     and column_name = 'color') then
+            insert into socks_colors (name)
+            select distinct color from socks order by color
+            on conflict (name) do nothing;
+
+            alter table socks add column if not exists color_id integer;
+            update socks s set color_id = c.id from socks_colors c where c.name = s.color;
+
+            alter table socks drop constraint if exists socks_color_cotton_percentage_key;
+            alter table socks drop column color;
+            alter table socks alter column color_id set not null;
+            alter table socks add constraint socks_color_id_fkey foreign key (color_id) references socks_colors (id);
+
+            -- без уникального ключа одна позиция могла попасть в таблицу несколькими строками:
+            -- количества сводятся в строку с меньшим id, остальные удаляются
+            update socks s
+            set quantity = d.total
+            from (select min(id) as keep_id, sum(quantity) as total
+                  from socks
+                  group by color_id, cotton_percentage
+                  having count(*) > 1) d
+            where s.id = d.keep_id;
+            delete
+            from socks s
+                using socks k
+            where k.color_id = s.color_id
+              and k.cotton_percentage = s.cotton_percentage
+              and k.id < s.id;
+
+            alter table socks add constraint socks_color_cotton_percentage_key unique (color_id, cotton_percentage);
+        end if;
+    end
+$$;
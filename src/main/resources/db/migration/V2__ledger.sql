@@ -0,0 +1,68 @@
+-- Журнал движений секционирован по месяцам, Hibernate им не управляет. Секции на текущий и два следующих
+-- месяца создаются здесь, дальше их досоздаёт обслуживание журнала (StockLedger).
+create table if not exists socks_ledger
+(
+    id                bigint generated always as identity,
+    occurred_at       timestamptz  not null default clock_timestamp(),
+    movement_type     varchar(16)  not null,
+    color             varchar(128) not null,
+    cotton_percentage bigint       not null,
+    delta             int          not null,
+    primary key (occurred_at, id)
+) partition by range (occurred_at);
+
+create index if not exists socks_ledger_key_idx on socks_ledger (color, cotton_percentage, occurred_at);
+
+create table if not exists socks_ledger_snapshot_runs
+(
+    id       bigint generated always as identity primary key,
+    taken_at timestamptz not null unique
+);
+
+create table if not exists socks_ledger_snapshots
+(
+    run_id            bigint       not null references socks_ledger_snapshot_runs on delete cascade,
+    color             varchar(128) not null,
+    cotton_percentage bigint       not null,
+    quantity          bigint       not null,
+    primary key (run_id, color, cotton_percentage)
+);
+
+create table if not exists socks_ledger_archive
+(
+    partition_name varchar(63) primary key,
+    range_end      timestamptz not null,
+    detached_at    timestamptz not null default now()
+);
+
+do
+$$
+    declare
+        month_start timestamp;
+    begin
+        for i in 0..2
+            loop
+                month_start := date_trunc('month', now() at time zone 'UTC') + make_interval(months => i);
+                execute format('create table if not exists %I partition of socks_ledger for values from (%L) to (%L)',
+                               'socks_ledger_p' || to_char(month_start, 'YYYYMM'),
+                               month_start at time zone 'UTC', (month_start + interval '1 month') at time zone 'UTC');
+            end loop;
+    end
+$$;
+
+-- Начальный снимок берётся с таблицы остатков. Блокировка EXCLUSIVE дожидается всех пишущих транзакций,
+-- поэтому их записи журнала оказываются раньше снимка, а записи следующих — позже.
+lock table socks in exclusive mode;
+
+with run as (
+    insert into socks_ledger_snapshot_runs (taken_at)
+        select clock_timestamp()
+        where not exists (select 1 from socks_ledger_snapshot_runs)
+        returning id)
+insert
+into socks_ledger_snapshots (run_id, color, cotton_percentage, quantity)
+select run.id, c.name, s.cotton_percentage, s.quantity
+from run,
+     socks s
+         join socks_colors c on c.id = s.color_id
+where s.quantity <> 0;
@@ -0,0 +1,20 @@
+-- Журнал ленты изменений: записи каждого узла нумеруются его собственной последовательностью seq.
+create table if not exists socks_change_log
+(
+    node_id           varchar(255) not null,
+    seq               bigint       not null,
+    committed_at      timestamptz  not null,
+    movement_type     varchar(16)  not null,
+    color             varchar(128) not null,
+    cotton_percentage bigint       not null,
+    delta             int          not null,
+    primary key (node_id, seq)
+);
+
+create index if not exists socks_change_log_committed_at_idx on socks_change_log (committed_at);
+
+create table if not exists socks_change_log_nodes
+(
+    node_id    varchar(255) primary key,
+    stopped_at bigint       not null
+);
@@ -0,0 +1,70 @@
+-- Схема под проверку Hibernate (ddl-auto=validate в профиле fast-startup).
+-- Базы из исходного scheme.sql хранят id как serial, а cotton_percentage как float: сущность ждёт bigint.
+do
+$$
+    begin
+        if exists (select 1
+                   from information_schema.columns
+                   where table_schema = current_schema()
+                     and table_name = 'socks'
+                     and column_name = 'id'
+                     and data_type <> 'bigint') then
+            alter table socks alter column id type bigint;
+            alter sequence if exists socks_id_seq as bigint;
+        end if;
+
+        if exists (select 1
+                   from information_schema.columns
+                   where table_schema = current_schema()
+                     and table_name = 'socks'
+                     and column_name = 'cotton_percentage'
+                     and data_type <> 'bigint') then
+            -- дробные проценты округляются, и две строки позиции могут совпасть: количества сводятся
+            -- в строку с меньшим id, как в V1
+            alter table socks drop constraint if exists socks_color_cotton_percentage_key;
+            alter table socks alter column cotton_percentage type bigint using round(cotton_percentage)::bigint;
+
+            update socks s
+            set quantity = d.total
+            from (select min(id) as keep_id, sum(quantity) as total
+                  from socks
+                  group by color_id, cotton_percentage
+                  having count(*) > 1) d
+            where s.id = d.keep_id;
+            delete
+            from socks s
+                using socks k
+            where k.color_id = s.color_id
+              and k.cotton_percentage = s.cotton_percentage
+              and k.id < s.id;
+
+            alter table socks add constraint socks_color_cotton_percentage_key unique (color_id, cotton_percentage);
+        end if;
+    end
+$$;
+
+-- таблицы фоновых загрузок и контрольных точек WAL раньше создавал только ddl-auto=update
+create table if not exists import_jobs
+(
+    id            varchar(36)  not null primary key,
+    node_id       varchar(255) not null,
+    file_name     varchar(255),
+    status        varchar(16)  not null,
+    bytes_total   bigint       not null,
+    byte_offset   bigint       not null,
+    line_number   bigint       not null,
+    rows_read     bigint       not null,
+    rows_applied  bigint       not null,
+    rows_rejected bigint       not null,
+    error_bytes   bigint       not null,
+    message       varchar(1024),
+    created_at    timestamp(6) with time zone,
+    started_at    timestamp(6) with time zone,
+    finished_at   timestamp(6) with time zone
+);
+
+create table if not exists socks_wal_checkpoints
+(
+    node_id  varchar(255) not null primary key,
+    last_seq bigint       not null
+);
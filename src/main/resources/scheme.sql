@@ -1,10 +1,23 @@
+create table if not exists socks_colors
+(
+    id   serial primary key,
+    name varchar(255) not null,
+    constraint socks_colors_name_key unique (name)
+);
+
 create table if not exists socks
 (
-    id                serial primary key,
-    color             varchar(128) not null,
-    cotton_percentage float        not null check (cotton_percentage >= 0 and cotton_percentage <= 100),
-    quantity          int          not null check ( quantity >= 0 )
+    id                bigserial primary key,
+    color_id          integer not null references socks_colors (id),
+    cotton_percentage bigint  not null check (cotton_percentage >= 0 and cotton_percentage <= 100),
+    quantity          integer not null check (quantity >= 0),
+    constraint socks_color_cotton_percentage_key unique (color_id, cotton_percentage)
 );
 
-insert into socks (color, cotton_percentage, quantity)
-values ('red', 80, 100);
\ No newline at end of file
+insert into socks_colors (name)
+values ('red');
+
+insert into socks (color_id, cotton_percentage, quantity)
+select id, 80, 100
+from socks_colors
+where name = 'red';
@@ -0,0 +1,76 @@
+package ru.artq.practice.socks.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveLimitTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static void round(AdaptiveLimit limit, long rttNanos) {
+        int admitted = 0;
+        while (limit.tryAcquire()) {
+            admitted++;
+        }
+        for (int i = 0; i < admitted; i++) {
+            limit.release(rttNanos, false);
+        }
+    }
+
+    @Test
+    void test1_tryAcquire_shouldRejectAboveLimit() {
+        AdaptiveLimit limit = new AdaptiveLimit(2, 1, 10, 2.0, 0.9, 100);
+
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertFalse(limit.tryAcquire());
+
+        limit.release(FAST, false);
+        assertTrue(limit.tryAcquire());
+        assertEquals(2, limit.inFlight());
+    }
+
+    @Test
+    void test2_release_shouldGrowLimit_whenFastAndSaturated() {
+        AdaptiveLimit limit = new AdaptiveLimit(4, 1, 50, 2.0, 0.9, 100);
+
+        for (int i = 0; i < 20; i++) {
+            round(limit, FAST);
+        }
+
+        assertTrue(limit.limit() > 4);
+        assertEquals(0, limit.inFlight());
+    }
+
+    @Test
+    void test3_release_shouldShrinkLimit_whenLatencyRisesAboveBaseline() {
+        AdaptiveLimit limit = new AdaptiveLimit(20, 2, 20, 2.0, 0.5, 1000);
+        for (int i = 0; i < 5; i++) {
+            round(limit, FAST);
+        }
+
+        for (int i = 0; i < 5; i++) {
+            round(limit, SLOW);
+        }
+
+        assertTrue(limit.limit() < 20);
+        assertTrue(limit.limit() >= 2);
+    }
+
+    @Test
+    void test4_release_shouldShrinkLimit_onServerError() {
+        AdaptiveLimit limit = new AdaptiveLimit(10, 1, 10, 2.0, 0.5, 100);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limit.tryAcquire());
+        }
+
+        for (int i = 0; i < 10; i++) {
+            limit.release(FAST, true);
+        }
+
+        assertEquals(5, limit.limit());
+    }
+}
@@ -0,0 +1,24 @@
+package ru.artq.practice.socks.admission;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkheadTest {
+
+    @Test
+    void test1_of_shouldTreatImportStatusPollsAsReads() {
+        assertEquals(Bulkhead.BULK, Bulkhead.of("POST", "/api/socks/batch"));
+        assertEquals(Bulkhead.READS, Bulkhead.of("GET", "/api/socks/batch/42"));
+        assertEquals(Bulkhead.READS, Bulkhead.of("GET", "/api/socks/batch/42/errors"));
+        assertEquals(Bulkhead.BULK, Bulkhead.of("POST", "/api/v2/socks/batch"));
+    }
+
+    @Test
+    void test2_of_shouldGroupExportsAsBulkAndSkipFeed() {
+        assertEquals(Bulkhead.BULK, Bulkhead.of("GET", "/api/socks/export"));
+        assertEquals(Bulkhead.MOVEMENTS, Bulkhead.of("POST", "/api/socks/income"));
+        assertNull(Bulkhead.of("GET", "/api/socks/changes"));
+        assertNull(Bulkhead.of("GET", "/actuator/health"));
+    }
+}
@@ -0,0 +1,47 @@
+package ru.artq.practice.socks.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import ru.artq.practice.socks.model.Socks;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactRedisSerializerTest {
+
+    private final CompactRedisSerializer serializer = new CompactRedisSerializer();
+
+    @Test
+    void test1_roundTrip_shouldRestoreSupportedTypes() {
+        Socks socks = new Socks(7L, "красный", 80L, -3);
+        Socks partial = new Socks("blue", null, 5);
+
+        assertEquals(1_250, serializer.deserialize(serializer.serialize(1_250)));
+        assertEquals(Long.MIN_VALUE, serializer.deserialize(serializer.serialize(Long.MIN_VALUE)));
+        assertEquals("blue", serializer.deserialize(serializer.serialize("blue")));
+        assertEquals(socks, serializer.deserialize(serializer.serialize(socks)));
+        assertEquals(partial, serializer.deserialize(serializer.serialize(partial)));
+        assertSame(NullValue.INSTANCE, serializer.deserialize(serializer.serialize(NullValue.INSTANCE)));
+        assertEquals(List.of(1, 2), serializer.deserialize(serializer.serialize(List.of(1, 2))));
+    }
+
+    @Test
+    void test2_serialize_shouldBeSmallerThanJdk() {
+        JdkSerializationRedisSerializer jdk = new JdkSerializationRedisSerializer();
+        Socks socks = new Socks(42L, "red", 80L, 1_250);
+
+        assertEquals(4, serializer.serialize(1_250).length);
+        assertTrue(serializer.serialize(socks).length < jdk.serialize(socks).length / 5);
+    }
+
+    @Test
+    void test3_deserialize_shouldRejectUnknownVersion() {
+        byte[] bytes = serializer.serialize(10);
+        bytes[0] = (byte) (CompactRedisSerializer.VERSION + 1);
+
+        assertThrows(SerializationException.class, () -> serializer.deserialize(bytes));
+    }
+}
@@ -0,0 +1,25 @@
+package ru.artq.practice.socks.cache;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+class InMemoryInvalidationBus implements InvalidationBus {
+    private final List<Consumer<Set<String>>> subscribers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(Set<String> colors) {
+        subscribers.forEach(subscriber -> subscriber.accept(colors));
+    }
+
+    @Override
+    public void subscribe(Consumer<Set<String>> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    @Override
+    public void subscribeRemote(Consumer<Set<String>> subscriber) {
+        // в памяти один узел: чужих изменений не бывает
+    }
+}
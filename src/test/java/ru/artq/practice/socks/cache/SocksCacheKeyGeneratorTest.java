@@ -0,0 +1,59 @@
+package ru.artq.practice.socks.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SocksCacheKeyGeneratorTest {
+
+    @Mock
+    private InventoryVersions inventoryVersions;
+
+    @InjectMocks
+    private SocksCacheKeyGenerator keyGenerator;
+
+    @Test
+    void test1_generate_shouldDistinguishFiltersWithSameColor() {
+        when(inventoryVersions.version("blue")).thenReturn(3L);
+
+        Object byColor = keyGenerator.generate(null, null, "blue", null, null, null, null, null);
+        Object byRange = keyGenerator.generate(null, null, "blue", null, null, 10L, 50L, null);
+
+        assertNotEquals(byColor, byRange);
+    }
+
+    @Test
+    void test2_generate_shouldIgnoreSortAndNormalizeEquality() {
+        when(inventoryVersions.version("blue")).thenReturn(3L);
+
+        Object implicitEqual = keyGenerator.generate(null, null, "blue", null, 80L, null, null, "color");
+        Object explicitEqual = keyGenerator.generate(null, null, "blue", "equal", 80L, null, null, null);
+
+        assertEquals(implicitEqual, explicitEqual);
+    }
+
+    @Test
+    void test3_generate_shouldChangeWhenColorVersionBumped() {
+        when(inventoryVersions.version("blue")).thenReturn(3L, 4L);
+
+        Object before = keyGenerator.generate(null, null, "blue", null, null, null, null, null);
+        Object after = keyGenerator.generate(null, null, "blue", null, null, null, null, null);
+
+        assertNotEquals(before, after);
+    }
+
+    @Test
+    void test4_generate_shouldUseGlobalVersionWithoutColor() {
+        when(inventoryVersions.version(null)).thenReturn(7L);
+
+        assertEquals("color=|cmp=|cp=|min=|max=|v=7",
+                keyGenerator.generate(null, null, null, null, null, null, null, null));
+    }
+}
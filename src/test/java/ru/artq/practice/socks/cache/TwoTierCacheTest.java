@@ -0,0 +1,80 @@
+package ru.artq.practice.socks.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.time.Duration;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TwoTierCacheTest {
+    private static final String BLUE_KEY = "color=blue|cmp=|cp=|min=|max=|v=1";
+    private static final String RED_KEY = "color=red|cmp=|cp=|min=|max=|v=1";
+    private static final String ANY_KEY = "color=|cmp=|cp=|min=|max=|v=1";
+
+    private ConcurrentMapCacheManager redis;
+    private InMemoryInvalidationBus bus;
+    private TwoTierCacheManager nodeA;
+    private TwoTierCacheManager nodeB;
+
+    @BeforeEach
+    void setUp() {
+        redis = new ConcurrentMapCacheManager("socks");
+        bus = new InMemoryInvalidationBus();
+        nodeA = new TwoTierCacheManager(redis, bus, 100, Duration.ofMinutes(1));
+        nodeB = new TwoTierCacheManager(redis, bus, 100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void test1_get_shouldServeSecondReadFromNearCache() {
+        nodeA.getCache("socks").put(BLUE_KEY, 10);
+        TwoTierCache cacheB = (TwoTierCache) nodeB.getCache("socks");
+
+        assertEquals(10, cacheB.get(BLUE_KEY).get());
+        redis.getCache("socks").evict(BLUE_KEY);
+        assertEquals(10, cacheB.get(BLUE_KEY).get());
+
+        NearCacheStats stats = cacheB.stats();
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+    }
+
+    @Test
+    void test2_invalidation_shouldDropMatchingEntriesOnEveryNode() {
+        Cache cacheA = nodeA.getCache("socks");
+        TwoTierCache cacheB = (TwoTierCache) nodeB.getCache("socks");
+        cacheA.put(BLUE_KEY, 10);
+        cacheA.put(RED_KEY, 20);
+        cacheA.put(ANY_KEY, 30);
+        cacheB.get(BLUE_KEY);
+        cacheB.get(RED_KEY);
+        cacheB.get(ANY_KEY);
+        redis.getCache("socks").clear();
+
+        bus.publish(Set.of("blue"));
+
+        assertNull(cacheB.get(BLUE_KEY));
+        assertNull(cacheB.get(ANY_KEY));
+        assertEquals(20, cacheB.get(RED_KEY).get());
+        assertEquals(2, cacheB.stats().getInvalidations());
+        assertNull(cacheA.get(BLUE_KEY));
+    }
+
+    @Test
+    void test3_put_shouldEvictWhenSizeBoundExceeded() {
+        TwoTierCacheManager small = new TwoTierCacheManager(redis, bus, 1, Duration.ofMinutes(1));
+        TwoTierCache cache = (TwoTierCache) small.getCache("socks");
+
+        for (int i = 0; i < 100; i++) {
+            cache.put("color=c" + i + "|", i);
+        }
+        ((com.github.benmanes.caffeine.cache.Cache<?, ?>) cache.getNativeCache()).cleanUp();
+
+        assertEquals(1, cache.stats().getSize());
+        assertEquals(99, cache.stats().getEvictions());
+    }
+}
@@ -0,0 +1,50 @@
+package ru.artq.practice.socks.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ConnectionLimiterTest {
+
+    @Mock
+    private DataSource target;
+
+    @Test
+    void test1_getConnection_shouldNotTakePermitForNestedConnection() throws Exception {
+        when(target.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+        Semaphore permits = new Semaphore(1, true);
+        ConnectionLimiter.LimitedDataSource dataSource =
+                new ConnectionLimiter.LimitedDataSource(target, permits, Duration.ofMillis(10));
+
+        Connection outer = dataSource.getConnection();
+        Connection nested = dataSource.getConnection();
+        nested.close();
+
+        assertEquals(0, permits.availablePermits());
+        outer.close();
+        assertEquals(1, permits.availablePermits());
+    }
+
+    @Test
+    void test2_getConnection_shouldFailFast_whenOtherThreadsHoldAllPermits() throws Exception {
+        Semaphore permits = new Semaphore(0, true);
+        ConnectionLimiter.LimitedDataSource dataSource =
+                new ConnectionLimiter.LimitedDataSource(target, permits, Duration.ofMillis(10));
+
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        assertEquals(0, permits.availablePermits());
+    }
+}
@@ -6,15 +6,18 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ru.artq.practice.socks.datasource.ReplicaRouting;
 import ru.artq.practice.socks.model.Socks;
 import ru.artq.practice.socks.service.SocksService;
 
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -103,4 +106,45 @@ public class SocksControllerTest {
 
         verify(socksService, times(1)).updateSocks(id, color, cottonPart, quantity);
     }
-}
\ No newline at end of file
+
+    @Test
+    void test5_getSocksQuantity_shouldReturnInventoryVersionAsEtag() throws Exception {
+        when(socksService.getInventoryVersion("blue")).thenReturn("7");
+        when(socksService.getSocks("blue", null, null, null, null, null)).thenReturn(100);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/socks").param("color", "blue"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "W/\"7\""))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CACHE_CONTROL, "no-cache, public"));
+    }
+
+    @Test
+    void test6_getSocksQuantity_shouldReturnNotModified_whenVersionUnchanged() throws Exception {
+        when(socksService.getInventoryVersion("blue")).thenReturn("7");
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/socks")
+                        .param("color", "blue")
+                        .header(HttpHeaders.IF_NONE_MATCH, "W/\"6\", \"7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "W/\"7\""));
+
+        verify(socksService, never()).getSocks(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void test7_getSocksTotals_shouldDropEtag_whenReplicaIsStale() throws Exception {
+        when(socksService.getInventoryVersion("blue")).thenReturn("7");
+        when(socksService.getSocksTotals("color", 10L, "blue", null, null, null, null)).thenAnswer(invocation -> {
+            ReplicaRouting.markStaleRead();
+            return List.of();
+        });
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/socks/totals")
+                        .param("groupBy", "color")
+                        .param("color", "blue"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.ETAG))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CACHE_CONTROL, "no-store"));
+        assertFalse(ReplicaRouting.takeStaleRead());
+    }
+}
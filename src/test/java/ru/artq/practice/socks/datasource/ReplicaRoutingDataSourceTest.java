@@ -0,0 +1,68 @@
+package ru.artq.practice.socks.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+class ReplicaRoutingDataSourceTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    private ReplicaLagMonitor monitor;
+    private ReplicaRoutingDataSource routing;
+
+    @BeforeEach
+    void setUp() {
+        monitor = new ReplicaLagMonitor(mock(DataSource.class),
+                List.of(mock(DataSource.class), mock(DataSource.class)), Duration.ofSeconds(5), Duration.ofMillis(500));
+        routing = new ReplicaRoutingDataSource(monitor);
+        monitor.record(0, 100);
+        monitor.record(5 * SECOND, 200);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        ReplicaRouting.clear();
+    }
+
+    @Test
+    void test1_lookupKey_shouldUsePrimary_forReadWriteTransactions() {
+        monitor.replayed(new long[]{200, 200});
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    void test2_lookupKey_shouldSkipReplicaLaggingMoreThanMaxLag() {
+        monitor.replayed(new long[]{99, 150});
+
+        assertEquals(ReplicaRoutingDataSource.replicaKey(1), routing.determineCurrentLookupKey());
+        assertEquals(ReplicaRoutingDataSource.replicaKey(1), routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    void test3_lookupKey_shouldFallBackToPrimary_whenNoReplicaReachedToken() {
+        monitor.replayed(new long[]{150, 180});
+        ReplicaRouting.requireLsn(190);
+
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    void test4_walPosition_shouldRoundTrip() {
+        long lsn = WalPosition.parse("16/B374D848");
+
+        assertEquals(0x16B374D848L, lsn);
+        assertEquals("16/B374D848", WalPosition.format(lsn));
+    }
+}
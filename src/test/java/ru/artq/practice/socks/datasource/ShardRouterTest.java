@@ -0,0 +1,99 @@
+package ru.artq.practice.socks.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.artq.practice.socks.model.SocksKey;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ShardRouterTest {
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private ShardRouter router;
+
+    @AfterEach
+    void tearDown() {
+        router.stop();
+    }
+
+    @Test
+    void test1_shardOf_shouldBeStableAndSpreadKeys() {
+        router = new ShardRouter(List.of("jdbc:one", "jdbc:two", "jdbc:three"), transactionManager);
+        int[] counts = new int[4];
+        for (long cotton = 0; cotton <= 100; cotton++) {
+            for (String color : List.of("red", "blue", "green", "black", "white")) {
+                SocksKey key = new SocksKey(color, cotton);
+                int shard = router.shardOf(key);
+                assertEquals(shard, router.shardOf(new SocksKey(color, cotton)));
+                counts[shard]++;
+            }
+        }
+        for (int count : counts) {
+            assertTrue(count > 505 / 4 / 2, "перекос распределения: " + count);
+        }
+    }
+
+    @Test
+    void test2_onShard_shouldRouteConnectionsAndRestoreHomeShard() throws SQLException {
+        router = new ShardRouter(List.of("jdbc:one"), transactionManager);
+        DataSource home = mock(DataSource.class);
+        DataSource other = mock(DataSource.class);
+        Connection homeConnection = mock(Connection.class);
+        Connection otherConnection = mock(Connection.class);
+        when(home.getConnection()).thenReturn(homeConnection);
+        when(other.getConnection()).thenReturn(otherConnection);
+        ShardRoutingDataSource routing = new ShardRoutingDataSource();
+        routing.setTargetDataSources(Map.<Object, Object>of(0, home, 1, other));
+        routing.afterPropertiesSet();
+
+        Connection routed = router.onShard(1, () -> {
+            try {
+                return routing.getConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertSame(otherConnection, routed);
+        assertSame(homeConnection, routing.getConnection());
+    }
+
+    @Test
+    void test3_scatter_shouldRunEveryShardInOwnTransactionAndKeepOrder() {
+        router = new ShardRouter(List.of("jdbc:one", "jdbc:two"), transactionManager);
+
+        List<String> results = router.scatter(true, shard -> shard + ":" + ShardRouting.current());
+
+        assertEquals(List.of("0:0", "1:1", "2:2"), results);
+        verify(transactionManager, times(3)).getTransaction(any());
+        assertEquals(ShardRouting.HOME_SHARD, ShardRouting.current());
+    }
+
+    @Test
+    void test4_scatter_shouldRunInline_whenSingleShard() {
+        router = new ShardRouter(List.of(), transactionManager);
+        Thread caller = Thread.currentThread();
+
+        List<Boolean> results = router.scatter(true, shard -> Thread.currentThread() == caller);
+
+        assertEquals(List.of(true), results);
+        verifyNoInteractions(transactionManager);
+    }
+
+    @Test
+    void test5_shardOfId_shouldMatchSequenceResidue() {
+        router = new ShardRouter(List.of("jdbc:one", "jdbc:two"), transactionManager);
+
+        assertEquals(0, router.shardOfId(9));
+        assertEquals(1, router.shardOfId(10));
+        assertEquals(2, router.shardOfId(11));
+    }
+}
@@ -0,0 +1,78 @@
+package ru.artq.practice.socks.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.artq.practice.socks.datasource.ShardRouter;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ColorDictionaryTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private ShardRouter shardRouter;
+    private ColorDictionary colorDictionary;
+
+    @BeforeEach
+    void setUp() {
+        shardRouter = new ShardRouter(List.of(), mock(PlatformTransactionManager.class));
+        colorDictionary = new ColorDictionary(jdbcTemplate, shardRouter);
+    }
+
+    @AfterEach
+    void tearDown() {
+        shardRouter.stop();
+    }
+
+    @Test
+    void test1_find_shouldQueryDatabaseOnlyOnce() {
+        when(jdbcTemplate.queryForList(startsWith("SELECT id"), eq(Integer.class), eq("red"))).thenReturn(List.of(3));
+
+        assertEquals(3, colorDictionary.find("red"));
+        assertEquals(3, colorDictionary.find("red"));
+        assertEquals("red", colorDictionary.nameOf(3));
+        verify(jdbcTemplate, times(1)).queryForList(anyString(), eq(Integer.class), any());
+        verify(jdbcTemplate, never()).queryForList(startsWith("SELECT name"), eq(String.class), any());
+    }
+
+    @Test
+    void test2_find_shouldNotCreateUnknownColor() {
+        when(jdbcTemplate.queryForList(startsWith("SELECT id"), eq(Integer.class), eq("plaid"))).thenReturn(List.of());
+
+        assertEquals(ColorDictionary.ABSENT, colorDictionary.find("plaid"));
+        assertEquals(ColorDictionary.ABSENT, colorDictionary.find("plaid"));
+        verify(jdbcTemplate, times(2)).queryForList(anyString(), eq(Integer.class), any());
+        verify(jdbcTemplate, never()).queryForObject(anyString(), eq(Integer.class), any());
+    }
+
+    @Test
+    void test3_idOf_shouldCreateUnknownColorOnceAndCacheIt() {
+        when(jdbcTemplate.queryForList(startsWith("SELECT id"), eq(Integer.class), eq("teal"))).thenReturn(List.of());
+        when(jdbcTemplate.queryForObject(contains("INSERT INTO socks_colors"), eq(Integer.class), eq("teal"))).thenReturn(7);
+
+        assertEquals(7, colorDictionary.idOf("teal"));
+        assertEquals(7, colorDictionary.idOf("teal"));
+        assertEquals(7, colorDictionary.find("teal"));
+        verify(jdbcTemplate, times(1)).queryForObject(anyString(), eq(Integer.class), any());
+    }
+
+    @Test
+    void test4_nameOf_shouldFail_whenIdMissing() {
+        when(jdbcTemplate.queryForList(startsWith("SELECT name"), eq(String.class), eq(42))).thenReturn(List.of());
+
+        assertThrows(IllegalStateException.class, () -> colorDictionary.nameOf(42));
+    }
+}
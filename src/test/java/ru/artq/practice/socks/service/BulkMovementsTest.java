@@ -0,0 +1,56 @@
+package ru.artq.practice.socks.service;
+
+import org.junit.jupiter.api.Test;
+import ru.artq.practice.socks.model.MovementType;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.model.StockMovement;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BulkMovementsTest {
+    private static final SocksKey BLUE = new SocksKey("blue", 80L);
+    private static final SocksKey RED = new SocksKey("red", 50L);
+
+    @Test
+    void test1_evaluate_shouldLetOutcomeSeeEarlierIncomeOfSameBatch() {
+        List<StockMovement> movements = List.of(
+                new StockMovement(MovementType.OUTCOME, BLUE, 15),
+                new StockMovement(MovementType.INCOME, BLUE, 10),
+                new StockMovement(MovementType.OUTCOME, BLUE, 15),
+                new StockMovement(MovementType.OUTCOME, RED, 1));
+
+        boolean[] accepted = BulkMovements.evaluate(movements, key -> key.equals(BLUE) ? 10 : 0);
+
+        assertArrayEquals(new boolean[]{false, true, true, false}, accepted);
+    }
+
+    @Test
+    void test2_netDeltas_shouldSumAcceptedAndDropZeroDeltas() {
+        List<StockMovement> movements = List.of(
+                new StockMovement(MovementType.INCOME, BLUE, 10),
+                new StockMovement(MovementType.OUTCOME, BLUE, 10),
+                new StockMovement(MovementType.INCOME, RED, 7),
+                new StockMovement(MovementType.OUTCOME, RED, 3),
+                new StockMovement(MovementType.OUTCOME, RED, 100));
+
+        Map<SocksKey, Integer> deltas = BulkMovements.netDeltas(movements, new boolean[]{true, true, true, true, false});
+
+        assertEquals(Map.of(RED, 4), deltas);
+    }
+
+    @Test
+    void test3_evaluate_shouldAcceptIncome_whenHoldsExceedStock() {
+        List<StockMovement> movements = List.of(
+                new StockMovement(MovementType.INCOME, BLUE, 2),
+                new StockMovement(MovementType.OUTCOME, BLUE, 1));
+
+        // остаток 3 при резервах 8
+        boolean[] accepted = BulkMovements.evaluate(movements, key -> 3 - 8);
+
+        assertArrayEquals(new boolean[]{true, false}, accepted);
+    }
+}
@@ -0,0 +1,153 @@
+package ru.artq.practice.socks.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.artq.practice.socks.datasource.ShardRouter;
+import ru.artq.practice.socks.metrics.SocksMetrics;
+import ru.artq.practice.socks.model.BatchResult;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.repository.SocksJdbcRepository;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SocksCsvImporterTest {
+
+    @Mock
+    private SocksJdbcRepository socksJdbcRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private SocksCsvImporter importer;
+
+    private final List<Map<SocksKey, Integer>> flushed = new ArrayList<>();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        importer = new SocksCsvImporter(socksJdbcRepository,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), eventPublisher,
+                new SocksMetrics(meterRegistry),
+                new ShardRouter(List.of(), mock(PlatformTransactionManager.class)), 2);
+        lenient().doAnswer(invocation -> {
+            flushed.add(new HashMap<>(invocation.getArgument(0)));
+            return null;
+        }).when(socksJdbcRepository).upsertIncrements(anyMap());
+    }
+
+    @Test
+    void test1_importCsv_shouldSkipHeaderAndAggregateDuplicates() {
+        String csvData = "color,cottonPart,quantity\nblue,80,10\nblue,80,5\n";
+
+        BatchResult result = importer.importCsv(new ByteArrayInputStream(csvData.getBytes()));
+
+        assertEquals(new BatchResult(2, 2, 0), result);
+        assertEquals(List.of(Map.of(new SocksKey("blue", 80L), 15)), flushed);
+        verify(eventPublisher).publishEvent(any(SocksChangedEvent.class));
+    }
+
+    @Test
+    void test2_importCsv_shouldFlushWhenChunkIsFull() {
+        String csvData = "blue,80,10\ngreen,70,15\nred,90,1\n";
+
+        BatchResult result = importer.importCsv(new ByteArrayInputStream(csvData.getBytes()));
+
+        assertEquals(new BatchResult(3, 3, 0), result);
+        verify(socksJdbcRepository, times(2)).upsertIncrements(anyMap());
+        assertEquals(Map.of(new SocksKey("red", 90L), 1), flushed.get(1));
+    }
+
+    @Test
+    void test3_importCsv_shouldRejectInvalidRowsAndContinue() {
+        String csvData = "blue,80,invalid\ngreen,70\nred,0,5\nblack,80,3\n";
+
+        BatchResult result = importer.importCsv(new ByteArrayInputStream(csvData.getBytes()));
+
+        assertEquals(new BatchResult(4, 1, 3), result);
+        assertEquals(List.of(Map.of(new SocksKey("black", 80L), 3)), flushed);
+        assertEquals(1, meterRegistry.get("socks.import.rows").tag("result", "applied").counter().count());
+        assertEquals(3, meterRegistry.get("socks.import.rows").tag("result", "rejected").counter().count());
+    }
+
+    @Test
+    void test4_importCsv_shouldResumeFromCheckpointOffset() {
+        String csvData = "color,cottonPart,quantity\nblue,80,10\ngreen,70,15\n";
+        byte[] bytes = csvData.getBytes();
+        int offset = csvData.indexOf("green");
+        ImportProgress progress = new ImportProgress(offset, 2, 1, 1, 0);
+        List<Long> checkpoints = new ArrayList<>();
+
+        importer.importCsv(new ByteArrayInputStream(bytes, offset, bytes.length - offset), progress,
+                (chunk, checkpoint) -> {
+                    flushed.add(new HashMap<>(chunk));
+                    checkpoints.add(checkpoint.getByteOffset());
+                },
+                (lineNumber, line, reason) -> {
+                });
+
+        assertEquals(List.of(Map.of(new SocksKey("green", 70L), 15)), flushed);
+        assertEquals(List.of((long) bytes.length), checkpoints);
+        assertEquals(new ImportProgress(bytes.length, 3, 2, 2, 0), progress);
+    }
+
+    @Test
+    void test5_importCsv_shouldKeepFirstRow_whenColorOnlyStartsWithHeaderName() {
+        String csvData = "colorblock,80,10\nblue,80,5\n";
+
+        BatchResult result = importer.importCsv(new ByteArrayInputStream(csvData.getBytes()));
+
+        assertEquals(new BatchResult(2, 2, 0), result);
+        assertEquals(List.of(Map.of(new SocksKey("colorblock", 80L), 10, new SocksKey("blue", 80L), 5)), flushed);
+    }
+
+    @Test
+    void test6_importCsv_shouldFlushByRowsRead_whenKeysRepeat() {
+        String csvData = "blue,80,1\nblue,80,1\nblue,80,1\nblue,80,1\nblue,80,1\n";
+
+        BatchResult result = importer.importCsv(new ByteArrayInputStream(csvData.getBytes()));
+
+        assertEquals(new BatchResult(5, 5, 0), result);
+        assertEquals(List.of(Map.of(new SocksKey("blue", 80L), 2), Map.of(new SocksKey("blue", 80L), 2),
+                Map.of(new SocksKey("blue", 80L), 1)), flushed);
+    }
+
+    @Test
+    void test7_importCsv_shouldCheckpointBeforeRow_whenSumOverflowsInt() {
+        String first = "blue,80," + Integer.MAX_VALUE + "\n";
+        String csvData = first + "blue,80,1\n";
+        ImportProgress progress = new ImportProgress();
+        List<ImportProgress> checkpoints = new ArrayList<>();
+
+        importer.importCsv(new ByteArrayInputStream(csvData.getBytes()), progress,
+                (chunk, checkpoint) -> {
+                    flushed.add(new HashMap<>(chunk));
+                    checkpoints.add(new ImportProgress(checkpoint.getByteOffset(), checkpoint.getLineNumber(),
+                            checkpoint.getRowsRead(), checkpoint.getRowsApplied(), checkpoint.getRowsRejected()));
+                },
+                (lineNumber, line, reason) -> {
+                });
+
+        assertEquals(Map.of(new SocksKey("blue", 80L), Integer.MAX_VALUE), flushed.get(0));
+        assertEquals(new ImportProgress(first.length(), 1, 1, 1, 0), checkpoints.get(0));
+        assertEquals(Map.of(new SocksKey("blue", 80L), 1), flushed.get(1));
+        assertEquals(new ImportProgress(csvData.length(), 2, 2, 2, 0), progress);
+    }
+}
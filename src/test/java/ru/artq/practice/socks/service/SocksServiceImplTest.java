@@ -3,23 +3,53 @@ package ru.artq.practice.socks.service;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.multipart.MultipartFile;
+import ru.artq.practice.socks.datasource.ReplicaLagMonitor;
+import ru.artq.practice.socks.datasource.ReplicaRouting;
+import ru.artq.practice.socks.datasource.ShardRouter;
 import ru.artq.practice.socks.errors.CsvProcessingException;
 import ru.artq.practice.socks.errors.SocksArgumentException;
 import ru.artq.practice.socks.errors.SocksNotFoundException;
+import ru.artq.practice.socks.metrics.SocksMetrics;
+import ru.artq.practice.socks.model.BatchResult;
+import ru.artq.practice.socks.model.BulkMode;
+import ru.artq.practice.socks.model.BulkMovementResult;
+import ru.artq.practice.socks.model.MovementRequest;
+import ru.artq.practice.socks.model.MovementResult;
+import ru.artq.practice.socks.model.MovementStatus;
+import ru.artq.practice.socks.model.MovementType;
+import ru.artq.practice.socks.model.Reservation;
 import ru.artq.practice.socks.model.Socks;
+import ru.artq.practice.socks.model.SocksFilter;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.model.SocksTotal;
+import ru.artq.practice.socks.model.StockChange;
+import ru.artq.practice.socks.model.StockMovement;
+import ru.artq.practice.socks.repository.ColorDictionary;
 import ru.artq.practice.socks.repository.SocksRepository;
+import ru.artq.practice.socks.service.index.InventoryIndex;
+import ru.artq.practice.socks.service.reservation.ReservationStore;
+import ru.artq.practice.socks.service.sampling.SocksSampler;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.function.LongSupplier;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,6 +61,36 @@ class SocksServiceImplTest {
     @Mock
     private MultipartFile file;
 
+    @Mock
+    private SocksCsvImporter socksCsvImporter;
+
+    @Mock
+    private SocksMovementWriter socksMovementWriter;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private InventoryIndex inventoryIndex;
+
+    @Mock
+    private SocksSampler socksSampler;
+
+    @Mock
+    private SocksMetrics socksMetrics;
+
+    @Mock
+    private ColorDictionary colorDictionary;
+
+    @Mock
+    private ReservationStore reservationStore;
+
+    @Mock
+    private ObjectProvider<ReplicaLagMonitor> replicaLagMonitor;
+
+    @Spy
+    private ShardRouter shardRouter = new ShardRouter(List.of(), mock(PlatformTransactionManager.class));
+
     @InjectMocks
     private SocksServiceImpl socksService;
 
@@ -43,63 +103,58 @@ class SocksServiceImplTest {
 
     @Test
     void test1_getSocksQuantity_shouldReturnCorrect() {
-        when(socksRepository.findByFilters("blue", "equal",
-                80L, null, null, "asc"))
-                .thenReturn(List.of(socks));
+        when(socksRepository.sumQuantity(SocksFilter.of("blue", "equal", 80L, null, null)))
+                .thenReturn(new SocksTotal(null, 1, 10));
 
         Integer result = socksService.getSocks("blue", "equal",
                 80L, null, null, "asc");
 
         assertEquals(10, result);
-        verify(socksRepository, times(1))
-                .findByFilters(any(), any(), any(), any(), any(), any());
+        verify(socksRepository, times(1)).sumQuantity(any());
     }
 
     @Test
     void test2_getSocksQuantity_shouldThrowSocksNotFoundException_whenNoSocksFound() {
-        when(socksRepository.findByFilters("blue", "=", 80L, null, null, "asc"))
-                .thenReturn(List.of());
+        when(socksRepository.sumQuantity(SocksFilter.of("blue", "equal", 80L, null, null)))
+                .thenReturn(new SocksTotal(null, 0, 0));
 
         SocksNotFoundException exception = assertThrows(SocksNotFoundException.class, () ->
-                socksService.getSocks("blue", "=", 80L, null, null, "asc"));
+                socksService.getSocks("blue", "equal", 80L, null, null, "asc"));
         assertEquals("На складе носки не найдены", exception.getMessage());
     }
 
     @Test
-    void test3_registerIncome_shouldIncreaseQuantity() {
-        when(socksRepository.findByColorAndCottonPart("blue", 80L))
-                .thenReturn(Optional.of(socks));
-
+    void test3_registerIncome_shouldPassMovementToWriter() {
         socksService.registerIncome("blue", 80L, 5);
 
-        assertEquals(15, socks.getQuantity());
-        verify(socksRepository, times(1)).save(socks);
+        verify(socksMovementWriter, times(1)).income(new SocksKey("blue", 80L), 5);
+        verify(socksRepository, never()).save(any());
     }
 
     @Test
-    void test4_registerOutcome_shouldDecreaseQuantity() {
-        when(socksRepository.findByColorAndCottonPart("blue", 80L))
-                .thenReturn(Optional.of(socks));
+    void test4_registerOutcome_shouldPassMovementToWriter() {
+        when(socksMovementWriter.outcome(new SocksKey("blue", 80L), 5, 0L)).thenReturn(true);
 
         socksService.registerOutcome("blue", 80L, 5);
 
-        assertEquals(5, socks.getQuantity());
-        verify(socksRepository, times(1)).save(socks);
+        verify(socksMovementWriter, times(1)).outcome(new SocksKey("blue", 80L), 5, 0L);
+        verify(socksRepository, never()).save(any());
     }
 
     @Test
     void test5_registerOutcome_shouldThrowSocksNotFoundException_whenNotEnoughSocks() {
-        when(socksRepository.findByColorAndCottonPart("blue", 80L))
-                .thenReturn(Optional.of(socks));
+        when(socksMovementWriter.outcome(new SocksKey("blue", 80L), 15, 0L)).thenReturn(false);
 
         SocksNotFoundException exception = assertThrows(SocksNotFoundException.class, () ->
                 socksService.registerOutcome("blue", 80L, 15));
         assertEquals("Нехватка носков на складе", exception.getMessage());
+        verify(socksMetrics).outcomeRejected();
+        verify(socksMetrics, never()).outcomeApplied();
     }
 
     @Test
     void test6_updateSocks_shouldUpdateSocks() {
-        when(socksRepository.findById(1L))
+        when(socksRepository.findByIdForUpdate(1L))
                 .thenReturn(Optional.of(socks));
 
         socksService.updateSocks(1L, "green", 90L, 20);
@@ -107,12 +162,16 @@ class SocksServiceImplTest {
         assertEquals("green", socks.getColor());
         assertEquals(90L, socks.getCottonPart());
         assertEquals(20, socks.getQuantity());
+        verify(colorDictionary).idOf("green");
         verify(socksRepository, times(1)).save(socks);
+        verify(eventPublisher).publishEvent(new SocksChangedEvent(MovementType.UPDATE, List.of(
+                new StockChange(new SocksKey("blue", 80L), -10),
+                new StockChange(new SocksKey("green", 90L), 20)), false));
     }
 
     @Test
     void test7_updateSocks_shouldThrowSocksNotFoundException_whenSocksNotFound() {
-        when(socksRepository.findById(1L))
+        when(socksRepository.findByIdForUpdate(1L))
                 .thenReturn(Optional.empty());
 
         SocksNotFoundException exception = assertThrows(SocksNotFoundException.class, () ->
@@ -121,23 +180,24 @@ class SocksServiceImplTest {
     }
 
     @Test
-    void test8_batchSocks_shouldProcessCSVFile() throws IOException {
-        String csvData = "blue,80,10\ngreen,70,15";
-        when(file.getInputStream()).thenReturn(new ByteArrayInputStream(csvData.getBytes()));
+    void test8_batchSocks_shouldDelegateToImporter() throws IOException {
+        ByteArrayInputStream inputStream = new ByteArrayInputStream("blue,80,10\ngreen,70,15".getBytes());
+        when(file.getInputStream()).thenReturn(inputStream);
+        when(socksCsvImporter.importCsv(inputStream)).thenReturn(new BatchResult(2, 2, 0));
 
-        socksService.batchSocks(file);
+        BatchResult result = socksService.batchSocks(file);
 
-        verify(socksRepository, times(2)).save(any(Socks.class));
+        assertEquals(2, result.getRowsApplied());
+        verify(socksCsvImporter, times(1)).importCsv(inputStream);
     }
 
     @Test
-    void test9_batchSocks_shouldThrowCsvProcessingException_whenInvalidData() throws IOException {
-        String csvData = "blue,80,invalid\n";
-        when(file.getInputStream()).thenReturn(new ByteArrayInputStream(csvData.getBytes()));
+    void test9_batchSocks_shouldThrowCsvProcessingException_whenFileUnreadable() throws IOException {
+        when(file.getInputStream()).thenThrow(new IOException("closed"));
 
         CsvProcessingException exception = assertThrows(CsvProcessingException.class, () ->
                 socksService.batchSocks(file));
-        assertEquals("Ошибки при обработке файла: ", exception.getMessage());
+        assertEquals("Ошибки при обработке файлов: ", exception.getMessage());
     }
 
     @Test
@@ -146,4 +206,163 @@ class SocksServiceImplTest {
                 socksService.checkParams("", -1L, -5));
         assertEquals("Цвет не может быть пустым", exception.getMessage());
     }
-}
\ No newline at end of file
+
+    @Test
+    void test11_getSocksQuantity_shouldRejectUnknownComparison() {
+        assertThrows(SocksArgumentException.class, () ->
+                socksService.getSocks("blue", "=", 80L, null, null, null));
+        verify(socksRepository, never()).sumQuantity(any());
+    }
+
+    @Test
+    void test12_getSocksTotals_shouldMergeCottonPartsIntoBuckets() {
+        when(socksRepository.sumQuantityByCottonPart(SocksFilter.of(null, null, null, null, null)))
+                .thenReturn(List.of(
+                        new SocksTotal("5", 1, 3),
+                        new SocksTotal("9", 2, 4),
+                        new SocksTotal("40", 1, 7)));
+
+        List<SocksTotal> totals = socksService.getSocksTotals("cotton", 10L, null, null, null, null, null);
+
+        assertEquals(List.of(new SocksTotal("0-9", 3, 7), new SocksTotal("40-49", 1, 7)), totals);
+    }
+
+    @Test
+    void test13_getAnySocks_shouldThrowSocksNotFoundException_whenStockIsEmpty() {
+        when(socksSampler.sample(1, true)).thenReturn(List.of());
+
+        assertThrows(SocksNotFoundException.class, () -> socksService.getAnySocks(true));
+    }
+
+    @Test
+    void test14_getAnySocks_shouldRejectSampleSizeOutOfRange() {
+        assertThrows(SocksArgumentException.class, () -> socksService.getAnySocks(0, false));
+        verify(socksSampler, never()).sample(anyInt(), anyBoolean());
+    }
+
+    @Test
+    void test15_registerMovements_shouldRejectWholeBatch_whenAtomicAndStockIsShort() {
+        List<MovementRequest> requests = List.of(
+                new MovementRequest("income", "blue", 80L, 5),
+                new MovementRequest("outcome", "blue", 80L, 20));
+        when(socksMovementWriter.apply(anyList(), eq(true), any())).thenReturn(new boolean[]{true, false});
+
+        SocksNotFoundException exception = assertThrows(SocksNotFoundException.class, () ->
+                socksService.registerMovements(requests, BulkMode.ATOMIC));
+
+        assertEquals("Нехватка носков на складе для движения #1", exception.getMessage());
+        verify(socksMetrics, never()).incomeApplied();
+    }
+
+    @Test
+    void test16_registerMovements_shouldReportEachItem_whenPerItem() {
+        List<MovementRequest> requests = List.of(
+                new MovementRequest("income", "blue", 80L, 5),
+                new MovementRequest("transfer", "blue", 80L, 5),
+                new MovementRequest("OUTCOME", "red", 50L, 20));
+        when(socksMovementWriter.apply(eq(List.of(
+                new StockMovement(MovementType.INCOME, new SocksKey("blue", 80L), 5),
+                new StockMovement(MovementType.OUTCOME, new SocksKey("red", 50L), 20))), eq(false), any()))
+                .thenReturn(new boolean[]{true, false});
+
+        BulkMovementResult result = socksService.registerMovements(requests, BulkMode.PER_ITEM);
+
+        assertEquals(1, result.getApplied());
+        assertEquals(2, result.getRejected());
+        assertEquals(List.of(MovementStatus.APPLIED, MovementStatus.INVALID, MovementStatus.REJECTED),
+                result.getItems().stream().map(MovementResult::getStatus).toList());
+    }
+
+    @Test
+    void test17_registerMovements_shouldThrowSocksArgumentException_whenAtomicAndItemIsInvalid() {
+        List<MovementRequest> requests = List.of(new MovementRequest("income", "blue", 120L, 5));
+
+        SocksArgumentException exception = assertThrows(SocksArgumentException.class, () ->
+                socksService.registerMovements(requests, BulkMode.ATOMIC));
+
+        assertEquals("Движение #0: Часть хлопка не может быть больше 100", exception.getMessage());
+        verifyNoInteractions(socksMovementWriter);
+    }
+
+    @Test
+    void test18_getSocksQuantity_shouldSubtractReservedQuantity() {
+        SocksFilter filter = SocksFilter.of("blue", "equal", 80L, null, null);
+        when(socksRepository.sumQuantity(filter)).thenReturn(new SocksTotal(null, 1, 10));
+        when(reservationStore.reserved(filter)).thenReturn(4L);
+
+        assertEquals(6, socksService.getSocks("blue", "equal", 80L, null, null, null));
+    }
+
+    @Test
+    void test19_confirmReservation_shouldSettleHold_whenOutcomeRejected() {
+        Reservation reservation = new Reservation(UUID.randomUUID(), "blue", 80L, 5, Instant.now());
+        when(reservationStore.claim(reservation.getId())).thenReturn(reservation);
+        when(reservationStore.reserved(new SocksKey("blue", 80L))).thenReturn(5L);
+        when(socksMovementWriter.outcome(new SocksKey("blue", 80L), 5, 0L)).thenReturn(false);
+
+        assertThrows(SocksNotFoundException.class, () -> socksService.confirmReservation(reservation.getId()));
+        verify(reservationStore).settle(reservation);
+    }
+
+    @Test
+    void test20_registerOutcome_shouldKeepReservedQuantity() {
+        when(reservationStore.reserved(new SocksKey("blue", 80L))).thenReturn(7L);
+        when(socksMovementWriter.outcome(new SocksKey("blue", 80L), 5, 7L)).thenReturn(false);
+
+        assertThrows(SocksNotFoundException.class, () -> socksService.registerOutcome("blue", 80L, 5));
+        verify(socksMetrics).outcomeRejected();
+    }
+
+    @Test
+    void test21_confirmReservation_shouldSkipOnlyItsOwnHold() {
+        Reservation reservation = new Reservation(UUID.randomUUID(), "blue", 80L, 5, Instant.now());
+        when(reservationStore.claim(reservation.getId())).thenReturn(reservation);
+        when(reservationStore.reserved(new SocksKey("blue", 80L))).thenReturn(8L);
+        when(socksMovementWriter.outcome(new SocksKey("blue", 80L), 5, 3L)).thenReturn(true);
+
+        socksService.confirmReservation(reservation.getId());
+
+        verify(reservationStore).settle(reservation);
+    }
+
+    @Test
+    void test22_getSocksQuantity_shouldMarkReadStale_whenReplicaIsBehindPrimary() throws Exception {
+        ReplicaLagMonitor monitor = mock(ReplicaLagMonitor.class);
+        when(replicaLagMonitor.getIfAvailable()).thenReturn(monitor);
+        when(monitor.currentPrimaryLsn()).thenReturn(0x200L);
+        when(socksRepository.findReplayedLsn()).thenReturn("0/100");
+        when(socksRepository.sumQuantity(any())).thenReturn(new SocksTotal(null, 1, 10));
+
+        assertEquals(10, socksService.getSocks("blue", "equal", 80L, null, null, null));
+        assertTrue(ReplicaRouting.takeStaleRead());
+    }
+
+    @Test
+    void test23_reserveSocks_shouldTakeStockFromMovementWriter() {
+        SocksKey key = new SocksKey("blue", 80L);
+        Reservation reservation = new Reservation(UUID.randomUUID(), "blue", 80L, 5, Instant.now());
+        when(socksMovementWriter.quantity(key)).thenReturn(12L);
+        when(reservationStore.reserve(eq(key), eq(5), any(LongSupplier.class), isNull())).thenAnswer(invocation -> {
+            assertEquals(12L, invocation.<LongSupplier>getArgument(2).getAsLong());
+            return reservation;
+        });
+
+        assertEquals(reservation, socksService.reserveSocks("blue", 80L, 5, null));
+        verify(socksRepository, never()).findByColorAndCottonPart(any(), any());
+    }
+
+    @Test
+    void test24_registerOutcome_shouldAnnounceOutcomeBeforeReadingHolds() {
+        SocksKey key = new SocksKey("blue", 80L);
+        when(reservationStore.reserved(key)).thenReturn(2L);
+        when(socksMovementWriter.outcome(key, 5, 2L)).thenReturn(true);
+
+        socksService.registerOutcome("blue", 80L, 5);
+
+        InOrder inOrder = inOrder(reservationStore, socksMovementWriter);
+        inOrder.verify(reservationStore).beginOutcome(key);
+        inOrder.verify(reservationStore).reserved(key);
+        inOrder.verify(socksMovementWriter).outcome(key, 5, 2L);
+        inOrder.verify(reservationStore).endOutcome(key);
+    }
+}
@@ -0,0 +1,71 @@
+package ru.artq.practice.socks.service.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.artq.practice.socks.datasource.ShardRouter;
+import ru.artq.practice.socks.model.ExportFormat;
+import ru.artq.practice.socks.model.Socks;
+import ru.artq.practice.socks.model.SocksFilter;
+import ru.artq.practice.socks.repository.SocksJdbcRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+@ExtendWith(MockitoExtension.class)
+class SocksExporterTest {
+    private static final SocksFilter FILTER = SocksFilter.of(null, null, null, null, null);
+
+    @Mock
+    private SocksJdbcRepository socksJdbcRepository;
+
+    private SocksExporter exporter;
+
+    @BeforeEach
+    void setUp() {
+        exporter = new SocksExporter(socksJdbcRepository, new ObjectMapper(),
+                new ShardRouter(List.of(), mock(PlatformTransactionManager.class)));
+        doAnswer(invocation -> {
+            Consumer<Socks> consumer = invocation.getArgument(1);
+            consumer.accept(new Socks(1L, "red", 90L, 40));
+            consumer.accept(new Socks(2L, "navy, dark", 80L, 5));
+            return null;
+        }).when(socksJdbcRepository).forEachSocks(eq(FILTER), any());
+    }
+
+    @Test
+    void test1_export_shouldWriteCsvInImportLayout() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = exporter.export(FILTER, ExportFormat.CSV, out);
+
+        assertEquals(2, rows);
+        assertEquals("color,cottonPart,quantity\nred,90,40\n\"navy, dark\",80,5\n",
+                out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void test2_export_shouldWriteOneJsonObjectPerLine() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = exporter.export(FILTER, ExportFormat.NDJSON, out);
+
+        assertEquals(2, rows);
+        assertEquals("{\"id\":1,\"color\":\"red\",\"cottonPart\":90,\"quantity\":40}\n"
+                        + "{\"id\":2,\"color\":\"navy, dark\",\"cottonPart\":80,\"quantity\":5}\n",
+                out.toString(StandardCharsets.UTF_8));
+    }
+}
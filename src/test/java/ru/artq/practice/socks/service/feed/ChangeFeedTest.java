@@ -0,0 +1,110 @@
+package ru.artq.practice.socks.service.feed;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.artq.practice.socks.errors.SocksArgumentException;
+import ru.artq.practice.socks.model.ChangeFeedEntry;
+import ru.artq.practice.socks.model.ChangeFeedPage;
+import ru.artq.practice.socks.model.MovementType;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.repository.ChangeLogRepository;
+import ru.artq.practice.socks.service.SocksChangedEvent;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChangeFeedTest {
+    private static final SocksKey BLUE = new SocksKey("blue", 80L);
+
+    @Mock
+    private ChangeLogRepository changeLogRepository;
+
+    private ChangeFeed feed;
+
+    private ChangeFeed start(long lastSeq, Long cleanStop) {
+        when(changeLogRepository.findLastSeq("node")).thenReturn(lastSeq);
+        when(changeLogRepository.takeCleanStop("node")).thenReturn(cleanStop);
+        feed = new ChangeFeed(changeLogRepository, "node", 4, 60_000, Duration.ofHours(24));
+        feed.start();
+        return feed;
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        feed.stop();
+    }
+
+    @Test
+    void test1_read_shouldReturnBufferedChangesAfterSince() {
+        start(10, 10L);
+        feed.onSocksChanged(SocksChangedEvent.of(MovementType.INCOME, BLUE, 5));
+        feed.onSocksChanged(SocksChangedEvent.of(MovementType.OUTCOME, BLUE, -3));
+
+        ChangeFeedPage page = feed.read(11, 100);
+
+        assertFalse(page.isResync());
+        assertEquals(12, page.getLastSeq());
+        assertEquals(List.of(-3), page.getChanges().stream().map(ChangeFeedEntry::getDelta).toList());
+        verify(changeLogRepository, never()).findAfter(anyString(), anyLong(), anyInt());
+    }
+
+    @Test
+    void test2_read_shouldFallBackToLog_whenSinceLeftBuffer() {
+        start(0, 0L);
+        for (int i = 0; i < 6; i++) {
+            feed.onSocksChanged(SocksChangedEvent.of(MovementType.INCOME, BLUE, 1));
+        }
+        ChangeFeedEntry logged = new ChangeFeedEntry(2, Instant.now(), MovementType.INCOME, "blue", 80L, 1);
+        when(changeLogRepository.findAfter("node", 1, 1)).thenReturn(List.of(logged));
+
+        ChangeFeedPage page = feed.read(1, 1);
+
+        assertFalse(page.isResync());
+        assertEquals(2, page.getLastSeq());
+        assertEquals(List.of(logged), page.getChanges());
+    }
+
+    @Test
+    void test3_start_shouldSkipNumbers_afterUncleanStop() {
+        start(10, null);
+
+        assertEquals(15, feed.lastSeq());
+        ChangeFeedPage page = feed.read(12, 100);
+        assertTrue(page.isResync());
+        assertEquals(15, page.getLastSeq());
+    }
+
+    @Test
+    void test4_await_shouldReturnEmptyPage_whenNothingChanged() throws InterruptedException {
+        start(3, 3L);
+
+        ChangeFeedPage page = feed.await(3, Duration.ofMillis(10), 100);
+
+        assertFalse(page.isResync());
+        assertEquals(3, page.getLastSeq());
+        assertTrue(page.getChanges().isEmpty());
+    }
+
+    @Test
+    void test5_read_shouldRequestResync_whenCursorIssuedByAnotherNode() {
+        start(10, 10L);
+        feed.onSocksChanged(SocksChangedEvent.of(MovementType.INCOME, BLUE, 5));
+
+        ChangeFeedPage own = feed.read("node:10", 100);
+        ChangeFeedPage foreign = feed.read("other:10", 100);
+
+        assertFalse(own.isResync());
+        assertEquals("node:11", own.getCursor());
+        assertTrue(foreign.isResync());
+        assertEquals("node:11", foreign.getCursor());
+        assertThrows(SocksArgumentException.class, () -> feed.read("10", 100));
+    }
+}
@@ -0,0 +1,119 @@
+package ru.artq.practice.socks.service.index;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.artq.practice.socks.cache.InvalidationBus;
+import ru.artq.practice.socks.datasource.ShardRouter;
+import ru.artq.practice.socks.model.MovementType;
+import ru.artq.practice.socks.model.SocksFilter;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.model.SocksTotal;
+import ru.artq.practice.socks.repository.SocksJdbcRepository;
+import ru.artq.practice.socks.service.SocksChangedEvent;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class InventoryIndexTest {
+
+    @Mock
+    private SocksJdbcRepository socksJdbcRepository;
+    @Mock
+    private InvalidationBus invalidationBus;
+
+    private InventoryIndex inventoryIndex;
+
+    @BeforeEach
+    void setUp() {
+        inventoryIndex = new InventoryIndex(socksJdbcRepository,
+                new ShardRouter(List.of(), mock(PlatformTransactionManager.class)), invalidationBus, true, 60_000, 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        inventoryIndex.stop();
+    }
+
+    @Test
+    void test1_sumQuantity_shouldAnswerFiltersFromBootstrappedRows() {
+        stockRows(new SocksKey("red", 10L), 5, new SocksKey("red", 50L), 7,
+                new SocksKey("blue", 50L), 3, new SocksKey("red", 80L), 0);
+
+        assertTrue(inventoryIndex.reconcile());
+
+        assertTrue(inventoryIndex.isReady());
+        assertEquals(new SocksTotal(null, 3, 12), inventoryIndex.sumQuantity(SocksFilter.of("red", null, null, null, null)));
+        assertEquals(new SocksTotal(null, 2, 10), inventoryIndex.sumQuantity(SocksFilter.of(null, "equal", 50L, null, null)));
+        assertEquals(new SocksTotal(null, 2, 7), inventoryIndex.sumQuantity(SocksFilter.of("red", "moreThen", 10L, null, null)));
+        assertEquals(new SocksTotal(null, 1, 5), inventoryIndex.sumQuantity(SocksFilter.of("red", "lessThan", 50L, null, null)));
+        assertEquals(new SocksTotal(null, 2, 12), inventoryIndex.sumQuantity(SocksFilter.of("red", null, null, 5L, 60L)));
+        assertEquals(new SocksTotal(null, 0, 0), inventoryIndex.sumQuantity(SocksFilter.of("green", null, null, null, null)));
+        assertEquals(new SocksTotal(null, 0, 0), inventoryIndex.sumQuantity(SocksFilter.of(null, null, null, 60L, 20L)));
+    }
+
+    @Test
+    void test2_onSocksChanged_shouldApplyCommittedMovements() {
+        stockRows(new SocksKey("red", 10L), 5);
+        inventoryIndex.reconcile();
+
+        inventoryIndex.onSocksChanged(SocksChangedEvent.of(MovementType.INCOME, new SocksKey("red", 20L), 4));
+        inventoryIndex.onSocksChanged(SocksChangedEvent.of(MovementType.OUTCOME, new SocksKey("red", 10L), -5));
+
+        assertEquals(new SocksTotal(null, 2, 4), inventoryIndex.sumQuantity(SocksFilter.of("red", null, null, null, null)));
+    }
+
+    @Test
+    void test3_reconcile_shouldDisableIndexForCottonPartOutOfRange() {
+        stockRows(new SocksKey("red", 150L), 5);
+
+        inventoryIndex.reconcile();
+
+        assertFalse(inventoryIndex.isReady());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void test4_remoteInvalidation_shouldReconcileWithoutWaitingForSchedule() {
+        stockRows(new SocksKey("red", 10L), 5);
+        inventoryIndex.start();
+        verify(socksJdbcRepository, timeout(1000).times(1)).forEachStock(any());
+        ArgumentCaptor<Consumer<Set<String>>> subscriber = ArgumentCaptor.forClass(Consumer.class);
+        verify(invalidationBus).subscribeRemote(subscriber.capture());
+
+        stockRows(new SocksKey("red", 10L), 9);
+        subscriber.getValue().accept(Set.of("red"));
+        subscriber.getValue().accept(Set.of("red"));
+
+        verify(socksJdbcRepository, after(500).times(2)).forEachStock(any());
+        assertEquals(new SocksTotal(null, 1, 9), inventoryIndex.sumQuantity(SocksFilter.of("red", null, null, null, null)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stockRows(Object... keysAndQuantities) {
+        doAnswer(invocation -> {
+            ObjIntConsumer<SocksKey> consumer = invocation.getArgument(0);
+            for (int i = 0; i < keysAndQuantities.length; i += 2) {
+                consumer.accept((SocksKey) keysAndQuantities[i], (Integer) keysAndQuantities[i + 1]);
+            }
+            return null;
+        }).when(socksJdbcRepository).forEachStock(any());
+    }
+}
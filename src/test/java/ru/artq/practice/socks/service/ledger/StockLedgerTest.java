@@ -0,0 +1,85 @@
+package ru.artq.practice.socks.service.ledger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.artq.practice.socks.datasource.ShardRouter;
+import ru.artq.practice.socks.errors.SocksArgumentException;
+import ru.artq.practice.socks.model.SocksFilter;
+import ru.artq.practice.socks.repository.LedgerRepository;
+import ru.artq.practice.socks.repository.LedgerRepository.SnapshotRun;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StockLedgerTest {
+    private static final Instant NOW = Instant.parse("2026-10-18T12:00:00Z");
+
+    @Mock
+    private LedgerRepository ledgerRepository;
+
+    private StockLedger ledger(int retentionMonths) {
+        return new StockLedger(ledgerRepository, new ShardRouter(List.of(), mock(PlatformTransactionManager.class)),
+                Clock.fixed(NOW, ZoneOffset.UTC), 3_600_000, 60_000, 1, retentionMonths);
+    }
+
+    @Test
+    void test1_maintain_shouldCreateMissingPartitionsAheadAndSnapshotBehindLag() {
+        when(ledgerRepository.findPartitions()).thenReturn(List.of("socks_ledger_p202610"));
+
+        ledger(0).maintain();
+
+        verify(ledgerRepository, never()).createPartition(eq("socks_ledger_p202610"), any(), any());
+        verify(ledgerRepository).createPartition("socks_ledger_p202611",
+                Instant.parse("2026-11-01T00:00:00Z"), Instant.parse("2026-12-01T00:00:00Z"));
+        verify(ledgerRepository).snapshotLedger(NOW.minusSeconds(60));
+        verify(ledgerRepository, never()).detachPartition(anyString(), any());
+    }
+
+    @Test
+    void test2_maintain_shouldDetachOnlyExpiredPartitionsCoveredBySnapshot() {
+        when(ledgerRepository.findLatestSnapshot(NOW))
+                .thenReturn(Optional.of(new SnapshotRun(7, Instant.parse("2026-08-15T00:00:00Z"))));
+        when(ledgerRepository.findPartitions())
+                .thenReturn(List.of("socks_ledger_p202606", "socks_ledger_p202607", "socks_ledger_p202608"));
+
+        ledger(2).maintain();
+
+        verify(ledgerRepository).detachPartition("socks_ledger_p202606", Instant.parse("2026-07-01T00:00:00Z"));
+        verify(ledgerRepository).detachPartition("socks_ledger_p202607", Instant.parse("2026-08-01T00:00:00Z"));
+        verify(ledgerRepository, never()).detachPartition(eq("socks_ledger_p202608"), any());
+    }
+
+    @Test
+    void test3_sumQuantityAsOf_shouldRejectMomentBeforeArchivedHistory() {
+        Instant asOf = Instant.parse("2026-05-01T00:00:00Z");
+        when(ledgerRepository.findLatestSnapshot(asOf))
+                .thenReturn(Optional.of(new SnapshotRun(1, Instant.parse("2026-04-30T00:00:00Z"))));
+        when(ledgerRepository.findArchivedUntil()).thenReturn(Optional.of(Instant.parse("2026-08-01T00:00:00Z")));
+
+        assertThrows(SocksArgumentException.class, () ->
+                ledger(2).sumQuantityAsOf(SocksFilter.of(null, null, null, null, null), asOf));
+        verify(ledgerRepository, never()).sumQuantityAsOf(any(), any(), any());
+    }
+
+    @Test
+    void test4_partitionMonth_shouldIgnoreForeignTables() {
+        assertEquals(YearMonth.of(2026, 10), StockLedger.partitionMonth("socks_ledger_p202610"));
+        assertNull(StockLedger.partitionMonth("socks_ledger_default"));
+        verify(ledgerRepository, never()).createPartition(anyString(), any(), any());
+    }
+}
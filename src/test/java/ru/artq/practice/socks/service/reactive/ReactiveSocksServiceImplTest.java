@@ -0,0 +1,150 @@
+package ru.artq.practice.socks.service.reactive;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import ru.artq.practice.socks.datasource.ShardRouter;
+import ru.artq.practice.socks.errors.SocksArgumentException;
+import ru.artq.practice.socks.errors.SocksNotFoundException;
+import ru.artq.practice.socks.metrics.SocksMetrics;
+import ru.artq.practice.socks.model.MovementType;
+import ru.artq.practice.socks.model.SocksFilter;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.model.SocksTotal;
+import ru.artq.practice.socks.repository.ReactiveSocksRepository;
+import ru.artq.practice.socks.service.SocksChangedEvent;
+import ru.artq.practice.socks.service.SocksMovementWriter;
+import ru.artq.practice.socks.service.index.InventoryIndex;
+import ru.artq.practice.socks.service.reservation.ReservationStore;
+import ru.artq.practice.socks.service.sampling.SocksSampler;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveSocksServiceImplTest {
+
+    @Mock
+    private ReactiveSocksRepository reactiveSocksRepository;
+
+    @Mock
+    private ReactiveRedisTemplate<String, Object> reactiveRedisTemplate;
+
+    @Mock
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private SocksMovementWriter socksMovementWriter;
+
+    @Mock
+    private InventoryIndex inventoryIndex;
+
+    @Mock
+    private SocksSampler socksSampler;
+
+    @Mock
+    private SocksMetrics socksMetrics;
+
+    @Mock
+    private ReservationStore reservationStore;
+
+    @Mock
+    private ShardRouter shardRouter;
+
+    private ReactiveSocksServiceImpl reactiveSocksService;
+
+    @BeforeEach
+    void setUp() {
+        reactiveSocksService = new ReactiveSocksServiceImpl(reactiveSocksRepository, reactiveRedisTemplate,
+                reactiveStringRedisTemplate, transactionalOperator, eventPublisher, socksMovementWriter,
+                inventoryIndex, socksSampler, socksMetrics, reservationStore, shardRouter, false, 1000);
+        lenient().when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void test1_registerIncome_shouldRejectInvalidParamsLikeBlockingApi() {
+        StepVerifier.create(reactiveSocksService.registerIncome("", 80L, 5))
+                .expectErrorMessage("Цвет не может быть пустым")
+                .verify();
+        verifyNoInteractions(reactiveSocksRepository);
+    }
+
+    @Test
+    void test2_registerOutcome_shouldFailWhenNotEnoughSocks() {
+        when(reactiveSocksRepository.decrementQuantity(new SocksKey("blue", 80L), 15, 0L)).thenReturn(Mono.just(0L));
+
+        StepVerifier.create(reactiveSocksService.registerOutcome("blue", 80L, 15))
+                .expectError(SocksNotFoundException.class)
+                .verify();
+        verify(socksMetrics).outcomeRejected();
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void test3_registerIncome_shouldRecordLedgerInTransactionAndPublishEventAfterCommit() {
+        SocksChangedEvent event = SocksChangedEvent.of(MovementType.INCOME, new SocksKey("blue", 80L), 5);
+        when(reactiveSocksRepository.incrementQuantity(new SocksKey("blue", 80L), 5)).thenReturn(Mono.just(1L));
+        when(reactiveSocksRepository.appendLedger(MovementType.INCOME, event.getChanges())).thenReturn(Mono.empty());
+
+        StepVerifier.create(reactiveSocksService.registerIncome("blue", 80L, 5)).verifyComplete();
+
+        verify(eventPublisher).publishEvent(event.recorded());
+    }
+
+    @Test
+    void test4_getSocks_shouldUseInventoryIndexWhenReady() {
+        SocksFilter filter = SocksFilter.of("blue", null, null, 10L, 90L);
+        when(inventoryIndex.isReady()).thenReturn(true);
+        when(inventoryIndex.sumQuantity(filter)).thenReturn(new SocksTotal(null, 2, 25));
+
+        StepVerifier.create(reactiveSocksService.getSocks("blue", null, null, 10L, 90L))
+                .expectNext(25)
+                .verifyComplete();
+        verifyNoInteractions(reactiveSocksRepository, reactiveStringRedisTemplate);
+    }
+
+    @Test
+    void test5_getSocks_shouldRejectUnknownComparison() {
+        StepVerifier.create(reactiveSocksService.getSocks("blue", "=", 80L, null, null))
+                .expectError(SocksArgumentException.class)
+                .verify();
+    }
+
+    @Test
+    void test6_registerOutcome_shouldReject_whenInventoryIsSharded() {
+        when(shardRouter.isSharded()).thenReturn(true);
+
+        StepVerifier.create(reactiveSocksService.registerOutcome("blue", 80L, 5))
+                .expectError(SocksArgumentException.class)
+                .verify();
+        verifyNoInteractions(reactiveSocksRepository, socksMovementWriter);
+    }
+
+    @Test
+    void test7_getSocks_shouldSubtractReservationsAndBypassCache_whenColorIsHeld() {
+        SocksFilter filter = SocksFilter.of("blue", null, null, null, null);
+        when(reservationStore.holds("blue")).thenReturn(true);
+        when(reservationStore.reserved(filter)).thenReturn(4L);
+        when(reactiveSocksRepository.sumQuantity(filter)).thenReturn(Mono.just(new SocksTotal(null, 1, 10)));
+
+        StepVerifier.create(reactiveSocksService.getSocks("blue", null, null, null, null))
+                .expectNext(6)
+                .verifyComplete();
+        verifyNoInteractions(reactiveStringRedisTemplate, reactiveRedisTemplate);
+    }
+}
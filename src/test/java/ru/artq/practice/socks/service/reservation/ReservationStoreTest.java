@@ -0,0 +1,139 @@
+package ru.artq.practice.socks.service.reservation;
+
+import org.junit.jupiter.api.Test;
+import ru.artq.practice.socks.errors.SocksArgumentException;
+import ru.artq.practice.socks.errors.SocksNotFoundException;
+import ru.artq.practice.socks.model.Reservation;
+import ru.artq.practice.socks.model.SocksFilter;
+import ru.artq.practice.socks.model.SocksKey;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReservationStoreTest {
+    private static final SocksKey BLUE = new SocksKey("blue", 80L);
+    private static final SocksFilter ALL_BLUE = SocksFilter.of("blue", null, null, null, null);
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2026-10-18T12:00:00Z"));
+    private final ReservationStore store = new ReservationStore("node-1", clock, 100, 64, Duration.ofMinutes(10), Duration.ofHours(1));
+
+    @Test
+    void test1_reserve_shouldRejectQuantityAboveUnreservedStock() {
+        store.reserve(BLUE, 7, () -> 10, null);
+
+        assertThrows(SocksNotFoundException.class, () -> store.reserve(BLUE, 4, () -> 10, null));
+        store.reserve(BLUE, 3, () -> 10, null);
+        assertEquals(10, store.reserved(ALL_BLUE));
+        assertEquals(0, store.reserved(SocksFilter.of("blue", "moreThen", 80L, null, null)));
+    }
+
+    @Test
+    void test2_release_shouldReturnQuantityOnce() {
+        Reservation reservation = store.reserve(BLUE, 5, () -> 10, null);
+
+        store.release(reservation.getId());
+
+        assertEquals(0, store.reserved(ALL_BLUE));
+        assertFalse(store.holds("blue"));
+        assertThrows(SocksNotFoundException.class, () -> store.release(reservation.getId()));
+    }
+
+    @Test
+    void test3_expire_shouldReleaseHoldsPastTtl() {
+        Reservation shortHold = store.reserve(BLUE, 2, () -> 10, Duration.ofSeconds(5));
+        store.reserve(BLUE, 3, () -> 10, Duration.ofSeconds(30));
+        long version = store.version();
+
+        clock.advance(Duration.ofSeconds(6));
+        store.expire();
+
+        assertEquals(3, store.reserved(ALL_BLUE));
+        assertTrue(store.version() > version);
+        assertThrows(SocksNotFoundException.class, () -> store.claim(shortHold.getId()));
+    }
+
+    @Test
+    void test4_claim_shouldKeepHoldFromExpiringUntilSettled() {
+        Reservation reservation = store.reserve(BLUE, 4, () -> 10, Duration.ofSeconds(1));
+
+        Reservation claimed = store.claim(reservation.getId());
+        clock.advance(Duration.ofSeconds(2));
+        store.expire();
+
+        assertEquals(4, store.reserved(ALL_BLUE));
+        store.settle(claimed);
+        assertEquals(0, store.reserved(ALL_BLUE));
+    }
+
+    @Test
+    void test5_reserve_shouldRejectTtlAboveMaximum() {
+        assertThrows(SocksArgumentException.class, () -> store.reserve(BLUE, 1, () -> 10, Duration.ofHours(2)));
+        assertEquals(0, store.reserved(ALL_BLUE));
+    }
+
+    @Test
+    void test6_reserve_shouldWaitForOutcomeInProgress() throws Exception {
+        store.beginOutcome(BLUE);
+        CompletableFuture<Reservation> reservation = CompletableFuture.supplyAsync(
+                () -> store.reserve(BLUE, 4, () -> 6, null));
+
+        assertThrows(TimeoutException.class, () -> reservation.get(200, TimeUnit.MILLISECONDS));
+        store.endOutcome(BLUE);
+        assertEquals(4, reservation.get(5, TimeUnit.SECONDS).getQuantity());
+    }
+
+    @Test
+    void test7_reserve_shouldRecheckStock_whenOutcomeStartsDuringCheck() {
+        AtomicInteger reads = new AtomicInteger();
+        LongSupplier stock = () -> {
+            if (reads.getAndIncrement() == 0) {
+                // отпуск прочитал сумму резервов без этого резерва и списал остаток
+                store.beginOutcome(BLUE);
+                store.endOutcome(BLUE);
+                return 10;
+            }
+            return 3;
+        };
+
+        assertThrows(SocksNotFoundException.class, () -> store.reserve(BLUE, 5, stock, null));
+        assertEquals(2, reads.get());
+        assertEquals(0, store.reserved(ALL_BLUE));
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
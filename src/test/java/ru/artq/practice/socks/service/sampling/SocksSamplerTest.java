@@ -0,0 +1,96 @@
+package ru.artq.practice.socks.service.sampling;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.artq.practice.socks.datasource.ShardRouter;
+import ru.artq.practice.socks.model.Socks;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.repository.SocksJdbcRepository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SocksSamplerTest {
+
+    @Mock
+    private SocksJdbcRepository socksJdbcRepository;
+
+    @Spy
+    private ShardRouter shardRouter = new ShardRouter(List.of(), mock(PlatformTransactionManager.class));
+
+    private SocksSampler socksSampler;
+
+    private final Map<SocksKey, Socks> rows = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        socksSampler = new SocksSampler(socksJdbcRepository, shardRouter, 60_000);
+        rows.put(new SocksKey("red", 10L), new Socks(1L, "red", 10L, 0));
+        rows.put(new SocksKey("blue", 20L), new Socks(2L, "blue", 20L, 30));
+        doAnswer(invocation -> {
+            ObjIntConsumer<SocksKey> consumer = invocation.getArgument(0);
+            rows.forEach((key, socks) -> consumer.accept(key, socks.getQuantity()));
+            return null;
+        }).when(socksJdbcRepository).forEachStock(any());
+        when(socksJdbcRepository.findByKeys(any())).thenAnswer(invocation -> {
+            Collection<SocksKey> keys = invocation.getArgument(0);
+            Map<SocksKey, Socks> found = new HashMap<>();
+            keys.stream().filter(rows::containsKey).forEach(key -> found.put(key, rows.get(key)));
+            return found;
+        });
+    }
+
+    @Test
+    void test1_sample_shouldReturnRequestedNumberOfRowsInOneQuery() {
+        List<Socks> sample = socksSampler.sample(50, false);
+
+        assertEquals(50, sample.size());
+        assertTrue(rows.values().containsAll(sample));
+        verify(socksJdbcRepository, times(1)).findByKeys(any());
+    }
+
+    @Test
+    void test2_sample_shouldNeverPickEmptyPositionsWhenWeighted() {
+        List<Socks> sample = socksSampler.sample(100, true);
+
+        assertEquals(100, sample.size());
+        assertTrue(sample.stream().allMatch(socks -> socks.getId() == 2L));
+    }
+
+    @Test
+    void test3_sample_shouldDropRowsThatNoLongerExist() {
+        socksSampler.sample(1, false);
+        rows.remove(new SocksKey("red", 10L));
+
+        List<Socks> sample = socksSampler.sample(20, false);
+
+        assertEquals(20, sample.size());
+        assertTrue(sample.stream().allMatch(socks -> socks.getId() == 2L));
+    }
+
+    @Test
+    void test4_reload_shouldPickUpRowsWrittenByOtherNodes() {
+        socksSampler.sample(1, false);
+        rows.remove(new SocksKey("blue", 20L));
+        rows.put(new SocksKey("green", 30L), new Socks(3L, "green", 30L, 5));
+
+        assertTrue(socksSampler.reload());
+
+        List<Socks> sample = socksSampler.sample(20, true);
+        assertEquals(20, sample.size());
+        assertTrue(sample.stream().allMatch(socks -> socks.getColor().equals("green")));
+    }
+}
@@ -0,0 +1,76 @@
+package ru.artq.practice.socks.service.writebehind;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.artq.practice.socks.model.SocksKey;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void test1_recover_shouldReturnSyncedRecordsInOrder() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(dir);
+        wal.recover(0);
+        wal.sync(wal.append(new SocksKey("black", 80L), 5));
+        wal.sync(wal.append(new SocksKey("чёрный", 80L), -3));
+        wal.close();
+
+        WriteAheadLog.Recovery recovery = new WriteAheadLog(dir).recover(0);
+
+        assertEquals(List.of(
+                new WalRecord(1, new SocksKey("black", 80L), 5),
+                new WalRecord(2, new SocksKey("чёрный", 80L), -3)), recovery.getRecords());
+    }
+
+    @Test
+    void test2_recover_shouldContinueSequenceAfterCheckpoint() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(dir);
+        WriteAheadLog.Recovery recovery = wal.recover(41);
+
+        assertTrue(recovery.getRecords().isEmpty());
+        assertEquals(42, wal.append(new SocksKey("black", 80L), 1));
+        wal.close();
+    }
+
+    @Test
+    void test3_rotate_shouldReturnClosedSegmentOnlyWhenWritten() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(dir);
+        wal.recover(0);
+        assertTrue(wal.rotate().isEmpty());
+
+        wal.append(new SocksKey("black", 80L), 1);
+        List<Path> closed = wal.rotate();
+        wal.delete(closed);
+        wal.close();
+
+        assertEquals(1, closed.size());
+        assertTrue(new WriteAheadLog(dir).recover(1).getRecords().isEmpty());
+    }
+
+    @Test
+    void test4_recover_shouldDropTornTail() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(dir);
+        wal.recover(0);
+        wal.sync(wal.append(new SocksKey("black", 80L), 7));
+        wal.close();
+        try (var files = Files.list(dir)) {
+            Path segment = files.findFirst().orElseThrow();
+            Files.write(segment, new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+        }
+
+        WriteAheadLog.Recovery recovery = new WriteAheadLog(dir).recover(0);
+
+        assertEquals(List.of(new WalRecord(1, new SocksKey("black", 80L), 7)), recovery.getRecords());
+    }
+}
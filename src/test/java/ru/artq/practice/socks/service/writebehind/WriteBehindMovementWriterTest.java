@@ -0,0 +1,227 @@
+package ru.artq.practice.socks.service.writebehind;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.artq.practice.socks.datasource.ShardRouter;
+import ru.artq.practice.socks.metrics.SocksMetrics;
+import ru.artq.practice.socks.model.MovementType;
+import ru.artq.practice.socks.model.Socks;
+import ru.artq.practice.socks.model.SocksKey;
+import ru.artq.practice.socks.model.StockChange;
+import ru.artq.practice.socks.model.WalCheckpoint;
+import ru.artq.practice.socks.repository.SocksJdbcRepository;
+import ru.artq.practice.socks.repository.SocksRepository;
+import ru.artq.practice.socks.repository.WalCheckpointRepository;
+import ru.artq.practice.socks.service.SocksChangedEvent;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WriteBehindMovementWriterTest {
+    private static final SocksKey BLUE = new SocksKey("blue", 80L);
+    private static final SocksKey RED = new SocksKey("red", 50L);
+
+    @TempDir
+    Path walDir;
+
+    @Mock
+    private SocksRepository socksRepository;
+
+    @Mock
+    private SocksJdbcRepository socksJdbcRepository;
+
+    @Mock
+    private WalCheckpointRepository walCheckpointRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    @Mock
+    private SocksMetrics socksMetrics;
+
+    private final Map<SocksKey, Integer> stored = new HashMap<>();
+
+    private WriteBehindMovementWriter writer;
+
+    private WriteBehindMovementWriter start(boolean lockAcquired) throws Exception {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getBoolean(1)).thenReturn(lockAcquired);
+        WriteBehindMovementWriter started = new WriteBehindMovementWriter(socksRepository, socksJdbcRepository,
+                walCheckpointRepository, new TransactionTemplate(transactionManager), eventPublisher,
+                new ShardRouter(List.of(), transactionManager), dataSource, socksMetrics,
+                walDir, "node", 3_600_000, 1_000_000, 4);
+        started.start();
+        writer = started;
+        return started;
+    }
+
+    private void stockFromMap() {
+        when(socksRepository.findByColorAndCottonPart(anyString(), anyLong())).thenAnswer(invocation -> {
+            SocksKey key = new SocksKey(invocation.getArgument(0), invocation.getArgument(1));
+            return Optional.ofNullable(stored.get(key)).map(q -> new Socks(key.getColor(), key.getCottonPart(), q));
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (writer != null) {
+            writer.stop();
+        }
+    }
+
+    @Test
+    void test1_outcome_shouldAdmitAgainstCachedBalance() throws Exception {
+        stored.put(BLUE, 5);
+        stockFromMap();
+        start(true);
+
+        assertTrue(writer.outcome(BLUE, 3, 0));
+        assertFalse(writer.outcome(BLUE, 3, 0));
+        writer.income(BLUE, 1);
+        assertTrue(writer.outcome(BLUE, 3, 0));
+        verify(socksRepository, times(1)).findByColorAndCottonPart("blue", 80L);
+        verifyNoInteractions(socksJdbcRepository);
+    }
+
+    @Test
+    void test2_flush_shouldRequeueRejectedOutcome_andApplyOtherKeys() throws Exception {
+        stored.put(BLUE, 5);
+        stockFromMap();
+        when(socksJdbcRepository.applyIncrements(anyMap())).thenReturn(Set.of(BLUE), Set.of());
+        start(true);
+        assertTrue(writer.outcome(BLUE, 4, 0));
+        writer.income(RED, 2);
+        // остаток списали мимо узла
+        stored.put(BLUE, 0);
+
+        writer.flush();
+
+        verify(socksJdbcRepository).applyIncrements(Map.of(BLUE, -4, RED, 2));
+        verify(socksMetrics).writeBehindRejected(1);
+        verify(eventPublisher).publishEvent(SocksChangedEvent.of(MovementType.WRITE_BEHIND, Map.of(RED, 2)));
+        assertFalse(writer.outcome(BLUE, 1, 0));
+
+        writer.income(BLUE, 10);
+        writer.flush();
+
+        verify(socksJdbcRepository).applyIncrements(Map.of(BLUE, 6));
+    }
+
+    @Test
+    void test3_start_shouldReplayWalAfterCheckpoint() throws Exception {
+        WriteAheadLog wal = new WriteAheadLog(walDir);
+        wal.recover(0);
+        wal.sync(wal.append(BLUE, 5));
+        wal.sync(wal.append(BLUE, -2));
+        wal.close();
+        when(socksJdbcRepository.applyIncrements(anyMap())).thenReturn(Set.of());
+
+        start(true);
+
+        verify(socksJdbcRepository).applyIncrements(Map.of(BLUE, 3));
+        verify(walCheckpointRepository).save(new WalCheckpoint("node", 2));
+    }
+
+    @Test
+    void test4_outcome_shouldRereadStock_whenExternalCommitLandsDuringRead() throws Exception {
+        start(true);
+        when(socksRepository.findByColorAndCottonPart("blue", 80L))
+                .thenAnswer(invocation -> {
+                    // обновление коммитится и переносится в баланс, пока узел читает старый остаток
+                    writer.onSocksChanged(SocksChangedEvent.of(MovementType.UPDATE, BLUE, 10));
+                    return Optional.of(new Socks("blue", 80L, 5));
+                })
+                .thenReturn(Optional.of(new Socks("blue", 80L, 15)));
+
+        assertTrue(writer.outcome(BLUE, 12, 0));
+        verify(socksRepository, times(2)).findByColorAndCottonPart("blue", 80L);
+    }
+
+    @Test
+    void test5_start_shouldRefuse_whenAnotherNodeHoldsLock() throws Exception {
+        assertThrows(IllegalStateException.class, () -> start(false));
+        assertNull(writer);
+        verify(connection).close();
+        verify(walCheckpointRepository, never()).findById(any());
+    }
+
+    @Test
+    void test6_outcome_shouldKeepHeldQuantity() throws Exception {
+        stored.put(BLUE, 5);
+        stockFromMap();
+        start(true);
+
+        assertFalse(writer.outcome(BLUE, 3, 3));
+        assertTrue(writer.outcome(BLUE, 2, 3));
+    }
+
+    @Test
+    void test7_flush_shouldPublishEachMovementForLedger() throws Exception {
+        stored.put(RED, 5);
+        stockFromMap();
+        when(socksJdbcRepository.applyIncrements(anyMap())).thenReturn(Set.of());
+        start(true);
+        writer.income(RED, 2);
+        writer.income(RED, 3);
+        assertTrue(writer.outcome(RED, 4, 0));
+
+        writer.flush();
+
+        verify(socksJdbcRepository).applyIncrements(Map.of(RED, 1));
+        verify(eventPublisher).publishEvent(new SocksChangedEvent(MovementType.WRITE_BEHIND, List.of(
+                new StockChange(RED, 2), new StockChange(RED, 3), new StockChange(RED, -4)), false));
+    }
+
+    @Test
+    void test8_quantity_shouldIncludeUnflushedMovements() throws Exception {
+        stored.put(BLUE, 5);
+        stockFromMap();
+        start(true);
+        writer.income(BLUE, 4);
+        assertTrue(writer.outcome(BLUE, 2, 0));
+
+        assertEquals(7, writer.quantity(BLUE));
+        verifyNoInteractions(socksJdbcRepository);
+    }
+}